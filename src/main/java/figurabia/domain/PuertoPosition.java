@@ -189,6 +189,13 @@ public class PuertoPosition implements Serializable {
         this.rightArmAroundLady = ladysRightArmAroundBody;
     }
 
+    // cached values() of the enums, for decoding in fromNumber
+    private static final LadyDir[] LADY_DIR = LadyDir.values();
+    private static final ManDir[] MAN_DIR = ManDir.values();
+    private static final HandJoint[] HAND_JOINT = HandJoint.values();
+    private static final HandHeight[] HAND_HEIGHT = HandHeight.values();
+    private static final ArmWrapped[] ARM_WRAPPED = ArmWrapped.values();
+
     private static PuertoPosition INITIAL_POSITION = new PuertoPosition(1, LadyDir.ON_LINE, ManDir.OPPOSITE, 10, 0,
             HandJoint.FREE, 0, HandHeight.NORMAL, HandHeight.NORMAL, ArmWrapped.UNWRAPPED, ArmWrapped.UNWRAPPED,
             ArmWrapped.UNWRAPPED, ArmWrapped.UNWRAPPED);
@@ -235,6 +242,43 @@ public class PuertoPosition implements Serializable {
         return num;
     }
 
+    /**
+     * Recreates a position from its number representation (the reverse of {@link #asNumber()}).
+     * 
+     * @param num a number as returned by {@link #asNumber()}
+     * @return the position
+     */
+    public static PuertoPosition fromNumber(int num) {
+        ArmWrapped rightArmAroundLady = ARM_WRAPPED[num & 3];
+        num >>>= 2;
+        ArmWrapped leftArmAroundLady = ARM_WRAPPED[num & 3];
+        num >>>= 2;
+        ArmWrapped rightArmAroundMan = ARM_WRAPPED[num & 3];
+        num >>>= 2;
+        ArmWrapped leftArmAroundMan = ARM_WRAPPED[num & 3];
+        num >>>= 2;
+        HandHeight rightHandHeight = HAND_HEIGHT[num & 7];
+        num >>>= 3;
+        HandHeight leftHandHeight = HAND_HEIGHT[num & 7];
+        num >>>= 3;
+        int handsTwist = (num & 3) - 1;
+        num >>>= 2;
+        HandJoint handsJoined = HAND_JOINT[num & 7];
+        num >>>= 3;
+        int sideOffset = (num & 7) * 5 - 15;
+        num >>>= 3;
+        int frontOffset = (num & 7) * 5 - 15;
+        num >>>= 3;
+        ManDir manDir = MAN_DIR[num & 3];
+        num >>>= 2;
+        LadyDir ladyDir = LADY_DIR[num & 1];
+        num >>>= 1;
+        int beat = (num & 1) == 1 ? 5 : 1;
+        return new PuertoPosition(beat, ladyDir, manDir, frontOffset, sideOffset, handsJoined, handsTwist,
+                leftHandHeight, rightHandHeight, leftArmAroundMan, rightArmAroundMan, leftArmAroundLady,
+                rightArmAroundLady);
+    }
+
     /**
      * @return the beat
      */
@@ -29,6 +29,9 @@ public class FigurabiaModel {
     private Set<Figure> viewSet = new HashSet<Figure>();
     private List<ViewSetListener> viewSetListeners = new LinkedList<ViewSetListener>();
 
+    private String videoPlaceholder;
+    private List<VideoPlaceholderListener> videoPlaceholderListeners = new LinkedList<VideoPlaceholderListener>();
+
     public void addPositionListener(PositionListener l) {
         positionListeners.add(l);
     }
@@ -159,4 +162,39 @@ public class FigurabiaModel {
             }
         }
     }
+
+    public String getVideoPlaceholder() {
+        return videoPlaceholder;
+    }
+
+    /**
+     * Sets a text to show instead of the video of the current figure (e.g. while the video is not ready yet).
+     * 
+     * @param text the text or null to show the video again
+     */
+    public void setVideoPlaceholder(String text) {
+        if (text == null ? videoPlaceholder != null : !text.equals(videoPlaceholder)) {
+            videoPlaceholder = text;
+            notifyVideoPlaceholderListeners(text);
+        }
+    }
+
+    public void addVideoPlaceholderListener(VideoPlaceholderListener l) {
+        videoPlaceholderListeners.add(l);
+    }
+
+    public void removeVideoPlaceholderListener(VideoPlaceholderListener l) {
+        videoPlaceholderListeners.remove(l);
+    }
+
+    protected void notifyVideoPlaceholderListeners(String text) {
+        for (VideoPlaceholderListener l : videoPlaceholderListeners) {
+            try {
+                l.update(text);
+            } catch (RuntimeException e) {
+                System.err.println("ERROR: RuntimeException thrown from VideoPlaceholderListener with (" + text + ")");
+                e.printStackTrace();
+            }
+        }
+    }
 }
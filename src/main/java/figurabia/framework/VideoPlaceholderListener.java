@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.framework;
+
+public interface VideoPlaceholderListener {
+
+    /**
+     * @param text the text to show instead of the video, null if the video can be shown
+     */
+    void update(String text);
+}
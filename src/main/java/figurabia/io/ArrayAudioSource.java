@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+/**
+ * Reads samples that are already in memory, e.g. generated signals.
+ *
+ * @author Samuel Berner
+ */
+public class ArrayAudioSource implements AudioSource {
+
+    private final short[] samples;
+    private final int sampleRate;
+    private int position = 0;
+
+    public ArrayAudioSource(short[] samples, int sampleRate) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        if (position == samples.length)
+            return -1;
+        int count = Math.min(length, samples.length - position);
+        System.arraycopy(samples, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
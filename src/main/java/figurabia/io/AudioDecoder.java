@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Decodes the audio track of a video to mono PCM samples.
+ *
+ * @author Samuel Berner
+ */
+public interface AudioDecoder {
+
+    /**
+     * Opens a part of the audio track. The source ends early at the end of the track (and has no samples if the
+     * start is after the end). Closing the source after its end throws an IOException if the decoding failed.
+     *
+     * @param startNanos the video time of the first sample
+     * @param durationNanos the length of the part, or -1 for the rest of the track
+     */
+    AudioSource open(File video, long startNanos, long durationNanos) throws IOException;
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A stream of mono 16 bit PCM samples, read piece by piece, so that whole tracks never need to be in memory.
+ *
+ * @author Samuel Berner
+ */
+public interface AudioSource extends Closeable {
+
+    /**
+     * @return the number of samples per second
+     */
+    int getSampleRate();
+
+    /**
+     * Reads the next samples into the buffer, blocking until at least one is available.
+     *
+     * @return the number of samples read or -1 at the end of the stream
+     */
+    int read(short[] buffer, int offset, int length) throws IOException;
+}
@@ -4,43 +4,91 @@
  */
 package figurabia.io;
 
-import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.color.ColorSpace;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.WeakHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.stream.ImageOutputStream;
-import javax.swing.SwingWorker;
+import javax.swing.SwingUtilities;
 
 import org.apache.commons.io.IOUtils;
 
-import figurabia.io.ProxyImage.ImageUpdateListener;
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoPosition;
 import figurabia.io.workspace.Workspace;
 
 /**
- * Loads and caches pictures of individual beats of figures.
+ * Loads and caches pictures of individual beats of figures. Full size and scaled pictures are cached separately, each
+ * limited by the size of the decoded images (least recently used ones are dropped first). Thumbnails in a few fixed
+ * sizes are stored along with each picture (in a thumbs sub folder), so that scaled pictures don't need to decode the
+ * full picture. All pictures are decoded by a {@link PictureDecodeScheduler}, displayed ones first. Stored pictures are
+ * encoded and written in a background thread.
  * 
  * @author Samuel Berner
  */
 public class BeatPictureCache {
 
+    /**
+     * The sizes of the thumbnails stored for every picture (from largest to smallest).
+     */
+    public static final int[][] THUMBNAIL_SIZES = { { 320, 240 }, { 160, 120 }, { 80, 60 } };
+
+    public static final long DEFAULT_FULL_SIZE_BUDGET = 64L * 1024 * 1024;
+    public static final long DEFAULT_SCALED_BUDGET = 16L * 1024 * 1024;
+    public static final float DEFAULT_JPEG_QUALITY = 0.85f;
+
     private final Workspace workspace;
     private final String basePath;
 
-    private Map<String, ProxyImage> imageCache = new WeakHashMap<String, ProxyImage>();
+    private final LruImageCache imageCache;
+    private final LruImageCache scaledImageCache;
+    private final Object thumbnailLock = new Object();
+    private final PictureDecodeScheduler decodeScheduler = new PictureDecodeScheduler();
+    private final float jpegQuality;
+    private final PictureWriteQueue writeQueue;
+    // JPEG writers are reused, but each thread writing pictures needs its own
+    private final ThreadLocal<ImageWriter> jpegWriter = new ThreadLocal<ImageWriter>() {
+        @Override
+        protected ImageWriter initialValue() {
+            return ImageIO.getImageWritersByFormatName("jpg").next();
+        }
+    };
 
     public BeatPictureCache(Workspace workspace, String basePath) {
+        this(workspace, basePath, DEFAULT_FULL_SIZE_BUDGET, DEFAULT_SCALED_BUDGET, DEFAULT_JPEG_QUALITY);
+    }
+
+    /**
+     * @param fullSizeBudget the maximum number of bytes of decoded full size pictures to keep
+     * @param scaledBudget the maximum number of bytes of decoded scaled pictures to keep
+     * @param jpegQuality the quality of the stored pictures and thumbnails, between 0 and 1
+     */
+    public BeatPictureCache(Workspace workspace, String basePath, long fullSizeBudget, long scaledBudget,
+            float jpegQuality) {
         this.workspace = workspace;
         this.basePath = basePath;
+        this.imageCache = new LruImageCache("full size pictures", fullSizeBudget);
+        this.scaledImageCache = new LruImageCache("scaled pictures", scaledBudget);
+        this.jpegQuality = jpegQuality;
+        this.writeQueue = new PictureWriteQueue("PictureWriter" + basePath, new PictureWriteQueue.Writer() {
+            @Override
+            public void write(String name, BufferedImage picture) {
+                writeJpeg(BeatPictureCache.this.basePath + name, picture);
+                writeThumbnails(name, picture);
+                pictureWritten(name);
+            }
+        });
     }
 
     public ProxyImage getPicture(String figureId, int bar, int beat) {
@@ -49,136 +97,312 @@ public class BeatPictureCache {
     }
 
     private ProxyImage getPictureByName(final String name) {
-        if (!imageCache.containsKey(name)) {
-            imageCache.put(name, new ProxyImage(name));
-            loadPicture(name);
+        ProxyImage proxy = imageCache.get(name);
+        if (proxy == null) {
+            proxy = new ProxyImage(name);
+            imageCache.put(name, proxy);
+            loadPicture(name, proxy);
         }
-        return imageCache.get(name);
+        return proxy;
     }
 
     private void reloadPicture(final String name) {
-        if (imageCache.containsKey(name))
-            loadPicture(name);
+        if (imageCache.contains(name))
+            loadPicture(name, imageCache.get(name));
     }
 
-    private void loadPicture(final String name) {
-        SwingWorker<Image, Void> worker = new SwingWorker<Image, Void>() {
+    private void loadPicture(final String name, ProxyImage proxy) {
+        decodeScheduler.schedule(name, proxy, new PictureDecodeScheduler.Job() {
             @Override
-            protected Image doInBackground() throws Exception {
+            protected Image decode() throws Exception {
                 File file = workspace.fileForReading(basePath + "/" + name);
                 Image image = ImageIO.read(file);
                 return image;
             }
 
-            /**
-             * @see javax.swing.SwingWorker#done()
-             */
             @Override
-            protected void done() {
-                if (getState() == StateValue.DONE) {
-                    try {
-                        Image image = get();
-                        ProxyImage proxy = imageCache.get(name);
-                        proxy.update(image);
-                    } catch (ExecutionException e) {
-                        System.err.println("Exception while loading image " + name + " in background.");
-                        e.printStackTrace();
-                    } catch (InterruptedException e) {
-                        // ignore
-                    }
-                }
+            protected void decoded(ProxyImage proxy, Image image) {
+                if (image != null)
+                    imageCache.imageLoaded(name, proxy, image);
             }
 
-        };
-        worker.execute();
+            @Override
+            protected void cancelled(ProxyImage proxy) {
+                // so that it is loaded again when it is requested the next time
+                imageCache.remove(name, proxy);
+            }
+        });
     }
 
-    public ProxyImage getScaledPicture(String name, final int width, final int height) {
+    /**
+     * Returns the picture scaled to the given size. The scaled picture is made from the smallest stored thumbnail that
+     * is at least as large (or from the full picture, if there is none yet).
+     */
+    public ProxyImage getScaledPicture(String name, int width, int height) {
         String scaledName = getScaledPictureName(name, width, height);
-        if (!imageCache.containsKey(scaledName)) {
-            final ProxyImage scaledProxyImage = new ProxyImage(scaledName);
-            imageCache.put(scaledName, scaledProxyImage);
-            ProxyImage proxyImage = getPictureByName(name);
-            proxyImage.foreach(new ImageUpdateListener() {
-                @Override
-                public void imageUpdated(final ProxyImage img) {
-                    SwingWorker<Image, Void> worker = new SwingWorker<Image, Void>() {
-                        @Override
-                        protected Image doInBackground() throws Exception {
-                            Image scaledImage = new BufferedImage(width, height, ColorSpace.TYPE_RGB);
-                            Graphics g = scaledImage.getGraphics();
-                            img.draw(g, 0, 0, width, height);
-                            return scaledImage;
-                        }
-
-                        @Override
-                        protected void done() {
-                            if (getState() == StateValue.DONE) {
-                                try {
-                                    Image image = get();
-                                    scaledProxyImage.update(image);
-                                } catch (ExecutionException e) {
-                                    System.err.println("Exception while loading image " + scaledProxyImage.name
-                                            + " in background.");
-                                    e.printStackTrace();
-                                } catch (InterruptedException e) {
-                                    // ignore
-                                }
-                            }
-                        }
-                    };
-                    worker.execute();
-                }
-            });
+        ProxyImage scaledProxyImage = scaledImageCache.get(scaledName);
+        if (scaledProxyImage == null) {
+            scaledProxyImage = new ProxyImage(scaledName);
+            scaledImageCache.put(scaledName, scaledProxyImage);
+            loadScaledPicture(name, width, height, scaledProxyImage);
         }
-        return imageCache.get(scaledName);
+        return scaledProxyImage;
+    }
+
+    private void reloadScaledPictures(String name) {
+        String prefix = name + ":";
+        for (String scaledName : scaledImageCache.keysStartingWith(prefix)) {
+            String[] size = scaledName.substring(prefix.length()).split(":");
+            ProxyImage proxy = scaledImageCache.get(scaledName);
+            if (proxy != null)
+                loadScaledPicture(name, Integer.parseInt(size[0]), Integer.parseInt(size[1]), proxy);
+        }
+    }
+
+    private void loadScaledPicture(final String name, final int width, final int height, ProxyImage scaledProxyImage) {
+        final String scaledName = scaledProxyImage.name;
+        decodeScheduler.schedule(scaledName, scaledProxyImage, new PictureDecodeScheduler.Job() {
+            @Override
+            protected Image decode() throws Exception {
+                Image source = readThumbnail(name, width, height);
+                if (source == null) {
+                    String picturePath = basePath + name;
+                    if (!workspace.exists(picturePath))
+                        return null;
+                    BufferedImage picture = ImageIO.read(workspace.fileForReading(picturePath));
+                    writeThumbnails(name, picture);
+                    source = picture;
+                }
+                if (source.getWidth(null) == width && source.getHeight(null) == height)
+                    return source;
+                return scale(source, width, height);
+            }
+
+            @Override
+            protected void decoded(ProxyImage proxy, Image image) {
+                if (image != null)
+                    scaledImageCache.imageLoaded(scaledName, proxy, image);
+            }
+
+            @Override
+            protected void cancelled(ProxyImage proxy) {
+                scaledImageCache.remove(scaledName, proxy);
+            }
+        });
     }
 
     public void storePicture(String figureId, int bar, int beat, Image picture) {
         String name = getPictureName(figureId, bar, beat);
 
-        // store
-        writePicture(name, picture);
+        // store (the picture is copied right away, but written later)
+        writeQueue.enqueue(name, picture);
+    }
 
+    /**
+     * Waits until all stored pictures are written. Must be called before accessing the picture files directly.
+     */
+    public void awaitPicturesWritten() {
+        writeQueue.awaitWritten();
+    }
+
+    private void pictureWritten(final String name) {
         // reload (causes update if already displayed somewhere, otherwise not loaded)
-        reloadPicture(name);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                reloadPicture(name);
+                reloadScaledPictures(name);
+            }
+        });
     }
 
-    private void writePicture(String name, Image picture) {
-        String picturePath = basePath + name;
+    /**
+     * Generates the thumbnails of all pictures of the given figures which don't have current ones yet. Runs in a
+     * background thread with low priority.
+     *
+     * @param figures the figures
+     */
+    public void backfillThumbnails(Collection<Figure> figures) {
+        final List<String> names = new ArrayList<String>();
+        for (Figure f : figures) {
+            List<Integer> barIds = f.getBarIds();
+            List<PuertoPosition> positions = f.getPositions();
+            if (barIds == null || positions == null)
+                continue;
+            for (int i = 0; i < barIds.size() && i < positions.size(); i++) {
+                names.add(getPictureName(f.getId(), barIds.get(i), positions.get(i).getBeat()));
+            }
+        }
+        Thread backfill = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int generated = 0;
+                for (String name : names) {
+                    try {
+                        String picturePath = basePath + name;
+                        if (!workspace.exists(picturePath) || hasCurrentThumbnails(name))
+                            continue;
+                        writeThumbnails(name, ImageIO.read(workspace.fileForReading(picturePath)));
+                        generated++;
+                    } catch (IOException e) {
+                        System.err.println("Could not generate thumbnails for " + name);
+                        e.printStackTrace();
+                    } catch (RuntimeException e) {
+                        System.err.println("Could not generate thumbnails for " + name);
+                        e.printStackTrace();
+                    }
+                }
+                if (generated > 0)
+                    System.out.println("Generated thumbnails for " + generated + " pictures");
+            }
+        }, "ThumbnailBackfill");
+        backfill.setDaemon(true);
+        backfill.setPriority(Thread.MIN_PRIORITY);
+        backfill.start();
+    }
+
+    /**
+     * Returns the path of the stored thumbnail of a picture.
+     *
+     * @param picturePath the name or path of the picture (e.g. /&lt;figureId&gt;/001-1.jpg)
+     * @param width the width of one of the {@link #THUMBNAIL_SIZES}
+     * @param height the height
+     * @return e.g. /&lt;figureId&gt;/thumbs/001-1-160x120.jpg
+     */
+    public String getThumbnailPath(String picturePath, int width, int height) {
+        int slash = picturePath.lastIndexOf('/');
+        String fileName = picturePath.substring(slash + 1);
+        if (fileName.endsWith(".jpg"))
+            fileName = fileName.substring(0, fileName.length() - 4);
+        return picturePath.substring(0, slash) + "/thumbs/" + fileName + "-" + width + "x" + height + ".jpg";
+    }
+
+    /**
+     * Moves the thumbnails along with a picture that is moved (the picture itself is not moved).
+     */
+    public void moveThumbnails(String oldPicturePath, String newPicturePath) {
+        for (int[] size : THUMBNAIL_SIZES) {
+            String oldPath = getThumbnailPath(oldPicturePath, size[0], size[1]);
+            String newPath = getThumbnailPath(newPicturePath, size[0], size[1]);
+            if (workspace.exists(newPath))
+                workspace.delete(newPath);
+            if (workspace.exists(oldPath))
+                workspace.move(oldPath, newPath);
+        }
+    }
+
+    /**
+     * Deletes the thumbnails of a picture (the picture itself is not deleted).
+     */
+    public void deleteThumbnails(String picturePath) {
+        for (int[] size : THUMBNAIL_SIZES) {
+            String path = getThumbnailPath(picturePath, size[0], size[1]);
+            if (workspace.exists(path))
+                workspace.delete(path);
+        }
+    }
+
+    /**
+     * Reads the smallest current thumbnail that is at least as large as the given size.
+     *
+     * @return the thumbnail or null if there is none (or it is older than the picture)
+     */
+    private Image readThumbnail(String name, int width, int height) throws IOException {
+        for (int i = THUMBNAIL_SIZES.length - 1; i >= 0; i--) {
+            int[] size = THUMBNAIL_SIZES[i];
+            if (size[0] >= width && size[1] >= height) {
+                if (!isThumbnailCurrent(name, size))
+                    return null;
+                return ImageIO.read(workspace.fileForReading(basePath + getThumbnailPath(name, size[0], size[1])));
+            }
+        }
+        return null;
+    }
+
+    private boolean hasCurrentThumbnails(String name) {
+        for (int[] size : THUMBNAIL_SIZES) {
+            if (!isThumbnailCurrent(name, size))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A thumbnail gets the modification time of its picture, so it is current as long as they are equal.
+     */
+    private boolean isThumbnailCurrent(String name, int[] size) {
+        File thumbnail = workspace.fileForReading(basePath + getThumbnailPath(name, size[0], size[1]));
+        File picture = workspace.fileForReading(basePath + name);
+        return thumbnail.exists() && thumbnail.lastModified() == picture.lastModified();
+    }
+
+    /**
+     * Writes all thumbnails of a picture, each one scaled down from the next larger one.
+     */
+    private void writeThumbnails(String name, Image picture) {
+        long pictureModified = workspace.fileForReading(basePath + name).lastModified();
+        synchronized (thumbnailLock) {
+            Image source = picture;
+            for (int[] size : THUMBNAIL_SIZES) {
+                BufferedImage thumbnail = scale(source, size[0], size[1]);
+                String thumbnailPath = basePath + getThumbnailPath(name, size[0], size[1]);
+                writeJpeg(thumbnailPath, thumbnail);
+                File file = workspace.fileForWriting(thumbnailPath);
+                if (!file.setLastModified(pictureModified))
+                    System.err.println("Could not set modification time of thumbnail " + thumbnailPath);
+                source = thumbnail;
+            }
+        }
+    }
+
+    private static BufferedImage scale(Image source, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private void writeJpeg(String path, BufferedImage image) {
         OutputStream os = null;
-        boolean existed = workspace.exists(picturePath);
+        boolean existed = workspace.exists(path);
         try {
-            os = workspace.write(picturePath);
+            os = workspace.write(path);
+            ImageWriter writer = jpegWriter.get();
             try {
-                BufferedImage outImage = new BufferedImage(picture.getWidth(null), picture.getHeight(null),
-                        BufferedImage.TYPE_INT_RGB);
-                Graphics og = outImage.getGraphics();
-                og.drawImage(picture, 0, 0, picture.getWidth(null), picture.getHeight(null), null);
-                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
-                ImageWriter writer = writers.next();
-
-                // Once an ImageWriter has been obtained, its destination must be set to an ImageOutputStream:
                 ImageOutputStream ios = ImageIO.createImageOutputStream(os);
                 writer.setOutput(ios);
-
-                // Finally, the image may be written to the output stream:
-                writer.write(outImage);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+                writer.write(null, new IIOImage(image, null, null), param);
                 ios.close();
             } catch (IOException e) {
                 System.out.println("ERROR: An IO problem occured during saving of the picture");
                 e.printStackTrace();
+            } finally {
+                // keep the writer for the next picture, but release the stream
+                writer.reset();
             }
         } finally {
             IOUtils.closeQuietly(os);
         }
-        workspace.finishedWriting(picturePath, !existed);
-
+        workspace.finishedWriting(path, !existed);
     }
 
     public void removePictureFromCache(String figureId, int bar, int beat) {
         String name = getPictureName(figureId, bar, beat);
         imageCache.remove(name);
+        scaledImageCache.removeByPrefix(name + ":");
+    }
+
+    public LruImageCache.Statistics getFullSizeStatistics() {
+        return imageCache.getStatistics();
+    }
+
+    public LruImageCache.Statistics getScaledStatistics() {
+        return scaledImageCache.getStatistics();
     }
 
     public String getPictureName(String figureId, int bar, int beat) {
@@ -189,7 +413,19 @@ public class BeatPictureCache {
         return basePath + getPictureName(figureId, bar, beat);
     }
 
+    /**
+     * Deletes a picture along with its thumbnails (if it exists).
+     */
+    public void deletePicture(String figureId, int bar, int beat) {
+        awaitPicturesWritten();
+        String picturePath = getPicturePath(figureId, bar, beat);
+        if (workspace.exists(picturePath))
+            workspace.delete(picturePath);
+        deleteThumbnails(picturePath);
+    }
+
     public void deleteAllPictures(String figureId) throws IOException {
+        awaitPicturesWritten();
         String path = basePath + "/" + figureId;
         if (workspace.exists(path))
             workspace.deletePath(path);
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+
+import figurabia.io.workspace.Workspace;
+
+/**
+ * Remembers the MD5 sums of files by their absolute path, so that the sum of a file is only calculated again when its
+ * size or modification time changed. The sums are saved in a properties file in the workspace.
+ *
+ * @author Samuel Berner
+ */
+public class DigestCache {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Workspace workspace;
+    private final String path;
+    // absolute path -> "size modification-time md5", guarded by this
+    private final Properties digests = new Properties();
+
+    public DigestCache(Workspace workspace, String path) {
+        this.workspace = workspace;
+        this.path = path;
+        if (workspace.exists(path)) {
+            InputStream is = null;
+            try {
+                is = workspace.read(path);
+                digests.load(is);
+            } catch (IOException e) {
+                System.err.println("Could not load digest cache " + path + ", starting with an empty one");
+                e.printStackTrace();
+            } finally {
+                IOUtils.closeQuietly(is);
+            }
+        }
+    }
+
+    /**
+     * @return the MD5 sum of the file (hex), from the cache if the file was not changed since
+     */
+    public String getMD5(File f) throws IOException {
+        String md5 = getCachedMD5(f);
+        if (md5 == null) {
+            md5 = calculateMD5(f);
+            put(f, md5);
+        }
+        return md5;
+    }
+
+    /**
+     * @return the cached MD5 sum of the file or null if it is unknown or the file changed since
+     */
+    public synchronized String getCachedMD5(File f) {
+        String entry = digests.getProperty(f.getAbsolutePath());
+        if (entry == null)
+            return null;
+        String[] parts = entry.split(" ");
+        if (parts.length != 3 || !parts[0].equals(Long.toString(f.length()))
+                || !parts[1].equals(Long.toString(f.lastModified())))
+            return null;
+        return parts[2];
+    }
+
+    /**
+     * Remembers the MD5 sum of the file in its current state (e.g. if it was calculated while copying the file).
+     */
+    public synchronized void put(File f, String md5) {
+        digests.setProperty(f.getAbsolutePath(), f.length() + " " + f.lastModified() + " " + md5);
+        save();
+    }
+
+    private void save() {
+        OutputStream os = null;
+        boolean existed = workspace.exists(path);
+        try {
+            os = workspace.write(path);
+            digests.store(os, "MD5 sums of video files");
+        } catch (IOException e) {
+            System.err.println("Could not save digest cache " + path);
+            e.printStackTrace();
+        } finally {
+            IOUtils.closeQuietly(os);
+        }
+        workspace.finishedWriting(path, !existed);
+    }
+
+    public static MessageDigest createMD5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported", e);
+        }
+    }
+
+    public static String toHex(MessageDigest digest) {
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+    private static String calculateMD5(File f) throws IOException {
+        MessageDigest digest = createMD5();
+        FileInputStream is = new FileInputStream(f);
+        try {
+            FileChannel channel = is.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        return toHex(digest);
+    }
+}
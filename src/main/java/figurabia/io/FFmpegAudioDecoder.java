@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decodes audio with an ffmpeg process, which writes the samples (mono, signed 16 bit little endian) to its standard
+ * output. Closing the source after its end checks the exit status of the process, so that a failed decoding (e.g. a
+ * crash or a video without an audio track) is not taken for the complete audio.
+ *
+ * @author Samuel Berner
+ */
+public class FFmpegAudioDecoder implements AudioDecoder {
+
+    public static final int DEFAULT_SAMPLE_RATE = 22050;
+
+    private final String command;
+    private final int sampleRate;
+
+    public FFmpegAudioDecoder() {
+        this("ffmpeg", DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * @param command the ffmpeg executable (with path if it is not on the PATH)
+     */
+    public FFmpegAudioDecoder(String command, int sampleRate) {
+        this.command = command;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public AudioSource open(File video, long startNanos, long durationNanos) throws IOException {
+        List<String> args = new ArrayList<String>();
+        args.add(command);
+        args.add("-v");
+        args.add("error");
+        if (startNanos > 0) {
+            args.add("-ss");
+            args.add(seconds(startNanos));
+        }
+        args.add("-i");
+        args.add(video.getAbsolutePath());
+        if (durationNanos >= 0) {
+            args.add("-t");
+            args.add(seconds(durationNanos));
+        }
+        args.add("-vn");
+        args.add("-ac");
+        args.add("1");
+        args.add("-ar");
+        args.add(Integer.toString(sampleRate));
+        args.add("-f");
+        args.add("s16le");
+        args.add("-");
+        ProcessBuilder pb = new ProcessBuilder(args);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return new ProcessAudioSource(pb.start(), sampleRate);
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ENGLISH, "%.6f", nanos / 1e9);
+    }
+
+    private static class ProcessAudioSource implements AudioSource {
+
+        private final Process process;
+        private final InputStream in;
+        private final int sampleRate;
+        private byte[] bytes = new byte[0];
+        // the first byte of an incomplete sample of the previous read, or -1
+        private int pendingByte = -1;
+        private boolean ended = false;
+
+        public ProcessAudioSource(Process process, int sampleRate) {
+            this.process = process;
+            this.in = new BufferedInputStream(process.getInputStream());
+            this.sampleRate = sampleRate;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (bytes.length < length * 2)
+                bytes = new byte[length * 2];
+            int start = 0;
+            if (pendingByte != -1) {
+                bytes[0] = (byte) pendingByte;
+                start = 1;
+            }
+            int count = start;
+            // read at least one whole sample
+            while (count < 2) {
+                int read = in.read(bytes, count, length * 2 - count);
+                if (read == -1) {
+                    ended = true;
+                    return -1;
+                }
+                count += read;
+            }
+            int samples = count / 2;
+            for (int i = 0; i < samples; i++) {
+                buffer[offset + i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8));
+            }
+            pendingByte = count % 2 == 1 ? bytes[count - 1] & 0xff : -1;
+            return samples;
+        }
+
+        /**
+         * Waits for the process if all samples were read, otherwise stops it.
+         *
+         * @throws IOException if the process exited with an error
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                if (!ended)
+                    process.destroy();
+            }
+            if (!ended)
+                return;
+            int status;
+            try {
+                status = process.waitFor();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for ffmpeg", e);
+            }
+            if (status != 0)
+                throw new IOException("ffmpeg exited with status " + status);
+        }
+    }
+}
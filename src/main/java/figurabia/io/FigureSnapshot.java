@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.awt.Color;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+import figurabia.domain.Element;
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoOffset;
+import figurabia.domain.PuertoPosition;
+import figurabia.io.workspace.Workspace;
+
+/**
+ * A compact binary snapshot of all figures of a {@link FigureStore}, so that they can be loaded with a single
+ * sequential read instead of parsing every XML file. The XML files stay the primary storage, the snapshot is only used
+ * if it is newer than all of them.
+ * <p>
+ * Positions are stored as their 29 bit number (see {@link PuertoPosition#asNumber()}), video positions are delta
+ * encoded and all other numbers are written as variable length integers.
+ *
+ * @author Samuel Berner
+ */
+public class FigureSnapshot {
+
+    public static final String NAME = "figures.snap";
+
+    private static final int MAGIC = 0x46536e70; // "FSnp"
+    private static final int VERSION = 1;
+
+    private final Workspace workspace;
+    private final String path;
+
+    public FigureSnapshot(Workspace workspace, String basePath) {
+        this.workspace = workspace;
+        this.path = basePath + "/" + NAME;
+    }
+
+    /**
+     * Returns true if the snapshot exists and was written after all the given resources were last modified.
+     *
+     * @param resourcePaths the paths of the individual figure files
+     * @return true if the snapshot can be used instead of the given files
+     */
+    public boolean isNewerThan(Collection<String> resourcePaths) {
+        if (!workspace.exists(path))
+            return false;
+        long snapshotModified = workspace.fileForReading(path).lastModified();
+        for (String resourcePath : resourcePaths) {
+            if (workspace.fileForReading(resourcePath).lastModified() >= snapshotModified)
+                return false;
+        }
+        return true;
+    }
+
+    public Map<String, Figure> read() throws IOException {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(workspace.read(path));
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a figure snapshot: " + path);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("unsupported figure snapshot version " + version + ": " + path);
+            int n = readVarInt(in);
+            Map<String, Figure> figures = new HashMap<String, Figure>(n * 2);
+            for (int i = 0; i < n; i++) {
+                Figure f = readFigure(in);
+                figures.put(f.getId(), f);
+            }
+            // the magic number is repeated at the end, to detect truncated snapshots
+            if (in.readInt() != MAGIC)
+                throw new IOException("figure snapshot is incomplete: " + path);
+            return figures;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    public void write(Collection<Figure> figures) throws IOException {
+        boolean existed = workspace.exists(path);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(workspace.write(path));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeVarInt(out, figures.size());
+            for (Figure f : figures) {
+                writeFigure(out, f);
+            }
+            out.writeInt(MAGIC);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        workspace.finishedWriting(path, !existed);
+    }
+
+    /**
+     * Deletes the snapshot, e.g. if writing it failed.
+     */
+    public void delete() {
+        File f = workspace.fileForWriting(path);
+        if (f.exists() && !f.delete())
+            System.err.println("Could not delete figure snapshot " + path);
+    }
+
+    private static void writeFigure(DataOutputStream out, Figure f) throws IOException {
+        out.writeUTF(f.getId());
+        out.writeUTF(f.getRev());
+        writeString(out, f.getName());
+        out.writeBoolean(f.getColor() != null);
+        if (f.getColor() != null)
+            out.writeInt(f.getColor().getRGB());
+        writeString(out, f.getVideoName());
+        out.writeBoolean(f.isActive());
+        writeOffset(out, f.getBaseOffset());
+
+        List<Long> videoPositions = f.getVideoPositions();
+        writeVarInt(out, videoPositions == null ? -1 : videoPositions.size());
+        if (videoPositions != null) {
+            long previous = 0;
+            for (long time : videoPositions) {
+                writeVarLong(out, time - previous);
+                previous = time;
+            }
+        }
+
+        List<PuertoPosition> positions = f.getPositions();
+        writeVarInt(out, positions == null ? -1 : positions.size());
+        if (positions != null) {
+            for (PuertoPosition p : positions) {
+                out.writeInt(p.asNumber());
+            }
+        }
+
+        List<Element> elements = f.getElements();
+        writeVarInt(out, elements == null ? -1 : elements.size());
+        if (elements != null) {
+            for (Element e : elements) {
+                out.writeBoolean(e != null);
+                if (e != null) {
+                    writeOffset(out, e.getOffsetChange());
+                    writeString(out, e.getName());
+                }
+            }
+        }
+
+        List<Integer> barIds = f.getBarIds();
+        writeVarInt(out, barIds == null ? -1 : barIds.size());
+        if (barIds != null) {
+            for (int barId : barIds) {
+                writeVarInt(out, barId);
+            }
+        }
+    }
+
+    private static Figure readFigure(DataInputStream in) throws IOException {
+        Figure f = new Figure();
+        f.setId(in.readUTF());
+        f.setRev(in.readUTF());
+        f.setName(readString(in));
+        if (in.readBoolean())
+            f.setColor(new Color(in.readInt(), true));
+        f.setVideoName(readString(in));
+        f.setActive(in.readBoolean());
+        f.setBaseOffset(readOffset(in));
+
+        int n = readVarInt(in);
+        if (n != -1) {
+            List<Long> videoPositions = new ArrayList<Long>(n);
+            long time = 0;
+            for (int i = 0; i < n; i++) {
+                time += readVarLong(in);
+                videoPositions.add(time);
+            }
+            f.setVideoPositions(videoPositions);
+        }
+
+        n = readVarInt(in);
+        if (n != -1) {
+            List<PuertoPosition> positions = new ArrayList<PuertoPosition>(n);
+            for (int i = 0; i < n; i++) {
+                positions.add(PuertoPosition.fromNumber(in.readInt()));
+            }
+            f.setPositions(positions);
+        }
+
+        n = readVarInt(in);
+        if (n != -1) {
+            List<Element> elements = new ArrayList<Element>(n);
+            for (int i = 0; i < n; i++) {
+                if (in.readBoolean()) {
+                    Element e = new Element();
+                    e.setOffsetChange(readOffset(in));
+                    e.setName(readString(in));
+                    elements.add(e);
+                } else {
+                    elements.add(null);
+                }
+            }
+            f.setElements(elements);
+        }
+
+        n = readVarInt(in);
+        if (n != -1) {
+            List<Integer> barIds = new ArrayList<Integer>(n);
+            for (int i = 0; i < n; i++) {
+                barIds.add(readVarInt(in));
+            }
+            f.setBarIds(barIds);
+        }
+        return f;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null)
+            out.writeUTF(s);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOffset(DataOutputStream out, PuertoOffset o) throws IOException {
+        out.writeBoolean(o != null);
+        if (o != null) {
+            out.writeBoolean(o.isLadyLineDir());
+            writeVarInt(out, o.getAbsPosLineDir());
+            writeVarInt(out, o.getAbsPosSideDir());
+        }
+    }
+
+    private static PuertoOffset readOffset(DataInputStream in) throws IOException {
+        if (!in.readBoolean())
+            return null;
+        boolean ladyLineDir = in.readBoolean();
+        int absPosLineDir = readVarInt(in);
+        int absPosSideDir = readVarInt(in);
+        return new PuertoOffset(ladyLineDir, absPosLineDir, absPosSideDir);
+    }
+
+    /**
+     * Writes a signed int in 1 to 5 bytes (zig-zag encoded, so that small negative numbers are short too).
+     */
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7fL) != 0) {
+            out.writeByte((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift >= 64)
+                throw new IOException("malformed variable length number in figure snapshot");
+            b = in.readUnsignedByte();
+            v |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -5,10 +5,13 @@
 package figurabia.io;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -18,17 +21,27 @@ import figurabia.domain.Element;
 import figurabia.domain.Figure;
 import figurabia.domain.PuertoOffset;
 import figurabia.domain.PuertoPosition;
+import figurabia.io.store.StoreJournal;
 import figurabia.io.store.StoreListener;
 import figurabia.io.store.XStreamStore;
 import figurabia.io.workspace.Workspace;
 
 public class FigureStore extends XStreamStore<Figure> {
 
+    private static final XStreamFactory XSTREAM_FACTORY = new XStreamFactory() {
+        @Override
+        public XStream create() {
+            return createXStream();
+        }
+    };
+
     private Set<Figure> activeFigures = new HashSet<Figure>();
     private Random rand;
 
     public FigureStore(Workspace workspace, String basePath) {
-        super(createXStream(), workspace, basePath, Figure.class);
+        // journaled, because figures are updated for every captured beat
+        super(XSTREAM_FACTORY, workspace, basePath, Figure.class, new StoreJournal(workspace,
+                basePath + "/" + StoreJournal.NAME));
 
         // init active figures
         for (Figure f : allObjects()) {
@@ -56,6 +69,44 @@ public class FigureStore extends XStreamStore<Figure> {
         });
 
         validate();
+
+        // if the snapshot was stale, write a new one so the next startup is fast
+        if (!getLoadStatistics().isFromSnapshot()) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Writes a binary snapshot of all figures, which is used on the next startup as long as no figure file is modified
+     * after it.
+     */
+    public void writeSnapshot() {
+        FigureSnapshot snapshot = new FigureSnapshot(getWorkspace(), getBasePath());
+        try {
+            snapshot.write(allObjects());
+        } catch (IOException e) {
+            System.err.println("Could not write figure snapshot, will load from XML next time.");
+            e.printStackTrace();
+            snapshot.delete();
+        }
+    }
+
+    @Override
+    protected Map<String, Figure> loadSnapshot(List<String> ids) {
+        FigureSnapshot snapshot = new FigureSnapshot(getWorkspace(), getBasePath());
+        List<String> paths = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            paths.add(idToPath(id));
+        }
+        if (!snapshot.isNewerThan(paths))
+            return null;
+        try {
+            return snapshot.read();
+        } catch (IOException e) {
+            System.err.println("Could not read figure snapshot, falling back to XML.");
+            e.printStackTrace();
+            return null;
+        }
     }
 
     private static XStream createXStream() {
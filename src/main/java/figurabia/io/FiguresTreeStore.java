@@ -16,6 +16,7 @@ import com.thoughtworks.xstream.XStream;
 
 import figurabia.domain.TreeItem;
 import figurabia.domain.TreeItem.ItemType;
+import figurabia.io.store.Batch;
 import figurabia.io.store.StoreListener;
 import figurabia.io.store.StoreListener.StateChange;
 import figurabia.io.store.XStreamStore;
@@ -24,6 +25,12 @@ import figurabia.io.workspace.Workspace;
 public class FiguresTreeStore extends XStreamStore<TreeItem> {
 
     private static final String ROOT_ID = "-1";
+    private static final XStreamFactory XSTREAM_FACTORY = new XStreamFactory() {
+        @Override
+        public XStream create() {
+            return getXStream();
+        }
+    };
 
     private Map<String, TreeItem> parentFolder = new HashMap<String, TreeItem>();
     private Map<String, TreeItem> byRefId = new HashMap<String, TreeItem>();
@@ -39,7 +46,7 @@ public class FiguresTreeStore extends XStreamStore<TreeItem> {
     }
 
     public FiguresTreeStore(Workspace workspace, String basePath) {
-        super(getXStream(), workspace, basePath, TreeItem.class);
+        super(XSTREAM_FACTORY, workspace, basePath, TreeItem.class);
 
         for (TreeItem item : allObjects()) {
             for (String childId : item.getChildIds()) {
@@ -172,8 +179,15 @@ public class FiguresTreeStore extends XStreamStore<TreeItem> {
             newParent.getChildIds().add(newIndex, itemToMove.getId());
             update(newParent); // just one update needed
         } else {
-            removeItem(oldParent, oldIndex);
-            insertItem(newParent, newIndex, itemToMove);
+            // both parents are written and notified together
+            Batch batch = batch();
+            try {
+                removeItem(oldParent, oldIndex);
+                insertItem(newParent, newIndex, itemToMove);
+                batch.commit();
+            } finally {
+                batch.discard();
+            }
         }
     }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of {@link ProxyImage}s, which is limited by the size of the decoded pixels. When the budget is exceeded, the
+ * least recently used images are evicted. Images still loading count as zero bytes.
+ *
+ * @author Samuel Berner
+ */
+public class LruImageCache {
+
+    /**
+     * A snapshot of the cache's counters.
+     */
+    public static class Statistics {
+        public final String name;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final int entries;
+        public final long residentBytes;
+        public final long budgetBytes;
+
+        Statistics(String name, long hits, long misses, long evictions, int entries, long residentBytes,
+                long budgetBytes) {
+            this.name = name;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.residentBytes = residentBytes;
+            this.budgetBytes = budgetBytes;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + hits + " hits, " + misses + " misses, " + evictions + " evictions, " + entries
+                    + " entries, " + residentBytes / 1024 + " of " + budgetBytes / 1024 + " KB";
+        }
+    }
+
+    private final String name;
+    private final long budgetBytes;
+    // access ordered, so iteration starts with the least recently used
+    private final LinkedHashMap<String, ProxyImage> entries = new LinkedHashMap<String, ProxyImage>(16, 0.75f, true);
+    private final Map<String, Long> sizes = new HashMap<String, Long>();
+    private long residentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LruImageCache(String name, long budgetBytes) {
+        this.name = name;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns the cached image (and marks it as recently used) or null if it is not cached.
+     */
+    public synchronized ProxyImage get(String key) {
+        ProxyImage proxy = entries.get(key);
+        if (proxy != null)
+            hits++;
+        else
+            misses++;
+        return proxy;
+    }
+
+    /**
+     * Returns true if the image is cached (without marking it as used).
+     */
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized void put(String key, ProxyImage proxy) {
+        remove(key);
+        entries.put(key, proxy);
+    }
+
+    /**
+     * Accounts for the decoded size of an image that finished loading and evicts other images if necessary.
+     *
+     * @param key the key of the image
+     * @param proxy the proxy that was loaded (ignored if it is not cached anymore)
+     * @param image the decoded image
+     */
+    public synchronized void imageLoaded(String key, ProxyImage proxy, Image image) {
+        if (entries.get(key) != proxy)
+            return;
+        long bytes = estimateBytes(image);
+        Long previous = sizes.put(key, bytes);
+        residentBytes += bytes - (previous == null ? 0 : previous);
+        evict(key);
+    }
+
+    public synchronized ProxyImage remove(String key) {
+        ProxyImage proxy = entries.remove(key);
+        Long bytes = sizes.remove(key);
+        if (bytes != null)
+            residentBytes -= bytes;
+        return proxy;
+    }
+
+    /**
+     * Removes the image only if it is still the given one.
+     */
+    public synchronized void remove(String key, ProxyImage proxy) {
+        if (entries.get(key) == proxy)
+            remove(key);
+    }
+
+    /**
+     * Removes all images whose key starts with the given prefix.
+     */
+    public synchronized void removeByPrefix(String prefix) {
+        for (String key : keysStartingWith(prefix)) {
+            remove(key);
+        }
+    }
+
+    public synchronized List<String> keysStartingWith(String prefix) {
+        List<String> keys = new ArrayList<String>();
+        for (String key : entries.keySet()) {
+            if (key.startsWith(prefix))
+                keys.add(key);
+        }
+        return keys;
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(name, hits, misses, evictions, entries.size(), residentBytes, budgetBytes);
+    }
+
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, ProxyImage>> it = entries.entrySet().iterator();
+        while (residentBytes > budgetBytes && it.hasNext()) {
+            String key = it.next().getKey();
+            // an image larger than the whole budget still stays until the next one arrives
+            if (key.equals(keep))
+                continue;
+            it.remove();
+            Long bytes = sizes.remove(key);
+            if (bytes != null)
+                residentBytes -= bytes;
+            evictions++;
+        }
+    }
+
+    static long estimateBytes(Image image) {
+        if (image instanceof BufferedImage) {
+            DataBuffer buffer = ((BufferedImage) image).getRaster().getDataBuffer();
+            return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType())
+                    / 8;
+        }
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width < 0 || height < 0)
+            return 0;
+        return 4L * width * height;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.nio.ShortBuffer;
+
+/**
+ * The decoded audio of a video (mono, 16 bit) in a memory mapped file of the {@link PcmCache}. The samples are read
+ * directly from the mapping, windows of it are views, not copies. Can be used by several threads at the same time.
+ *
+ * @author Samuel Berner
+ */
+public class PcmAudio {
+
+    private final ShortBuffer samples;
+    private final int sampleRate;
+
+    /**
+     * @param samples the samples from its position to its limit (a view of them is kept)
+     */
+    public PcmAudio(ShortBuffer samples, int sampleRate) {
+        this.samples = samples.slice();
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getSampleCount() {
+        return samples.limit();
+    }
+
+    /**
+     * @return the duration in nanoseconds
+     */
+    public long getDuration() {
+        return getSampleCount() * 1000000000L / sampleRate;
+    }
+
+    /**
+     * @return the index of the sample at the given video time
+     */
+    public int sampleAt(long nanos) {
+        return (int) Math.max(0, Math.min(getSampleCount(), nanos * sampleRate / 1000000000L));
+    }
+
+    public short getSample(int index) {
+        return samples.get(index);
+    }
+
+    /**
+     * @return a view of the samples from start (the end is cut at the end of the audio)
+     */
+    public ShortBuffer window(int start, int length) {
+        ShortBuffer view = samples.duplicate();
+        int from = Math.min(start, view.limit());
+        view.limit(Math.min(view.limit(), from + length));
+        view.position(from);
+        return view.slice();
+    }
+
+    /**
+     * @return the samples from startNanos on, for the given duration (or to the end if it is -1)
+     */
+    public AudioSource source(long startNanos, long durationNanos) {
+        int start = sampleAt(startNanos);
+        int length = durationNanos < 0 ? getSampleCount() - start : sampleAt(startNanos + durationNanos) - start;
+        final ShortBuffer window = window(start, length);
+        return new AudioSource() {
+            @Override
+            public int getSampleRate() {
+                return sampleRate;
+            }
+
+            @Override
+            public int read(short[] buffer, int offset, int length) {
+                if (!window.hasRemaining())
+                    return -1;
+                int count = Math.min(length, window.remaining());
+                window.get(buffer, offset, count);
+                return count;
+            }
+
+            @Override
+            public void close() {
+                // the mapping is released by the garbage collector
+            }
+        };
+    }
+}
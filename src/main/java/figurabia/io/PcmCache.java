@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import figurabia.io.workspace.Workspace;
+import figurabia.io.workspace.WorkspaceException;
+
+/**
+ * Keeps the decoded audio of every video in a file (basePath/videoId.pcm), so it only needs to be decoded once. The
+ * file starts with a header with the MD5 sum of the video it was decoded from, if the video changes, it is decoded
+ * again. The samples are read through a memory mapping (see {@link PcmAudio}).
+ *
+ * @author Samuel Berner
+ */
+public class PcmCache {
+
+    private static final int MAGIC = 0x4650434d; // "FPCM"
+    private static final int VERSION = 1;
+    // magic, version, sample rate, sample count, MD5 sum (hex), padded
+    private static final int HEADER_SIZE = 64;
+    private static final int MD5_LENGTH = 32;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Workspace workspace;
+    private final String videoPath;
+    private final String basePath;
+    private final AudioDecoder decoder;
+
+    /**
+     * @param videoPath the path of the videos
+     * @param basePath the path of the decoded audio
+     */
+    public PcmCache(Workspace workspace, String videoPath, String basePath, AudioDecoder decoder) {
+        this.workspace = workspace;
+        this.videoPath = videoPath;
+        this.basePath = basePath;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Opens the decoded audio of the video, decoding it first if it is not in the cache or was decoded from a
+     * different version of the video. Must not be called in the event dispatch thread, decoding takes a while.
+     *
+     * @param md5 the MD5 sum of the video (from its {@link VideoMetaData})
+     */
+    public synchronized PcmAudio open(String videoId, String md5) throws IOException {
+        if (md5 == null || md5.length() != MD5_LENGTH)
+            throw new IOException("Video " + videoId + " has no MD5 sum to key its audio with");
+        String path = getPath(videoId);
+        if (workspace.exists(path)) {
+            PcmAudio audio = map(path, md5);
+            if (audio != null)
+                return audio;
+            System.out.println("Decoding audio of " + videoId + " again, the video changed");
+        }
+        decode(workspace.fileForReading(videoPath + "/" + videoId), md5, path);
+        PcmAudio audio = map(path, md5);
+        if (audio == null)
+            throw new IOException("Decoded audio of " + videoId + " is not readable");
+        return audio;
+    }
+
+    public String getPath(String videoId) {
+        return basePath + "/" + videoId + ".pcm";
+    }
+
+    /**
+     * @return the mapped audio, or null if the file is not decoded from the video with the given MD5 sum
+     */
+    private PcmAudio map(String path, String md5) {
+        MappedByteBuffer mapping = workspace.map(path);
+        if (mapping.capacity() < HEADER_SIZE)
+            return null;
+        ByteBuffer header = mapping.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION)
+            return null;
+        int sampleRate = header.getInt();
+        long sampleCount = header.getLong();
+        byte[] md5Bytes = new byte[MD5_LENGTH];
+        header.get(md5Bytes);
+        if (!new String(md5Bytes, ASCII).equals(md5) || HEADER_SIZE + sampleCount * 2 != mapping.capacity())
+            return null;
+        ByteBuffer data = mapping.duplicate();
+        data.position(HEADER_SIZE);
+        return new PcmAudio(data.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(), sampleRate);
+    }
+
+    private void decode(File video, String md5, String path) throws IOException {
+        // decoded to a partial file first, so an interrupted decoding is never taken for a complete one
+        String partialPath = path + ".partial";
+        File target = workspace.fileForWriting(partialPath);
+        RandomAccessFile file = null;
+        boolean complete = false;
+        try {
+            file = new RandomAccessFile(target, "rw");
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE * 2).order(ByteOrder.LITTLE_ENDIAN);
+            // the header is written at the end, when the number of samples is known
+            channel.position(HEADER_SIZE);
+            short[] samples = new short[BUFFER_SIZE];
+            long sampleCount = 0;
+            AudioSource source = decoder.open(video, 0, -1);
+            int sampleRate = source.getSampleRate();
+            try {
+                int read;
+                while ((read = source.read(samples, 0, samples.length)) != -1) {
+                    buffer.clear();
+                    buffer.asShortBuffer().put(samples, 0, read);
+                    buffer.limit(read * 2);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    sampleCount += read;
+                }
+            } finally {
+                // fails if the decoder did
+                source.close();
+            }
+            if (sampleCount == 0)
+                throw new IOException("No audio decoded from " + video + ", it may have no audio track");
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(sampleRate);
+            header.putLong(sampleCount);
+            header.put(md5.getBytes(ASCII));
+            header.position(0);
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            complete = true;
+        } finally {
+            if (file != null)
+                file.close();
+            if (!complete)
+                deletePartial(partialPath);
+        }
+        workspace.finishedWriting(partialPath, true);
+        if (workspace.exists(path))
+            workspace.delete(path);
+        try {
+            workspace.move(partialPath, path);
+        } catch (WorkspaceException e) {
+            throw new IOException("Could not move decoded audio to " + path, e);
+        }
+    }
+
+    private void deletePartial(String partialPath) {
+        try {
+            if (workspace.exists(partialPath))
+                workspace.delete(partialPath);
+        } catch (RuntimeException e) {
+            // the decoding error is the one to report
+            System.err.println("Could not delete the partially decoded audio " + partialPath);
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.awt.Image;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Decodes pictures for {@link ProxyImage}s on a few dedicated background threads.
+ * <p>
+ * Pictures of proxies that have listeners (i.e. are displayed somewhere) are decoded first, the most recently requested
+ * ones before older ones. When the last listener of a proxy is removed while its picture is still waiting, it is not
+ * decoded at all. Several requests for the same picture, which are still waiting, are decoded only once.
+ *
+ * @author Samuel Berner
+ */
+public class PictureDecodeScheduler {
+
+    /**
+     * The decoding of one picture for one proxy.
+     */
+    public static abstract class Job {
+        /**
+         * Decodes the picture (called in a background thread).
+         */
+        protected abstract Image decode() throws Exception;
+
+        /**
+         * Called on the Swing Event Dispatcher Thread after the proxy was updated with the decoded picture.
+         */
+        protected void decoded(ProxyImage proxy, Image image) {
+        }
+
+        /**
+         * Called when the picture is not decoded anymore, because the proxy is not wanted anymore (on the thread that
+         * removed the last listener from the proxy).
+         */
+        protected void cancelled(ProxyImage proxy) {
+        }
+    }
+
+    private enum Priority {
+        VISIBLE, PREFETCH
+    }
+
+    private static class Request {
+        final ProxyImage proxy;
+        final Job job;
+
+        Request(ProxyImage proxy, Job job) {
+            this.proxy = proxy;
+            this.job = job;
+        }
+    }
+
+    private class Task implements Runnable, Comparable<Task> {
+        final String key;
+        final List<Request> requests = new ArrayList<Request>(1);
+        Priority priority;
+        long sequence;
+
+        Task(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            if (priority != o.priority)
+                return priority.compareTo(o.priority);
+            // newest first
+            return sequence > o.sequence ? -1 : (sequence < o.sequence ? 1 : 0);
+        }
+
+        @Override
+        public void run() {
+            final List<Request> delivery;
+            synchronized (PictureDecodeScheduler.this) {
+                if (queued.get(key) == this)
+                    queued.remove(key);
+                delivery = new ArrayList<Request>(requests);
+                for (Request r : delivery) {
+                    if (byProxy.get(r.proxy) == this)
+                        byProxy.remove(r.proxy);
+                }
+            }
+            Image image;
+            try {
+                image = delivery.get(0).job.decode();
+            } catch (Exception e) {
+                System.err.println("Exception while loading image " + key + " in background.");
+                e.printStackTrace();
+                return;
+            }
+            final Image decoded = image;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    for (Request r : delivery) {
+                        r.proxy.update(decoded);
+                        r.job.decoded(r.proxy, decoded);
+                    }
+                }
+            });
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ProxyImage.InterestListener interestListener = new ProxyImage.InterestListener() {
+        @Override
+        public void interestChanged(ProxyImage proxy, boolean wanted) {
+            if (wanted)
+                prioritize(proxy);
+            else
+                cancel(proxy);
+        }
+    };
+
+    // guarded by this
+    private final Map<String, Task> queued = new HashMap<String, Task>();
+    private final Map<ProxyImage, Task> byProxy = new IdentityHashMap<ProxyImage, Task>();
+    private long sequence;
+
+    public PictureDecodeScheduler() {
+        this(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4)));
+    }
+
+    public PictureDecodeScheduler(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new DecoderThreadFactory());
+        // so that every task goes through the queue (and can still be removed from it)
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Schedules the decoding of a picture. If the same picture is already waiting to be decoded, the proxy just gets
+     * the result of that decoding (and the given job's decode method is not called).
+     *
+     * @param key identifies the picture
+     * @param proxy the proxy to update
+     * @param job decodes the picture
+     */
+    public synchronized void schedule(String key, ProxyImage proxy, Job job) {
+        proxy.setInterestListener(interestListener);
+        Task task = queued.get(key);
+        if (task == null || !executor.remove(task)) {
+            // not waiting anymore (or already being decoded, possibly from an outdated file)
+            task = new Task(key);
+            queued.put(key, task);
+        }
+        if (byProxy.get(proxy) != task) {
+            task.requests.add(new Request(proxy, job));
+            byProxy.put(proxy, task);
+        }
+        enqueue(task);
+    }
+
+    /**
+     * Stops the decoder threads, pictures still waiting are not decoded anymore.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private synchronized void prioritize(ProxyImage proxy) {
+        Task task = byProxy.get(proxy);
+        if (task != null && task.priority != Priority.VISIBLE && executor.remove(task))
+            enqueue(task);
+    }
+
+    private void cancel(ProxyImage proxy) {
+        List<Request> cancelled = new ArrayList<Request>();
+        synchronized (this) {
+            Task task = byProxy.get(proxy);
+            if (task == null || !executor.remove(task))
+                return;
+            byProxy.remove(proxy);
+            for (Request r : new ArrayList<Request>(task.requests)) {
+                if (r.proxy == proxy) {
+                    task.requests.remove(r);
+                    cancelled.add(r);
+                }
+            }
+            if (task.requests.isEmpty())
+                queued.remove(task.key);
+            else
+                enqueue(task);
+        }
+        for (Request r : cancelled) {
+            r.job.cancelled(r.proxy);
+        }
+    }
+
+    /**
+     * (Re-)inserts the task into the queue with its current priority.
+     */
+    private void enqueue(Task task) {
+        task.priority = Priority.PREFETCH;
+        for (Request r : task.requests) {
+            if (r.proxy.hasListeners())
+                task.priority = Priority.VISIBLE;
+        }
+        task.sequence = ++sequence;
+        executor.execute(task);
+    }
+
+    private static class DecoderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "PictureDecoder-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
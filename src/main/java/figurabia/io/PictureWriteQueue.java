@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes pictures one after the other in a background thread. If a picture with the same name is stored again before
+ * it was written, only the latest version is written. The pictures are copied when they are stored (so the caller can
+ * reuse its image right away) into buffers that are reused after writing.
+ *
+ * @author Samuel Berner
+ */
+class PictureWriteQueue {
+
+    interface Writer {
+        /**
+         * Writes a picture (called in the background thread). The picture must not be kept after returning.
+         */
+        void write(String name, BufferedImage picture);
+    }
+
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private final String threadName;
+    private final Writer writer;
+
+    // all guarded by this
+    private final LinkedHashMap<String, BufferedImage> pending = new LinkedHashMap<String, BufferedImage>();
+    private final List<BufferedImage> pool = new ArrayList<BufferedImage>();
+    private String writing;
+    private Thread thread;
+
+    PictureWriteQueue(String threadName, Writer writer) {
+        this.threadName = threadName;
+        this.writer = writer;
+    }
+
+    /**
+     * Copies the picture and queues it for writing, replacing a queued one with the same name.
+     */
+    void enqueue(String name, Image picture) {
+        int width = picture.getWidth(null);
+        int height = picture.getHeight(null);
+        BufferedImage copy = obtainBuffer(width, height);
+        Graphics g = copy.getGraphics();
+        g.drawImage(picture, 0, 0, width, height, null);
+        g.dispose();
+
+        synchronized (this) {
+            BufferedImage replaced = pending.remove(name);
+            if (replaced != null)
+                recycle(replaced);
+            pending.put(name, copy);
+            if (thread == null) {
+                thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runWriter();
+                    }
+                }, threadName);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all pictures queued so far are written.
+     */
+    synchronized void awaitWritten() {
+        boolean interrupted = false;
+        while (!pending.isEmpty() || writing != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void runWriter() {
+        while (true) {
+            String name;
+            BufferedImage picture;
+            synchronized (this) {
+                while (pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // just continue
+                    }
+                }
+                Iterator<Map.Entry<String, BufferedImage>> it = pending.entrySet().iterator();
+                Map.Entry<String, BufferedImage> next = it.next();
+                it.remove();
+                name = next.getKey();
+                picture = next.getValue();
+                writing = name;
+            }
+            try {
+                writer.write(name, picture);
+            } catch (RuntimeException e) {
+                System.err.println("Exception while writing picture " + name);
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                writing = null;
+                recycle(picture);
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized BufferedImage obtainBuffer(int width, int height) {
+        for (Iterator<BufferedImage> it = pool.iterator(); it.hasNext();) {
+            BufferedImage buffer = it.next();
+            if (buffer.getWidth() == width && buffer.getHeight() == height) {
+                it.remove();
+                return buffer;
+            }
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private void recycle(BufferedImage buffer) {
+        if (pool.size() == MAX_POOLED_BUFFERS)
+            pool.remove(0);
+        pool.add(buffer);
+    }
+}
@@ -21,7 +21,15 @@ public class ProxyImage {
         void imageUpdated(ProxyImage img);
     }
 
+    /**
+     * Notified when the first listener is added or the last one is removed.
+     */
+    interface InterestListener {
+        void interestChanged(ProxyImage img, boolean wanted);
+    }
+
     private List<ImageUpdateListener> listeners = new ArrayList<ImageUpdateListener>();
+    private InterestListener interestListener;
     private Image img;
     public final String name;
 
@@ -51,10 +59,21 @@ public class ProxyImage {
 
     public void addImageUpdateListener(ImageUpdateListener l) {
         listeners.add(l);
+        if (listeners.size() == 1 && interestListener != null)
+            interestListener.interestChanged(this, true);
     }
 
     public void removeImageUpdateListener(ImageUpdateListener l) {
-        listeners.add(l);
+        if (listeners.remove(l) && listeners.isEmpty() && interestListener != null)
+            interestListener.interestChanged(this, false);
+    }
+
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    void setInterestListener(InterestListener interestListener) {
+        this.interestListener = interestListener;
     }
 
     public void draw(Graphics g, int x, int y, int width, int height) {
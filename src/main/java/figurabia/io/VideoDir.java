@@ -5,13 +5,9 @@
 package figurabia.io;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.IOUtils;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
 
 import exmoplay.access.MediaAnalyzer;
 import figurabia.io.workspace.Workspace;
@@ -21,11 +17,16 @@ public class VideoDir {
     private final Workspace workspace;
     private final String basePath;
     private final VideoMetaDataStore metaDataStore;
+    private final DigestCache digestCache;
+
+    // the size of the beginning and the end of a video, which are part of its fingerprint
+    private static final int FINGERPRINT_CHUNK_SIZE = 64 * 1024;
 
-    public VideoDir(Workspace workspace, String basePath, VideoMetaDataStore metaDataStore) {
+    public VideoDir(Workspace workspace, String basePath, VideoMetaDataStore metaDataStore, DigestCache digestCache) {
         this.workspace = workspace;
         this.basePath = basePath;
         this.metaDataStore = metaDataStore;
+        this.digestCache = digestCache;
     }
 
     /**
@@ -35,38 +36,88 @@ public class VideoDir {
      * @return the name under which the video was stored on the server
      */
     public String addVideo(File localVideoFile) throws IOException {
-        // generate md5/sha1 or the like of the file
-        String md5 = calculateMD5(localVideoFile);
-
+        String fingerprint = calculateFingerprint(localVideoFile);
+        addFingerprintsToOlderVideos();
         // look for existing video (if it exists just return that)
-        VideoMetaData existingMetaData = metaDataStore.getByMD5(md5);
-        if (existingMetaData != null)
-            return existingMetaData.getId();
-        else
-            // otherwise copy it in (via stream to support client/server later on)
-            return uploadVideo(localVideoFile, md5);
-
+        String existingId = findVideo(localVideoFile, fingerprint);
+        if (existingId != null)
+            return existingId;
+        // otherwise copy it in, calculating the MD5 sum while copying
+        String videoId = copyVideo(localVideoFile, fingerprint);
+        // add an entry to metaDataStore
+        storeMetaData(analyzeVideo(videoId, localVideoFile, fingerprint));
+        return videoId;
     }
 
-    private String calculateMD5(File localVideoFile) throws IOException {
-        String md5;
-        InputStream is = null;
+    /**
+     * @return the size of the file and the MD5 sum of its beginning and end, which are different for different videos
+     *         in practice (but only the MD5 sum of the whole file is certain)
+     */
+    public static String calculateFingerprint(File f) throws IOException {
+        MessageDigest digest = DigestCache.createMD5();
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
         try {
-            is = new FileInputStream(localVideoFile);
-            md5 = DigestUtils.md5Hex(is);
+            long size = raf.length();
+            byte[] chunk = new byte[(int) Math.min(FINGERPRINT_CHUNK_SIZE, size)];
+            raf.readFully(chunk);
+            digest.update(chunk);
+            raf.seek(size - chunk.length);
+            raf.readFully(chunk);
+            digest.update(chunk);
+            return size + ":" + DigestCache.toHex(digest);
         } finally {
-            IOUtils.closeQuietly(is);
+            raf.close();
+        }
+    }
+
+    /**
+     * Gives the videos added before fingerprints existed one (only once, it is stored with the meta data).
+     */
+    public void addFingerprintsToOlderVideos() throws IOException {
+        for (VideoMetaData md : metaDataStore.getAllWithoutFingerprint()) {
+            String path = basePath + "/" + md.getId();
+            if (workspace.exists(path)) {
+                md.setFingerprint(calculateFingerprint(workspace.fileForReading(path)));
+                metaDataStore.update(md);
+            }
         }
-        return md5;
     }
 
-    private String uploadVideo(File localVideoFile, String md5Sum) throws IOException {
+    /**
+     * Looks for a known video with the same content. Only if a known video has the same fingerprint, the whole file
+     * needs to be hashed.
+     * 
+     * @return the id of the video or null if it is not known yet
+     */
+    public String findVideo(File localVideoFile, String fingerprint) throws IOException {
+        if (metaDataStore.getByFingerprint(fingerprint) == null)
+            return null;
+        VideoMetaData existingMetaData = metaDataStore.getByMD5(digestCache.getMD5(localVideoFile));
+        return existingMetaData == null ? null : existingMetaData.getId();
+    }
+
+    /**
+     * @return the MD5 sum of the whole file (cached, e.g. for the files copied by {@link #copyVideo(File, String)})
+     */
+    public String getMD5(File localVideoFile) throws IOException {
+        return digestCache.getMD5(localVideoFile);
+    }
+
+    /**
+     * Copies the video into the workspace, calculating its MD5 sum while copying. It is copied to a partial path
+     * first, so an interrupted copy does not leave an incomplete video behind. A video without meta data, but with the
+     * same name (apart from the counter) and fingerprint is used again instead of copying it once more (it was copied
+     * by an interrupted import).
+     * 
+     * @return the id of the video
+     */
+    public synchronized String copyVideo(File localVideoFile, String fingerprint) throws IOException {
         // generate video name, which is also used as an id
         // try to reuse original video name, add extension in case of name collision
         String videoId;
         String videoPath;
         int counter = 0;
-        do {
+        while (true) {
             videoId = localVideoFile.getName();
             if (counter > 0) {
                 int extPos = videoId.lastIndexOf('.');
@@ -74,43 +125,49 @@ public class VideoDir {
             }
             counter++;
             videoPath = basePath + "/" + videoId;
-        } while (workspace.exists(videoPath));
+            if (!workspace.exists(videoPath))
+                break;
+            if (!metaDataStore.hasMetaData(videoId)
+                    && calculateFingerprint(workspace.fileForReading(videoPath)).equals(fingerprint))
+                return videoId;
+        }
 
         // copy video file to server
-        InputStream is = null;
-        OutputStream os = null;
-        try {
-            is = new FileInputStream(localVideoFile);
-            os = workspace.write(videoPath);
-            IOUtils.copy(is, os);
-        } finally {
-            IOUtils.closeQuietly(is);
-            IOUtils.closeQuietly(os);
-        }
-        workspace.finishedWriting(videoPath, true);
+        String partialPath = basePath + "/partial/" + videoId;
+        MessageDigest digest = DigestCache.createMD5();
+        workspace.importFile(localVideoFile, partialPath, digest);
+        workspace.move(partialPath, videoPath);
+        String md5Sum = DigestCache.toHex(digest);
+        digestCache.put(localVideoFile, md5Sum);
+        digestCache.put(workspace.fileForReading(videoPath), md5Sum);
+        return videoId;
+    }
 
-        // add an entry to metaDataStore
-        createAndStoreMetaData(videoId, localVideoFile, md5Sum);
+    /**
+     * Analyzes the copied video (this takes a while) and returns its meta data, which are not stored yet.
+     * 
+     * @param localVideoFile the original of the video (or the copy itself)
+     */
+    public VideoMetaData analyzeVideo(String videoId, File localVideoFile, String fingerprint) throws IOException {
+        VideoMetaData md = new VideoMetaData();
+        md.setId(videoId);
+        md.setMd5Sum(digestCache.getMD5(workspace.fileForReading(basePath + "/" + videoId)));
+        md.setFingerprint(fingerprint);
+        md.setMediaInfo(MediaAnalyzer.analyze(localVideoFile));
+        return md;
+    }
 
-        return videoId;
+    public void storeMetaData(VideoMetaData md) {
+        metaDataStore.createWithId(md);
     }
 
     public void createAndStoreMetaData(String videoId) throws IOException {
         String path = "/vids/" + videoId;
         try {
             File localVideoFile = workspace.fileForReading(path);
-            String md5Sum = calculateMD5(localVideoFile);
-            createAndStoreMetaData(videoId, localVideoFile, md5Sum);
+            storeMetaData(analyzeVideo(videoId, localVideoFile, calculateFingerprint(localVideoFile)));
         } finally {
             workspace.finishedWriting(path, true);
         }
     }
-
-    private void createAndStoreMetaData(String videoId, File localVideoFile, String md5Sum) throws IOException {
-        VideoMetaData md = new VideoMetaData();
-        md.setId(videoId);
-        md.setMd5Sum(md5Sum);
-        md.setMediaInfo(MediaAnalyzer.analyze(localVideoFile));
-        metaDataStore.createWithId(md);
-    }
 }
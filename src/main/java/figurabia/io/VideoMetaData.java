@@ -6,6 +6,7 @@ package figurabia.io;
 
 import exmoplay.access.MediaInfo;
 import figurabia.io.store.Identifiable;
+import figurabia.math.BeatGrid;
 
 /**
  * Stores all the meta data known about a video
@@ -17,7 +18,9 @@ public class VideoMetaData implements Identifiable {
     private String id;
     private String rev;
     private String md5Sum;
+    private String fingerprint;
     private MediaInfo mediaInfo;
+    private BeatGrid beatGrid;
 
     @Override
     public String getId() {
@@ -53,6 +56,21 @@ public class VideoMetaData implements Identifiable {
         this.md5Sum = md5Sum;
     }
 
+    /**
+     * @return the size and a hash of the beginning and end of the video (see {@link VideoDir}), null for videos added
+     *         before it existed
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @param fingerprint the fingerprint to set
+     */
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     /**
      * @return the mediaInfo
      */
@@ -66,4 +84,18 @@ public class VideoMetaData implements Identifiable {
     public void setMediaInfo(MediaInfo mediaInfo) {
         this.mediaInfo = mediaInfo;
     }
+
+    /**
+     * @return the beats detected in the audio, null if they were not detected yet
+     */
+    public BeatGrid getBeatGrid() {
+        return beatGrid;
+    }
+
+    /**
+     * @param beatGrid the beatGrid to set
+     */
+    public void setBeatGrid(BeatGrid beatGrid) {
+        this.beatGrid = beatGrid;
+    }
 }
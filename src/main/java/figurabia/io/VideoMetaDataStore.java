@@ -4,8 +4,12 @@
  */
 package figurabia.io;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.thoughtworks.xstream.XStream;
 
@@ -13,29 +17,51 @@ import exmoplay.access.MediaInfo;
 import figurabia.io.store.StoreListener;
 import figurabia.io.store.XStreamStore;
 import figurabia.io.workspace.Workspace;
+import figurabia.math.BeatGrid;
 
 public class VideoMetaDataStore extends XStreamStore<VideoMetaData> {
 
-    private Map<String, VideoMetaData> byMD5 = new HashMap<String, VideoMetaData>();
+    private static final XStreamFactory XSTREAM_FACTORY = new XStreamFactory() {
+        @Override
+        public XStream create() {
+            return createXStream();
+        }
+    };
+
+    // looked up by import threads too
+    private Map<String, VideoMetaData> byMD5 = new ConcurrentHashMap<String, VideoMetaData>();
+    private Map<String, VideoMetaData> byFingerprint = new ConcurrentHashMap<String, VideoMetaData>();
+    private Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public VideoMetaDataStore(Workspace workspace, String basePath) {
-        super(createXStream(), workspace, basePath, VideoMetaData.class);
+        super(XSTREAM_FACTORY, workspace, basePath, VideoMetaData.class);
 
         for (VideoMetaData vmd : allObjects()) {
+            ids.add(vmd.getId());
             byMD5.put(vmd.getMd5Sum(), vmd);
+            if (vmd.getFingerprint() != null)
+                byFingerprint.put(vmd.getFingerprint(), vmd);
         }
         addStoreListener(new StoreListener<VideoMetaData>() {
             @Override
             public void update(figurabia.io.store.StoreListener.StateChange change, VideoMetaData o) {
                 switch (change) {
                 case CREATED:
+                    ids.add(o.getId());
                     byMD5.put(o.getMd5Sum(), o);
+                    if (o.getFingerprint() != null)
+                        byFingerprint.put(o.getFingerprint(), o);
                     break;
                 case UPDATED:
-                    // should never happen, MD5 cannot change
+                    // MD5 cannot change, but older entries get a fingerprint
+                    if (o.getFingerprint() != null)
+                        byFingerprint.put(o.getFingerprint(), o);
                     break;
                 case DELETED:
+                    ids.remove(o.getId());
                     byMD5.remove(o.getMd5Sum());
+                    if (o.getFingerprint() != null)
+                        byFingerprint.remove(o.getFingerprint());
                     break;
                 }
             }
@@ -46,6 +72,7 @@ public class VideoMetaDataStore extends XStreamStore<VideoMetaData> {
         XStream xstream = new XStream();
         xstream.alias("VideoMetaData", VideoMetaData.class);
         xstream.alias("MediaInfo", MediaInfo.class);
+        xstream.alias("BeatGrid", BeatGrid.class);
         xstream.omitField(MediaInfo.class, "audioSamplesInfoBySamplesOffset");
         xstream.omitField(MediaInfo.class, "videoPictureInfoDecompressed");
         return xstream;
@@ -54,4 +81,33 @@ public class VideoMetaDataStore extends XStreamStore<VideoMetaData> {
     public VideoMetaData getByMD5(String md5) {
         return byMD5.get(md5);
     }
+
+    /**
+     * Like {@link #exists(String)}, but can be called in any thread (the store itself is only used in the event
+     * dispatch thread).
+     *
+     * @return whether there are meta data for the video
+     */
+    public boolean hasMetaData(String videoId) {
+        return ids.contains(videoId);
+    }
+
+    /**
+     * @return a video with the given fingerprint (possibly a different video with the same size, beginning and end)
+     */
+    public VideoMetaData getByFingerprint(String fingerprint) {
+        return byFingerprint.get(fingerprint);
+    }
+
+    /**
+     * @return the videos which were added before fingerprints existed
+     */
+    public List<VideoMetaData> getAllWithoutFingerprint() {
+        List<VideoMetaData> list = new ArrayList<VideoMetaData>();
+        for (VideoMetaData vmd : allObjects()) {
+            if (vmd.getFingerprint() == null)
+                list.add(vmd);
+        }
+        return list;
+    }
 }
@@ -23,6 +23,34 @@ public abstract class AbstractStore<T extends Identifiable> implements Store<T>
         return o.getId();
     }
 
+    /**
+     * @see figurabia.io.store.Store#batch(figurabia.io.store.Store[])
+     */
+    @Override
+    public Batch batch(Store<?>... others) {
+        Batch batch = new Batch();
+        batch.join(this);
+        for (Store<?> other : others) {
+            batch.join(other);
+        }
+        return batch;
+    }
+
+    /**
+     * Starts buffering all changes until {@link #commitBatch()} or {@link #discardBatch()} is called.
+     */
+    protected abstract void beginBatch();
+
+    /**
+     * Writes all buffered changes and notifies the listeners once per changed object.
+     */
+    protected abstract void commitBatch();
+
+    /**
+     * Drops all buffered changes.
+     */
+    protected abstract void discardBatch();
+
     /**
      * @see figurabia.io.store.Store#addStoreListener(figurabia.io.store.StoreListener)
      */
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of changes on one or more stores, which are buffered until they are committed together. Typical usage:
+ * 
+ * <pre>
+ * Batch batch = figureStore.batch(treeStore);
+ * try {
+ *     figureStore.create(f);
+ *     treeStore.create(item);
+ *     batch.commit();
+ * } finally {
+ *     batch.discard(); // does nothing if already committed
+ * }
+ * </pre>
+ * 
+ * @author Samuel Berner
+ */
+public class Batch {
+
+    private final List<AbstractStore<?>> stores = new ArrayList<AbstractStore<?>>();
+    private boolean ended;
+
+    Batch() {
+    }
+
+    void join(Store<?> store) {
+        if (!(store instanceof AbstractStore))
+            throw new IllegalArgumentException("store does not support batches: " + store);
+        AbstractStore<?> s = (AbstractStore<?>) store;
+        if (stores.contains(s))
+            return;
+        s.beginBatch();
+        stores.add(s);
+    }
+
+    /**
+     * Writes the changes of all stores in the batch (one store after the other).
+     */
+    public void commit() {
+        if (ended)
+            throw new IllegalStateException("batch was already committed or discarded");
+        ended = true;
+        int committed = 0;
+        try {
+            for (; committed < stores.size(); committed++) {
+                stores.get(committed).commitBatch();
+            }
+        } finally {
+            // in case of an error, the stores not committed yet leave batch mode too
+            for (int i = committed + 1; i < stores.size(); i++) {
+                stores.get(i).discardBatch();
+            }
+        }
+    }
+
+    /**
+     * Drops all changes of the batch, if it was not committed yet.
+     */
+    public void discard() {
+        if (ended)
+            return;
+        ended = true;
+        for (AbstractStore<?> s : stores) {
+            s.discardBatch();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io.store;
+
+/**
+ * Timing and counts collected while a store loads its objects at startup (from the individual files in parallel or
+ * from a snapshot).
+ *
+ * @author Samuel Berner
+ */
+public class LoadStatistics {
+
+    private final String basePath;
+    private final int threads;
+    private int objectsIndexed;
+    private int objectsParsed;
+    private long listingNanos;
+    private long parsingNanos;
+    private boolean fromSnapshot;
+
+    LoadStatistics(String basePath, int threads) {
+        this.basePath = basePath;
+        this.threads = threads;
+    }
+
+    synchronized void listed(int objects, long nanos) {
+        objectsIndexed = objects;
+        listingNanos += nanos;
+    }
+
+    synchronized void parsed(int objects, long nanos) {
+        objectsParsed += objects;
+        parsingNanos += nanos;
+    }
+
+    synchronized void parsedFromSnapshot(int objects, long nanos) {
+        parsed(objects, nanos);
+        fromSnapshot = true;
+    }
+
+    public String getBasePath() {
+        return basePath;
+    }
+
+    /**
+     * @return the number of threads used for parsing
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the number of objects found when listing the store's directory
+     */
+    public synchronized int getObjectsIndexed() {
+        return objectsIndexed;
+    }
+
+    /**
+     * @return the number of objects that were fully deserialized so far (in bulk, not counting single reloads)
+     */
+    public synchronized int getObjectsParsed() {
+        return objectsParsed;
+    }
+
+    /**
+     * @return true if the objects were loaded from a snapshot instead of the individual files
+     */
+    public synchronized boolean isFromSnapshot() {
+        return fromSnapshot;
+    }
+
+    public synchronized long getListingMillis() {
+        return listingNanos / 1000000L;
+    }
+
+    public synchronized long getParsingMillis() {
+        return parsingNanos / 1000000L;
+    }
+
+    public synchronized long getTotalMillis() {
+        return (listingNanos + parsingNanos) / 1000000L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return basePath + ": " + objectsIndexed + " objects indexed, " + objectsParsed + " parsed in "
+                + getTotalMillis() + " ms (" + (fromSnapshot ? "snapshot" : "parallel") + ", " + threads
+                + " threads; listing " + getListingMillis() + " ms, parsing " + getParsingMillis() + " ms)";
+    }
+}
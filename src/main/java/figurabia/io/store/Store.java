@@ -72,6 +72,17 @@ public interface Store<T extends Identifiable> {
      */
     boolean exists(String id);
 
+    /**
+     * Starts a batch on this store and the given other stores. Until the batch is committed, all creates, updates and
+     * deletes on these stores are only buffered (ids and revisions are assigned immediately though). On commit, each
+     * store writes its changes in one pass and sends only one notification per changed object. Committing is not
+     * atomic across several stores.
+     * 
+     * @param others other stores, which should be part of the same batch
+     * @return the batch, which must be either committed or discarded
+     */
+    Batch batch(Store<?>... others);
+
     /**
      * Adds a StoreListener.
      * 
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+
+import figurabia.io.workspace.Workspace;
+
+/**
+ * An append-only write-ahead log for a store. Every create/update/delete is appended as a small record, the individual
+ * object files are only written later in the background by compacting the journal. On opening, records left over from
+ * a crash are replayed into the object files.
+ * <p>
+ * Appending only queues the record, a background thread writes all queued records and makes them durable with one
+ * fsync, so the caller (usually the event dispatch thread) never waits for the disk. The price is that a crash may lose
+ * the changes of the last moments (those not synced yet), and that a write error is only reported with the next
+ * change (or by {@link #sync()} and {@link #close()}). Use {@link #sync()} where a change must be durable.
+ * <p>
+ * The journal file itself is private to the store, so no workspace update events are sent for it.
+ *
+ * @author Samuel Berner
+ */
+public class StoreJournal {
+
+    public static final String NAME = "journal.log";
+
+    /**
+     * Writes the compacted state of objects into the object files of the store.
+     */
+    public interface Compactor {
+        void writeObject(String id, String data);
+
+        void deleteObject(String id);
+    }
+
+    private static final byte STORE = 1;
+    private static final byte DELETE = 2;
+    /**
+     * The journal is compacted once no record was appended for this time...
+     */
+    private static final long COMPACTION_IDLE_MILLIS = 2000;
+    /**
+     * ...or when it grows larger than this.
+     */
+    private static final long MAX_JOURNAL_BYTES = 4 * 1024 * 1024;
+
+    private static class Record {
+        final byte op;
+        final String id;
+        final String data;
+        long seq;
+
+        Record(byte op, String id, String data) {
+            this.op = op;
+            this.id = id;
+            this.data = data;
+        }
+    }
+
+    private final Workspace workspace;
+    private final String path;
+    private Compactor compactor;
+    private FileChannel channel;
+    private Thread writer;
+
+    // all guarded by this
+    private final LinkedList<Record> queue = new LinkedList<Record>();
+    // the latest record of every object not compacted yet (appended, maybe not written yet)
+    private final Map<String, Record> pending = new LinkedHashMap<String, Record>();
+    private long appendedSeq;
+    private long durableSeq;
+    private IOException failure;
+    private boolean closed;
+
+    public StoreJournal(Workspace workspace, String path) {
+        this.workspace = workspace;
+        this.path = path;
+    }
+
+    /**
+     * Opens the journal, replays all complete records left in it into the object files and starts the background
+     * writer.
+     *
+     * @param compactor writes the object files
+     */
+    public void open(Compactor compactor) {
+        this.compactor = compactor;
+        File file = workspace.fileForWriting(path);
+        try {
+            Map<String, Record> records = new LinkedHashMap<String, Record>();
+            long validLength = readRecords(file, records);
+            if (!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+                throw new IOException("could not create directory for " + path);
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            if (!records.isEmpty()) {
+                System.out.println("Replaying " + records.size() + " records from journal " + path);
+                synchronized (this) {
+                    pending.putAll(records);
+                }
+            }
+            if (records.isEmpty() || !compact()) {
+                // drop incomplete records at the end (if any), keeping the ones not compacted
+                channel.truncate(records.isEmpty() ? 0 : validLength);
+                channel.position(channel.size());
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new StoreException("Could not open journal " + path, e);
+        }
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "StoreJournal" + path);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends the new state of an object.
+     *
+     * @param id the id of the object
+     * @param data the serialized object
+     */
+    public void appendStore(String id, String data) {
+        append(Collections.singletonList(new Record(STORE, id, data)));
+    }
+
+    /**
+     * Appends the deletion of an object.
+     *
+     * @param id the id of the object
+     */
+    public void appendDelete(String id) {
+        append(Collections.singletonList(new Record(DELETE, id, null)));
+    }
+
+    /**
+     * Appends several changes, which are written together.
+     *
+     * @param changes the serialized objects by id (null for deleting the object)
+     */
+    public void appendAll(Map<String, String> changes) {
+        List<Record> records = new ArrayList<Record>(changes.size());
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() != null)
+                records.add(new Record(STORE, e.getKey(), e.getValue()));
+            else
+                records.add(new Record(DELETE, e.getKey(), null));
+        }
+        append(records);
+    }
+
+    /**
+     * Returns true if the object was deleted, but its file is not removed yet.
+     *
+     * @param id the id of the object
+     * @return whether a delete is waiting for compaction
+     */
+    public synchronized boolean isDeletePending(String id) {
+        Record r = pending.get(id);
+        return r != null && r.op == DELETE;
+    }
+
+    /**
+     * Waits until all changes appended so far are durable.
+     *
+     * @throws StoreException if they could not be written
+     */
+    public synchronized void sync() {
+        long seq = appendedSeq;
+        boolean interrupted = false;
+        while (durableSeq < seq && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (durableSeq < seq)
+            throw new StoreException("Could not write to journal " + path, failure);
+    }
+
+    /**
+     * Compacts all pending records and stops the background writer.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (failure != null)
+            throw new StoreException("Could not write to journal " + path, failure);
+    }
+
+    private synchronized void append(List<Record> records) {
+        if (closed)
+            throw new StoreException("Journal " + path + " is already closed");
+        if (failure != null)
+            throw new StoreException("Could not write to journal " + path, failure);
+        for (Record r : records) {
+            r.seq = ++appendedSeq;
+            queue.add(r);
+            pending.put(r.id, r);
+        }
+        notifyAll();
+    }
+
+    private void runWriter() {
+        while (true) {
+            List<Record> batch;
+            boolean stop;
+            synchronized (this) {
+                if (queue.isEmpty() && !closed) {
+                    try {
+                        wait(COMPACTION_IDLE_MILLIS);
+                    } catch (InterruptedException e) {
+                        // just continue
+                    }
+                }
+                batch = new ArrayList<Record>(queue);
+                queue.clear();
+                stop = closed && batch.isEmpty();
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    // group commit: all records collected so far share one fsync
+                    for (Record r : batch) {
+                        write(r);
+                    }
+                    channel.force(false);
+                    synchronized (this) {
+                        durableSeq = batch.get(batch.size() - 1).seq;
+                        notifyAll();
+                    }
+                }
+                if (batch.isEmpty() || channel.size() > MAX_JOURNAL_BYTES) {
+                    compact();
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing journal " + path + ", no more updates possible.");
+                e.printStackTrace();
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            if (stop)
+                return;
+        }
+    }
+
+    /**
+     * Writes the latest state of every pending object to its file and truncates the journal. Only called from the
+     * writer thread (or while opening), so no records are written to the file meanwhile. Records appended meanwhile
+     * are still in the queue, they are written to the journal afterwards.
+     *
+     * @return false if the object files could not be written (the journal is kept then)
+     */
+    private boolean compact() throws IOException {
+        List<Record> records;
+        synchronized (this) {
+            if (pending.isEmpty())
+                return true;
+            records = new ArrayList<Record>(pending.values());
+        }
+        try {
+            for (Record r : records) {
+                if (r.op == STORE)
+                    compactor.writeObject(r.id, r.data);
+                else
+                    compactor.deleteObject(r.id);
+            }
+        } catch (RuntimeException e) {
+            // keep the journal, compaction is retried later
+            System.err.println("Error compacting journal " + path);
+            e.printStackTrace();
+            return false;
+        }
+        channel.truncate(0);
+        channel.force(false);
+        synchronized (this) {
+            for (Record r : records) {
+                if (pending.get(r.id) == r)
+                    pending.remove(r.id);
+            }
+        }
+        return true;
+    }
+
+    private void write(Record r) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(r.op);
+        out.writeUTF(r.id);
+        if (r.op == STORE) {
+            byte[] data = r.data.getBytes("UTF-8");
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(payload.length + 8);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads all complete records, stopping at the first one that is truncated or corrupt (from a crash while
+     * appending). Only the latest record per object is kept.
+     *
+     * @param records receives the records by id
+     * @return the length of the complete records
+     */
+    private static long readRecords(File file, Map<String, Record> records) throws IOException {
+        long validLength = 0;
+        if (!file.exists())
+            return validLength;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            while (true) {
+                byte[] payload;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0 || length > file.length())
+                        break;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum)
+                    break;
+
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(payload));
+                byte op = recordIn.readByte();
+                String id = recordIn.readUTF();
+                String data = null;
+                if (op == STORE) {
+                    byte[] dataBytes = new byte[recordIn.readInt()];
+                    recordIn.readFully(dataBytes);
+                    data = new String(dataBytes, "UTF-8");
+                }
+                records.remove(id); // keep the order of the latest change
+                records.put(id, new Record(op, id, data));
+                validLength += 8 + payload.length;
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return validLength;
+    }
+}
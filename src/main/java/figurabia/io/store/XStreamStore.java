@@ -9,99 +9,281 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.IOUtils;
 
+import javax.swing.SwingUtilities;
+
 import com.thoughtworks.xstream.XStream;
 
 import figurabia.io.store.StoreListener.StateChange;
 import figurabia.io.workspace.Workspace;
 import figurabia.io.workspace.Workspace.ChangeType;
 import figurabia.io.workspace.Workspace.WorkspaceUpdateListener;
+import figurabia.io.workspace.WorkspaceException;
 
 public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
 
+    /**
+     * Creates configured XStream instances. Every thread that loads or stores objects gets its own instance.
+     */
+    public interface XStreamFactory {
+        XStream create();
+    }
+
     private final static String SUFFIX = ".xml";
+    private final static int MAX_LOADING_THREADS = 8;
+    /**
+     * Number of characters read from the start of a file to find the revision.
+     */
+    private final static int REVISION_SCAN_LENGTH = 512;
 
     private final Workspace workspace;
     private final String basePath;
-    private final XStream xstream;
+    private final ThreadLocal<XStream> xstream;
     private final Class<T> type;
+    private final LoadStatistics loadStatistics;
     private Map<String, String> currentRevisions = new HashMap<String, String>();
     private Map<String, T> cache = new HashMap<String, T>();
+    private final StoreJournal journal;
     private long idCounter;
 
-    public XStreamStore(XStream xstream, Workspace workspace, String basePath, Class<T> type) {
+    /**
+     * A change buffered during a batch (object is null for a delete).
+     */
+    private static class BufferedChange<T> {
+        final T object;
+        final boolean existedBefore;
+
+        BufferedChange(T object, boolean existedBefore) {
+            this.object = object;
+            this.existedBefore = existedBefore;
+        }
+    }
+
+    // all null while no batch is active
+    private Map<String, BufferedChange<T>> batch;
+    private Map<String, String> revisionsBeforeBatch;
+    // the revisions the buffered objects themselves had, they are edited in place and may be the cached ones
+    private Map<T, String> objectRevisionsBeforeBatch;
+
+    public XStreamStore(XStreamFactory xstreamFactory, Workspace workspace, String basePath, Class<T> type) {
+        this(xstreamFactory, workspace, basePath, type, null);
+    }
+
+    /**
+     * Creates a store that optionally writes through a journal: updates are then only appended to the journal and the
+     * object files are written in the background. Records left in the journal are replayed before loading.
+     * 
+     * @param journal the journal to use or null to write each object file directly
+     */
+    public XStreamStore(final XStreamFactory xstreamFactory, Workspace workspace, String basePath, Class<T> type,
+            StoreJournal journal) {
         this.workspace = workspace;
         this.basePath = basePath;
-        this.xstream = xstream;
+        this.xstream = new ThreadLocal<XStream>() {
+            @Override
+            protected XStream initialValue() {
+                return xstreamFactory.create();
+            }
+        };
         this.type = type;
-        idCounter = getHighestExistingId() + 1;
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_LOADING_THREADS));
+        loadStatistics = new LoadStatistics(basePath, threads);
+        this.journal = journal;
+        if (journal != null) {
+            journal.open(new StoreJournal.Compactor() {
+                @Override
+                public void writeObject(String id, String data) {
+                    writeCompacted(id, data);
+                }
+
+                @Override
+                public void deleteObject(String id) {
+                    deleteCompacted(id);
+                }
+            });
+        }
+
+        // list only once, the same ids are used for the id counter and for prefilling the cache
+        long listingStart = System.nanoTime();
+        List<String> ids = listIds();
+        loadStatistics.listed(ids.size(), System.nanoTime() - listingStart);
+        idCounter = getHighestExistingId(ids) + 1;
 
-        // add workspace listener
+        // add workspace listener (only changes not made by this store lead to reloading, see externallyStored)
         workspace.addWorkspaceUpdateListener(basePath, new WorkspaceUpdateListener() {
             @Override
             public void update(ChangeType type, String changedResourcePath) {
-                String id = pathToId(changedResourcePath);
+                // ignore other resources sharing the prefix (e.g. snapshots)
+                if (!isObjectPath(changedResourcePath))
+                    return;
+                final String id = pathToId(changedResourcePath);
                 switch (type) {
                 case CREATED:
-                    T o1 = load(id);
-                    notifyStoreListeners(StateChange.CREATED, o1);
-                    break;
                 case UPDATED:
-                    T o2 = load(id);
-                    notifyStoreListeners(StateChange.UPDATED, o2);
+                    // read the revision here, to keep the file access away from the event dispatch thread
+                    final String rev;
+                    try {
+                        rev = readRevision(id);
+                    } catch (StoreException e) {
+                        // deleted in the meantime
+                        return;
+                    }
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            externallyStored(id, rev);
+                        }
+                    });
                     break;
                 case DELETED:
-                    T o3 = cache.remove(id);
-                    currentRevisions.remove(id);
-                    notifyStoreListeners(StateChange.DELETED, o3);
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            externallyDeleted(id);
+                        }
+                    });
                     break;
                 }
             }
         });
 
-        // prefill cache
-        List<String> objectPaths = workspace.list(basePath);
-        for (String path : objectPaths) {
+        // prefill cache (from a snapshot if there is a current one)
+        long snapshotStart = System.nanoTime();
+        Map<String, T> snapshot = loadSnapshot(ids);
+        if (snapshot != null && snapshot.keySet().equals(new HashSet<String>(ids))) {
+            for (String id : ids) {
+                loaded(id, snapshot.get(id));
+            }
+            loadStatistics.parsedFromSnapshot(ids.size(), System.nanoTime() - snapshotStart);
+        } else {
+            loadAll(ids);
+        }
+    }
+
+    private boolean isObjectPath(String path) {
+        return path.startsWith(basePath + "/") && path.endsWith(SUFFIX)
+                && path.indexOf('/', basePath.length() + 1) == -1;
+    }
+
+    private List<String> listIds() {
+        List<String> ids = new ArrayList<String>();
+        for (String path : workspace.list(basePath)) {
             if (path.endsWith(SUFFIX)) {
-                String id = pathToId(path);
-                load(id);
+                ids.add(pathToId(path));
             }
         }
+        return ids;
     }
 
-    private long getHighestExistingId() {
-        List<String> resources = workspace.list(basePath);
-        int offset = basePath.length() + 1;
+    private long getHighestExistingId(List<String> ids) {
         long highest = 0;
-        for (String r : resources) {
-            if (r.endsWith(SUFFIX)) {
-                String numString = r.substring(offset, r.length() - SUFFIX.length());
-                if (Character.isDigit(numString.charAt(0))) {
-                    try {
-                        long num = Long.valueOf(numString);
-                        if (num > highest)
-                            highest = num;
-                    } catch (NumberFormatException e) {
-                        // just continue
-                    }
+        for (String numString : ids) {
+            if (numString.length() > 0 && Character.isDigit(numString.charAt(0))) {
+                try {
+                    long num = Long.valueOf(numString);
+                    if (num > highest)
+                        highest = num;
+                } catch (NumberFormatException e) {
+                    // just continue
                 }
             }
         }
         return highest;
     }
 
+    /**
+     * Deserializes the given objects on a bounded pool of threads (each with its own XStream) and puts them into the
+     * cache. The postLoad processing is done in the calling thread, so subclasses do not need to be thread-safe.
+     * 
+     * @param ids the ids of the objects to load
+     */
+    private void loadAll(final List<String> ids) {
+        if (ids.isEmpty())
+            return;
+        long start = System.nanoTime();
+        int threads = Math.min(loadStatistics.getThreads(), ids.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new LoaderThreadFactory(basePath));
+        try {
+            List<Callable<T>> tasks = new ArrayList<Callable<T>>(ids.size());
+            for (final String id : ids) {
+                tasks.add(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        return parse(id);
+                    }
+                });
+            }
+            List<Future<T>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < ids.size(); i++) {
+                T object = results.get(i).get();
+                loaded(ids.get(i), object);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StoreException("Interrupted while loading objects from " + basePath, e);
+        } catch (ExecutionException e) {
+            throw new StoreException("Error while loading objects from " + basePath, e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        loadStatistics.parsed(ids.size(), System.nanoTime() - start);
+    }
+
+    private String readRevision(String id) {
+        Reader r = null;
+        try {
+            r = new InputStreamReader(workspace.read(idToPath(id)));
+            char[] buffer = new char[REVISION_SCAN_LENGTH];
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = r.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            String head = new String(buffer, 0, length);
+            int start = head.indexOf("<rev>");
+            int end = head.indexOf("</rev>");
+            if (start == -1 || end < start)
+                return null;
+            return head.substring(start + "<rev>".length(), end).trim();
+        } catch (IOException e) {
+            throw new StoreException("Could not read revision of " + idToPath(id), e);
+        } finally {
+            IOUtils.closeQuietly(r);
+        }
+    }
+
+    /**
+     * @return the timing and counts of loading this store at startup (e.g. to print them when measuring)
+     */
+    public LoadStatistics getLoadStatistics() {
+        return loadStatistics;
+    }
+
     @Override
     public String create(T o) {
         String id = Long.toString(idCounter++);
+        String previousRev = o.getRev();
         o.setId(id);
         o.setRev("0");
-        store(o);
+        store(o, previousRev);
         return id;
     }
 
@@ -115,7 +297,7 @@ public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
                     + currentRevision);
         o.setRev(Long.toString(Long.valueOf(rev) + 1));
         try {
-            store(o);
+            store(o, rev);
         } catch (RuntimeException e) {
             o.setRev(rev); // restore, to avoid autoincrementing through automatic retry (could lead to loss of updates)
             throw e;
@@ -124,6 +306,10 @@ public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
 
     @Override
     public T read(String id) {
+        if (batch != null && batch.containsKey(id) && batch.get(id).object != null) {
+            // not written yet, so return the buffered object itself
+            return batch.get(id).object;
+        }
         if (!cache.containsKey(id)) {
             return load(id);
         }
@@ -135,7 +321,15 @@ public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
         String id = o.getId();
         String currentRev = getCurrentRevision(id);
         if (o.getRev().equals(currentRev)) {
-            workspace.delete(idToPath(id));
+            if (batch != null) {
+                buffer(id, null, null);
+            } else if (journal != null) {
+                journal.appendDelete(id);
+                T removed = removed(id);
+                notifyStoreListeners(StateChange.DELETED, removed);
+            } else {
+                deleteFile(id, o);
+            }
         } else
             throw new StoreException("Object is stale (rev " + o.getRev() + "). Newer revision in store: "
                     + currentRev);
@@ -143,20 +337,44 @@ public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
 
     @Override
     public boolean exists(String id) {
+        if (batch != null && batch.containsKey(id)) {
+            return batch.get(id).object != null;
+        }
+        if (journal != null) {
+            // the object file might not be written yet (or not deleted yet)
+            if (cache.containsKey(id))
+                return true;
+            if (journal.isDeletePending(id))
+                return false;
+        }
         String path = idToPath(id);
         return workspace.exists(path);
     }
 
     private T load(String id) {
+        T object = parse(id);
+        loaded(id, object);
+        return object;
+    }
+
+    private void loaded(String id, T object) {
+        postLoad(object);
+        cache.put(id, object);
+        currentRevisions.put(id, object.getRev());
+    }
+
+    private T removed(String id) {
+        T o = cache.remove(id);
+        currentRevisions.remove(id);
+        return o;
+    }
+
+    private T parse(String id) {
         String path = idToPath(id);
         Reader r = null;
         try {
             r = new InputStreamReader(workspace.read(path));
-            T object = type.cast(xstream.fromXML(r));
-            postLoad(object);
-            cache.put(id, object);
-            currentRevisions.put(id, object.getRev());
-            return object;
+            return type.cast(xstream.get().fromXML(r));
         } finally {
             if (r != null) {
                 try {
@@ -168,18 +386,252 @@ public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
         }
     }
 
-    private void store(T o) {
+    /**
+     * @param previousRev the revision the object had before the change (restored if the change is discarded)
+     */
+    private void store(T o, String previousRev) {
+        if (batch != null) {
+            buffer(o.getId(), o, previousRev);
+            return;
+        }
         preStore(o);
-        String path = idToPath(o.getId());
+        if (journal != null) {
+            storeInJournal(o);
+            return;
+        }
+        writeFile(o);
+    }
+
+    private void writeFile(T o) {
+        boolean existed = writeData(o);
+        notifyStoreListeners(existed ? StateChange.UPDATED : StateChange.CREATED, o);
+    }
+
+    /**
+     * Writes the object file and keeps the written object, but does not notify the listeners.
+     *
+     * @return whether the file existed before
+     */
+    private boolean writeData(T o) {
+        String id = o.getId();
+        String path = idToPath(id);
         Writer w = null;
         boolean existed = workspace.exists(path);
+        String data = xstream.get().toXML(o);
         try {
             w = new OutputStreamWriter(workspace.write(path));
-            xstream.toXML(o, w);
+            w.write(data);
+        } catch (IOException e) {
+            throw new StoreException("Could not write " + path, e);
         } finally {
             IOUtils.closeQuietly(w);
         }
         workspace.finishedWriting(path, !existed);
+
+        // the store keeps the written object itself, so the workspace change does not need to be read back
+        loaded(id, o);
+        return existed;
+    }
+
+    private void deleteFile(String id, T o) {
+        T removed = deleteData(id, o);
+        if (removed != null)
+            notifyStoreListeners(StateChange.DELETED, removed);
+    }
+
+    /**
+     * Deletes the object file, but does not notify the listeners.
+     *
+     * @return the removed object (or the given one if it was not cached)
+     */
+    private T deleteData(String id, T o) {
+        workspace.delete(idToPath(id));
+        T removed = removed(id);
+        return removed != null ? removed : o;
+    }
+
+    /**
+     * Handles a written object file, which is only reloaded if it has a newer revision than the store has (so not
+     * after the store's own writes or the writes of the journal compaction).
+     */
+    private void externallyStored(String id, String rev) {
+        // the compaction may write an object which was deleted in the meantime
+        if (journal != null && journal.isDeletePending(id))
+            return;
+        String currentRev = currentRevisions.get(id);
+        if (currentRev != null && (rev == null || Long.valueOf(rev) <= Long.valueOf(currentRev)))
+            return;
+        T o = load(id);
+        notifyStoreListeners(currentRev == null ? StateChange.CREATED : StateChange.UPDATED, o);
+    }
+
+    /**
+     * Handles a deleted object file, if the store still has the object (not after its own deletes).
+     */
+    private void externallyDeleted(String id) {
+        if (!currentRevisions.containsKey(id) || workspace.exists(idToPath(id)))
+            return;
+        T removed = removed(id);
+        if (removed != null)
+            notifyStoreListeners(StateChange.DELETED, removed);
+    }
+
+    private void storeInJournal(T o) {
+        String id = o.getId();
+        boolean existed = exists(id);
+        String data = xstream.get().toXML(o);
+        journal.appendStore(id, data);
+
+        // written and synced in the background (see StoreJournal), the store is updated like after writing the file
+        loaded(id, o);
+        notifyStoreListeners(existed ? StateChange.UPDATED : StateChange.CREATED, o);
+    }
+
+    private void buffer(String id, T o, String previousRev) {
+        BufferedChange<T> previous = batch.get(id);
+        boolean existedBefore = previous != null ? previous.existedBefore : exists(id);
+        if (!revisionsBeforeBatch.containsKey(id))
+            revisionsBeforeBatch.put(id, currentRevisions.get(id));
+        if (o != null && !objectRevisionsBeforeBatch.containsKey(o))
+            objectRevisionsBeforeBatch.put(o, previousRev);
+        // revisions are tracked immediately, so further updates in the same batch are not stale
+        if (o != null)
+            currentRevisions.put(id, o.getRev());
+        else
+            currentRevisions.remove(id);
+        batch.remove(id); // keep the order of the latest change
+        batch.put(id, new BufferedChange<T>(o, existedBefore));
+    }
+
+    @Override
+    protected void beginBatch() {
+        if (batch != null)
+            throw new IllegalStateException("there is already a batch active on store " + basePath);
+        batch = new LinkedHashMap<String, BufferedChange<T>>();
+        revisionsBeforeBatch = new HashMap<String, String>();
+        objectRevisionsBeforeBatch = new IdentityHashMap<T, String>();
+    }
+
+    private void endBatch() {
+        batch = null;
+        revisionsBeforeBatch = null;
+        objectRevisionsBeforeBatch = null;
+    }
+
+    /**
+     * Writes the buffered changes. The batch is only ended after they are written, if writing fails, the changes not
+     * written are discarded (see {@link #discardBatch()}).
+     */
+    @Override
+    protected void commitBatch() {
+        Map<String, BufferedChange<T>> changes = batch;
+
+        if (journal != null) {
+            // one journal commit for the whole batch, then one notification per object
+            Map<String, String> data = new LinkedHashMap<String, String>();
+            try {
+                for (Map.Entry<String, BufferedChange<T>> e : changes.entrySet()) {
+                    T o = e.getValue().object;
+                    if (o != null) {
+                        preStore(o);
+                        data.put(e.getKey(), xstream.get().toXML(o));
+                    } else if (e.getValue().existedBefore) {
+                        data.put(e.getKey(), null);
+                    }
+                }
+                journal.appendAll(data);
+            } catch (RuntimeException e) {
+                discardBatch();
+                throw e;
+            }
+            endBatch();
+            for (Map.Entry<String, String> e : data.entrySet()) {
+                String id = e.getKey();
+                if (e.getValue() != null) {
+                    T stored = changes.get(id).object;
+                    loaded(id, stored);
+                    notifyStoreListeners(changes.get(id).existedBefore ? StateChange.UPDATED : StateChange.CREATED,
+                            stored);
+                } else {
+                    notifyStoreListeners(StateChange.DELETED, removed(id));
+                }
+            }
+        } else {
+            // every file is written once, the listeners are notified when the batch has ended
+            List<StateChange> stateChanges = new ArrayList<StateChange>();
+            List<T> changed = new ArrayList<T>();
+            try {
+                Iterator<Map.Entry<String, BufferedChange<T>>> it = changes.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, BufferedChange<T>> e = it.next();
+                    T o = e.getValue().object;
+                    if (o != null) {
+                        preStore(o);
+                        boolean existed = writeData(o);
+                        stateChanges.add(existed ? StateChange.UPDATED : StateChange.CREATED);
+                        changed.add(o);
+                    } else if (e.getValue().existedBefore) {
+                        T removed = deleteData(e.getKey(), null);
+                        if (removed != null) {
+                            stateChanges.add(StateChange.DELETED);
+                            changed.add(removed);
+                        }
+                    }
+                    // written, so it cannot be discarded any more
+                    revisionsBeforeBatch.remove(e.getKey());
+                    if (o != null)
+                        objectRevisionsBeforeBatch.remove(o);
+                    it.remove();
+                }
+            } catch (RuntimeException e) {
+                discardBatch();
+                throw e;
+            } finally {
+                endBatch();
+                for (int i = 0; i < changed.size(); i++) {
+                    notifyStoreListeners(stateChanges.get(i), changed.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the buffered changes and restores the revisions of the store and of the buffered objects.
+     */
+    @Override
+    protected void discardBatch() {
+        if (batch == null)
+            return;
+        for (Map.Entry<String, String> e : revisionsBeforeBatch.entrySet()) {
+            if (e.getValue() == null)
+                currentRevisions.remove(e.getKey());
+            else
+                currentRevisions.put(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<T, String> e : objectRevisionsBeforeBatch.entrySet()) {
+            e.getKey().setRev(e.getValue());
+        }
+        endBatch();
+    }
+
+    /**
+     * Writes an object file for the journal compaction. The store already has the object (or a newer revision of it),
+     * so the resulting workspace change is ignored by the store. The file is written atomically and forced to the
+     * disk, because the journal records are dropped afterwards.
+     */
+    private void writeCompacted(String id, String data) {
+        String path = idToPath(id);
+        try {
+            workspace.writeAtomically(path, data.getBytes());
+        } catch (WorkspaceException e) {
+            throw new StoreException("Could not write " + path, e);
+        }
+    }
+
+    private void deleteCompacted(String id) {
+        String path = idToPath(id);
+        if (workspace.exists(path))
+            workspace.delete(path);
     }
 
     private String getCurrentRevision(String id) {
@@ -191,7 +643,15 @@ public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
         return currentRevisions.get(id);
     }
 
-    private String idToPath(String id) {
+    protected Workspace getWorkspace() {
+        return workspace;
+    }
+
+    protected String getBasePath() {
+        return basePath;
+    }
+
+    protected String idToPath(String id) {
         return basePath + "/" + id + SUFFIX;
     }
 
@@ -209,12 +669,12 @@ public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
 
     @Override
     public boolean createWithId(T o) {
-        String path = idToPath(o.getId());
-        if (workspace.exists(path)) {
+        if (exists(o.getId())) {
             return false;
         } else {
+            String previousRev = o.getRev();
             o.setRev("0");
-            store(o);
+            store(o, previousRev);
             return true;
         }
     }
@@ -234,4 +694,41 @@ public class XStreamStore<T extends Identifiable> extends AbstractStore<T> {
      */
     protected void postLoad(T o) {
     }
+
+    /**
+     * Writes all pending journal records to the object files and stops the journal (if there is one). The store must
+     * not be updated afterwards.
+     */
+    public void close() {
+        if (journal != null)
+            journal.close();
+    }
+
+    /**
+     * This can be overriden to load all objects at once from a faster source than the individual files (e.g. a
+     * snapshot). It is called from the constructor, so it must not rely on fields of the subclass. If the result does
+     * not contain exactly the given ids, it is ignored and the individual files are loaded.
+     * 
+     * @param ids the ids of all objects currently in the store
+     * @return the loaded objects by id or null if the individual files need to be loaded
+     */
+    protected Map<String, T> loadSnapshot(List<String> ids) {
+        return null;
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final String basePath;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public LoaderThreadFactory(String basePath) {
+            this.basePath = basePath;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "StoreLoader" + basePath + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
 }
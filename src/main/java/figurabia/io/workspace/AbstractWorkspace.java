@@ -9,42 +9,81 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
+import figurabia.util.CopyOnWriteTrie;
 import figurabia.util.PrefixMap;
-import figurabia.util.Trie;
 
 public abstract class AbstractWorkspace implements Workspace {
 
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
     //private SortedMap<String, List<WorkspaceUpdateListener>> workspaceUpdateListeners = new TreeMap<String, List<WorkspaceUpdateListener>>();
-    private PrefixMap<List<WorkspaceUpdateListener>> workspaceUpdateListeners = new Trie<List<WorkspaceUpdateListener>>();
+    // the lists are never changed, but replaced, so notifying needs no lock
+    private final PrefixMap<List<WorkspaceUpdateListener>> workspaceUpdateListeners =
+            new CopyOnWriteTrie<List<WorkspaceUpdateListener>>();
 
     @Override
     public void addWorkspaceUpdateListener(String pathPrefix, WorkspaceUpdateListener l) {
-        List<WorkspaceUpdateListener> listeners = workspaceUpdateListeners.get(pathPrefix);
-        if (listeners == null) {
-            listeners = new ArrayList<Workspace.WorkspaceUpdateListener>();
-            workspaceUpdateListeners.put(pathPrefix, listeners);
+        synchronized (workspaceUpdateListeners) {
+            List<WorkspaceUpdateListener> listeners = workspaceUpdateListeners.get(pathPrefix);
+            List<WorkspaceUpdateListener> newListeners = new ArrayList<WorkspaceUpdateListener>();
+            if (listeners != null)
+                newListeners.addAll(listeners);
+            newListeners.add(l);
+            workspaceUpdateListeners.put(pathPrefix, Collections.unmodifiableList(newListeners));
         }
-        listeners.add(l);
     }
 
     @Override
     public void removeWorkspaceUpdateListener(String pathPrefix, WorkspaceUpdateListener l) {
-        List<WorkspaceUpdateListener> listeners = workspaceUpdateListeners.get(pathPrefix);
-        if (listeners != null) {
-            listeners.remove(l);
+        synchronized (workspaceUpdateListeners) {
+            List<WorkspaceUpdateListener> listeners = workspaceUpdateListeners.get(pathPrefix);
+            if (listeners != null && listeners.contains(l)) {
+                List<WorkspaceUpdateListener> newListeners = new ArrayList<WorkspaceUpdateListener>(listeners);
+                newListeners.remove(l);
+                if (newListeners.isEmpty())
+                    workspaceUpdateListeners.remove(pathPrefix);
+                else
+                    workspaceUpdateListeners.put(pathPrefix, Collections.unmodifiableList(newListeners));
+            }
         }
     }
 
+    private final WorkspaceEventBus eventBus = new WorkspaceEventBus("WorkspaceEvents",
+            new WorkspaceEventBus.Dispatcher() {
+                @Override
+                public void dispatch(String path, ChangeType type) {
+                    dispatchToListeners(path, type);
+                }
+            });
+
+    /**
+     * Queues the change for the listeners registered for a prefix of the path, they are notified asynchronously (in
+     * the thread of the event bus, several changes of the same path in short succession are combined). Changes of
+     * paths nobody listens to are not even queued.
+     */
     protected void notifyWorkspaceUpdateListeners(String changedResourcePath, ChangeType change) {
+        if (workspaceUpdateListeners.valuesAtPrefixOf(changedResourcePath).isEmpty())
+            return;
+        eventBus.post(changedResourcePath, change);
+    }
+
+    private void dispatchToListeners(String changedResourcePath, ChangeType change) {
         // find all listeners that were registered for a prefix of the changed resource path
         Collection<List<WorkspaceUpdateListener>> listeners = workspaceUpdateListeners.valuesAtPrefixOf(changedResourcePath);
 
@@ -60,6 +99,21 @@ public abstract class AbstractWorkspace implements Workspace {
         }
     }
 
+    /**
+     * Waits until the listeners were notified of all changes so far.
+     */
+    public void awaitListenersNotified() {
+        eventBus.awaitDispatched();
+    }
+
+    /**
+     * Notifies the listeners of the changes still queued and stops the thread notifying them (it is started again by
+     * the next change).
+     */
+    public void stopNotifying() {
+        eventBus.shutdown();
+    }
+
     @Override
     public void finishedWriting(String path, boolean newResource) {
         notifyWorkspaceUpdateListeners(path, newResource ? ChangeType.CREATED : ChangeType.UPDATED);
@@ -80,7 +134,7 @@ public abstract class AbstractWorkspace implements Workspace {
 
     @Override
     public OutputStream write(String resourcePath) {
-        File f = fileForWriting(resourcePath);
+        File f = fileForOverwriting(resourcePath);
         try {
             OutputStream fos = new BufferedOutputStream(FileUtils.openOutputStream(f));
             return fos;
@@ -88,4 +142,127 @@ public abstract class AbstractWorkspace implements Workspace {
             throw new WorkspaceException("Could not open OutputStream to resource " + resourcePath, e);
         }
     }
+
+    @Override
+    public FileChannel readChannel(String resourcePath) {
+        if (resourcePath == null)
+            throw new IllegalArgumentException("resourcePath must not be null");
+        File f = fileForReading(resourcePath);
+        try {
+            return new FileInputStream(f).getChannel();
+        } catch (FileNotFoundException e) {
+            throw new WorkspaceException("Could not open channel to resource " + resourcePath, e);
+        }
+    }
+
+    @Override
+    public MappedByteBuffer map(String resourcePath) {
+        FileChannel channel = readChannel(resourcePath);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new WorkspaceException("Resource " + resourcePath + " is too large to be mapped: " + size);
+            // the mapping stays valid after closing the channel
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            throw new WorkspaceException("Could not map resource " + resourcePath, e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public void importFile(File source, String resourcePath) {
+        importFile(source, resourcePath, null);
+    }
+
+    @Override
+    public void importFile(File source, String resourcePath, MessageDigest digest) {
+        boolean existed = exists(resourcePath);
+        File target = fileForOverwriting(resourcePath);
+        try {
+            if (digest == null)
+                copyFile(source, target);
+            else
+                copyFile(source, target, digest);
+        } catch (IOException e) {
+            throw new WorkspaceException("Could not import " + source + " to resource " + resourcePath, e);
+        }
+        finishedWriting(resourcePath, !existed);
+    }
+
+    /**
+     * Returns the file for replacing the whole content of a resource (in {@link #write(String)} and
+     * {@link #importFile(File, String, MessageDigest)}, which call {@link #finishedWriting(String, boolean)} when
+     * done). By default the same as {@link #fileForWriting(String)}.
+     *
+     * @param resourcePath the path
+     * @return the file
+     */
+    protected File fileForOverwriting(String resourcePath) {
+        return fileForWriting(resourcePath);
+    }
+
+    /**
+     * Copies the file with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which
+     * lets the operating system copy it without passing the content through Java. Creates the parent directories of
+     * the target if necessary.
+     */
+    protected static void copyFile(File source, File target) throws IOException {
+        createParentDirectory(target);
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new FileOutputStream(target);
+            FileChannel from = in.getChannel();
+            FileChannel to = out.getChannel();
+            long size = from.size();
+            long position = 0;
+            // transferTo may transfer less than requested
+            while (position < size) {
+                position += from.transferTo(position, size - position, to);
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Copies the file through a direct buffer, passing every block also through the digest.
+     */
+    private static void copyFile(File source, File target, MessageDigest digest) throws IOException {
+        createParentDirectory(target);
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new FileOutputStream(target);
+            FileChannel from = in.getChannel();
+            FileChannel to = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            while (from.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    to.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    protected static void createParentDirectory(File f) throws IOException {
+        File parent = f.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Could not create directory " + parent);
+    }
 }
@@ -5,7 +5,13 @@
 package figurabia.io.workspace;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -16,12 +22,63 @@ public class LocalFileWorkspace extends AbstractWorkspace {
 
     private final File workspaceDirectory;
     private final int prefixToRemove;
+    private volatile WorkspaceWatcher watcher;
+    // whether the file system of the workspace supports hard links (null until first needed)
+    private volatile Boolean hardLinks;
 
     public LocalFileWorkspace(File workspaceDirectory) {
         this.workspaceDirectory = workspaceDirectory;
         prefixToRemove = workspaceDirectory.getAbsolutePath().length();
     }
 
+    /**
+     * Starts reporting changes made to the workspace directory by other programs to the listeners (see
+     * {@link WorkspaceWatcher}).
+     */
+    public synchronized void startWatching() {
+        if (watcher != null)
+            return;
+        WorkspaceWatcher newWatcher = new WorkspaceWatcher(workspaceDirectory, new WorkspaceWatcher.ChangeHandler() {
+            @Override
+            public void changed(String resourcePath, ChangeType type) {
+                notifyWorkspaceUpdateListeners(resourcePath, type);
+            }
+        });
+        try {
+            newWatcher.start();
+        } catch (IOException e) {
+            throw new WorkspaceException("Could not watch workspace directory " + workspaceDirectory, e);
+        }
+        watcher = newWatcher;
+    }
+
+    /**
+     * Stops reporting changes made by other programs and stops the thread notifying the listeners, after the changes
+     * found so far were reported.
+     */
+    public void stopWatching() {
+        synchronized (this) {
+            if (watcher != null) {
+                watcher.stop();
+                watcher = null;
+            }
+        }
+        // not synchronized, listeners may still call the workspace
+        stopNotifying();
+    }
+
+    private void writing(String resourcePath) {
+        WorkspaceWatcher w = watcher;
+        if (w != null)
+            w.writing(resourcePath);
+    }
+
+    private void ownChange(String resourcePath) {
+        WorkspaceWatcher w = watcher;
+        if (w != null)
+            w.ownChange(resourcePath);
+    }
+
     @Override
     public List<String> list(String basePath) {
         File baseDir = new File(workspaceDirectory, basePath);
@@ -55,7 +112,126 @@ public class LocalFileWorkspace extends AbstractWorkspace {
 
     @Override
     public File fileForWriting(String resourcePath) {
-        return resPathToFile(resourcePath);
+        File f = resPathToFile(resourcePath);
+        unshare(f);
+        return f;
+    }
+
+    /**
+     * The file is not reported by the watcher until {@link #finishedWriting(String, boolean)} is called for it.
+     */
+    @Override
+    protected File fileForOverwriting(String resourcePath) {
+        writing(resourcePath);
+        File f = resPathToFile(resourcePath);
+        unlink(f);
+        return f;
+    }
+
+    /**
+     * Files copied by {@link #copyPath(String, String)} can be hard links to the same content. Before one of them is
+     * changed in place, it gets its own copy of the content, so the other paths do not change with it.
+     */
+    private void unshare(File f) {
+        if (!isShared(f))
+            return;
+        Path p = f.toPath();
+        try {
+            Path unshared = p.resolveSibling(p.getFileName() + ".unshared");
+            Files.copy(p, unshared, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(unshared, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new WorkspaceException("Could not separate resource " + fileToResPath(f) + " from its copies", e);
+        }
+    }
+
+    /**
+     * Like {@link #unshare(File)}, but for a file that is going to be written from the start: its content is not
+     * needed, so the link is only removed and the file created anew.
+     */
+    private void unlink(File f) {
+        if (isShared(f) && !f.delete())
+            throw new WorkspaceException("Could not separate resource " + fileToResPath(f) + " from its copies");
+    }
+
+    private boolean isShared(File f) {
+        if (!supportsHardLinks() || !f.isFile())
+            return false;
+        try {
+            return ((Number) Files.getAttribute(f.toPath(), "unix:nlink")).intValue() > 1;
+        } catch (IOException e) {
+            throw new WorkspaceException("Could not read the links of resource " + fileToResPath(f), e);
+        }
+    }
+
+    private boolean supportsHardLinks() {
+        Boolean supported = hardLinks;
+        if (supported == null) {
+            try {
+                // unix file systems have hard links and tell how many there are with "unix:nlink"
+                supported = workspaceDirectory.isDirectory()
+                        && Files.getFileStore(workspaceDirectory.toPath()).supportsFileAttributeView("unix");
+            } catch (IOException e) {
+                supported = false;
+            }
+            hardLinks = supported;
+        }
+        return supported;
+    }
+
+    @Override
+    public void writeAtomically(String resourcePath, byte[] content) {
+        String tempPath = resourcePath + ".tmp";
+        File f = resPathToFile(resourcePath);
+        File temp = resPathToFile(tempPath);
+        boolean existed = f.exists();
+        writing(resourcePath);
+        writing(tempPath);
+        try {
+            createParentDirectory(temp);
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(content);
+                // the content must be on the disk before the rename, otherwise the rename could survive without it
+                out.getChannel().force(true);
+            } finally {
+                out.close();
+            }
+            // renaming also separates the resource from its hard linked copies (if any)
+            Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(f.getParentFile());
+        } catch (IOException e) {
+            temp.delete();
+            throw new WorkspaceException("Could not write resource " + resourcePath, e);
+        } finally {
+            ownChange(tempPath);
+        }
+        finishedWriting(resourcePath, !existed);
+    }
+
+    /**
+     * Forces the entries of the directory (e.g. a rename) to the disk.
+     */
+    private static void forceDirectory(File dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            // directories cannot be opened on every platform (e.g. Windows), a rename is durable there by itself
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void finishedWriting(String path, boolean newResource) {
+        ownChange(path);
+        super.finishedWriting(path, newResource);
     }
 
     @Override
@@ -65,6 +241,7 @@ public class LocalFileWorkspace extends AbstractWorkspace {
             throw new IllegalArgumentException("Given resourcePath " + resourcePath + " does not exist as a file.");
         if (!f.delete())
             throw new WorkspaceException("Resource " + resourcePath + " could not be successfully deleted");
+        ownChange(resourcePath);
         notifyWorkspaceUpdateListeners(resourcePath, ChangeType.DELETED);
     }
 
@@ -84,6 +261,8 @@ public class LocalFileWorkspace extends AbstractWorkspace {
         } catch (IOException e) {
             throw new WorkspaceException("Error moving resource " + oldPath + " to " + newPath, e);
         }
+        ownChange(oldPath);
+        ownChange(newPath);
         notifyWorkspaceUpdateListeners(oldPath, ChangeType.DELETED);
         notifyWorkspaceUpdateListeners(newPath, ChangeType.CREATED);
     }
@@ -96,14 +275,45 @@ public class LocalFileWorkspace extends AbstractWorkspace {
             throw new WorkspaceException("Cannot copy resource path because destination already exists: " + copyPath);
 
         try {
-            FileUtils.copyDirectory(resPathToFile(path), resPathToFile(copyPath));
+            copyTree(resPathToFile(path), resPathToFile(copyPath), supportsHardLinks());
         } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            throw new WorkspaceException("Error copying resource path " + path + " to " + copyPath, e);
         }
+        ownChange(copyPath);
         notifyWorkspaceUpdateListeners(copyPath, ChangeType.PATH_CREATED);
     }
 
+    /**
+     * Copies the directory with everything below it. Files are hard linked if possible (no content is copied, see
+     * {@link #unshare(File)}), otherwise copied with {@link #copyFile(File, File)}.
+     */
+    private static void copyTree(File from, File to, boolean link) throws IOException {
+        if (!to.mkdirs())
+            throw new IOException("Could not create directory " + to);
+        File[] files = from.listFiles();
+        if (files == null)
+            throw new IOException("Could not list directory " + from);
+        for (File f : files) {
+            File target = new File(to, f.getName());
+            if (f.isDirectory()) {
+                copyTree(f, target, link);
+            } else {
+                if (link) {
+                    try {
+                        Files.createLink(target.toPath(), f.toPath());
+                        continue;
+                    } catch (IOException e) {
+                        // e.g. too many links to the file, copy it instead
+                    } catch (UnsupportedOperationException e) {
+                        link = false;
+                    }
+                }
+                copyFile(f, target);
+                target.setLastModified(f.lastModified());
+            }
+        }
+    }
+
     @Override
     public void deletePath(String path) {
         File f = resPathToFile(path);
@@ -111,6 +321,7 @@ public class LocalFileWorkspace extends AbstractWorkspace {
             throw new IllegalArgumentException("Cannot delete file that does not exist: " + path);
         if (!FileUtils.deleteQuietly(f))
             throw new WorkspaceException("Resource " + path + " could not be successfully deleted");
+        ownChange(path);
         notifyWorkspaceUpdateListeners(path, ChangeType.PATH_DELETED);
     }
 
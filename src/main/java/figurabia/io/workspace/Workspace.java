@@ -7,6 +7,9 @@ package figurabia.io.workspace;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.util.List;
 
 /**
@@ -21,7 +24,8 @@ public interface Workspace {
     }
 
     /**
-     * To be notified about changes in the workspace.
+     * To be notified about changes in the workspace. The notifications arrive asynchronously in a separate thread,
+     * several changes of the same path in short succession are combined into one.
      * 
      * @author Samuel Berner
      */
@@ -105,6 +109,52 @@ public interface Workspace {
      */
     OutputStream write(String resourcePath);
 
+    /**
+     * Writes the whole content of the resource so that it survives a crash or a power loss at any time: the content is
+     * written to a temporary file and forced to the disk, which is then renamed to the resource. Afterwards the
+     * resource has either its old or its new content, never a part of it. Slower than {@link #write(String)}, because
+     * it waits for the disk.
+     * 
+     * @param resourcePath the path of the resource e.g. some_folder/some_file.txt
+     * @param content the new content
+     */
+    void writeAtomically(String resourcePath, byte[] content);
+
+    /**
+     * Opens a read-only channel to the given resource, e.g. to transfer it somewhere else without copying it through
+     * a buffer in Java.
+     * 
+     * @param resourcePath the path of the resource e.g. some_folder/some_file.txt
+     * @return the already opened channel
+     */
+    FileChannel readChannel(String resourcePath);
+
+    /**
+     * Maps the given resource into memory (read-only). The resource must be smaller than 2 GB.
+     * 
+     * @param resourcePath the path of the resource e.g. some_folder/some_file.txt
+     * @return the mapped content
+     */
+    MappedByteBuffer map(String resourcePath);
+
+    /**
+     * Copies a file from the user's file system into the workspace and notifies the workspace update listeners.
+     * 
+     * @param source the file to copy
+     * @param resourcePath the path of the copy in the workspace
+     */
+    void importFile(File source, String resourcePath);
+
+    /**
+     * Same as {@link #importFile(File, String)}, but also passes the content through the digest while copying it, so
+     * the file is only read once.
+     * 
+     * @param source the file to copy
+     * @param resourcePath the path of the copy in the workspace
+     * @param digest receives the content of the file
+     */
+    void importFile(File source, String resourcePath, MessageDigest digest);
+
     /**
      * Returns a file for reading and if necessary by the implementation it might do something else first, e.g.
      * downloading the file if it hasn't been downloaded yet.
@@ -115,7 +165,8 @@ public interface Workspace {
     File fileForReading(String resourcePath);
 
     /**
-     * Returns a file for writing (does not need to download a file that doesn't yet exist anyway).
+     * Returns a file for writing (does not need to download a file that doesn't yet exist anyway). A copy made by
+     * {@link #copyPath(String, String)} gets its own content first, so the file can be changed in place.
      * 
      * @param resourcePath the path
      * @return the file
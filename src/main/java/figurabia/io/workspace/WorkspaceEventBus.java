@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io.workspace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import figurabia.io.workspace.Workspace.ChangeType;
+
+/**
+ * Delivers workspace changes asynchronously on a dedicated thread. Changes are collected for a short time after the
+ * first one and several changes of the same path within this time are combined into one (e.g. created and updated
+ * becomes created, created and deleted is dropped altogether). The thread is started by the first change and runs
+ * until {@link #shutdown()}.
+ *
+ * @author Samuel Berner
+ */
+public class WorkspaceEventBus {
+
+    /**
+     * Receives the combined changes (in the dispatch thread).
+     */
+    public interface Dispatcher {
+        void dispatch(String path, ChangeType type);
+    }
+
+    public static final long DEFAULT_WINDOW_MILLIS = 25;
+
+    private final String threadName;
+    private final long windowMillis;
+    private final Dispatcher dispatcher;
+
+    // all guarded by this
+    private final LinkedHashMap<String, ChangeType> pending = new LinkedHashMap<String, ChangeType>();
+    private boolean dispatching;
+    private boolean stopping;
+    private Thread thread;
+
+    public WorkspaceEventBus(String threadName, Dispatcher dispatcher) {
+        this(threadName, DEFAULT_WINDOW_MILLIS, dispatcher);
+    }
+
+    public WorkspaceEventBus(String threadName, long windowMillis, Dispatcher dispatcher) {
+        this.threadName = threadName;
+        this.windowMillis = windowMillis;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Queues a change, combining it with a change of the same path which is still waiting.
+     */
+    public synchronized void post(String path, ChangeType type) {
+        ChangeType previous = pending.get(path);
+        ChangeType combined = previous == null ? type : combine(previous, type);
+        if (combined == null)
+            pending.remove(path);
+        else
+            pending.put(path, combined);
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runDispatcher();
+                }
+            }, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Waits until all changes posted so far are dispatched.
+     */
+    public synchronized void awaitDispatched() {
+        boolean interrupted = false;
+        while (!pending.isEmpty() || dispatching) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Dispatches the changes still waiting (without waiting for the window) and stops the dispatch thread. Changes
+     * posted later start it again.
+     */
+    public void shutdown() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            if (t == null)
+                return;
+            stopping = true;
+            notifyAll();
+        }
+        // a dispatcher shutting down the bus cannot wait for itself
+        if (t == Thread.currentThread())
+            return;
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * @return the single change equivalent to the two changes one after the other (null for no change)
+     */
+    static ChangeType combine(ChangeType first, ChangeType second) {
+        switch (first) {
+        case CREATED:
+            if (second == ChangeType.DELETED)
+                return null;
+            return second == ChangeType.UPDATED ? ChangeType.CREATED : second;
+        case UPDATED:
+            return second == ChangeType.CREATED ? ChangeType.UPDATED : second;
+        case DELETED:
+            return second == ChangeType.CREATED ? ChangeType.UPDATED : second;
+        default:
+            // path changes: the latest one counts
+            return second;
+        }
+    }
+
+    private void runDispatcher() {
+        while (true) {
+            Map<String, ChangeType> changes;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && !stopping)
+                        wait();
+                    // let more changes arrive, so they can be combined
+                    long end = System.currentTimeMillis() + windowMillis;
+                    long remaining;
+                    while (!stopping && (remaining = end - System.currentTimeMillis()) > 0)
+                        wait(remaining);
+                } catch (InterruptedException e) {
+                    // just continue
+                }
+                if (pending.isEmpty()) {
+                    if (stopping) {
+                        stopping = false;
+                        thread = null;
+                        notifyAll();
+                        return;
+                    }
+                    continue;
+                }
+                changes = new LinkedHashMap<String, ChangeType>(pending);
+                pending.clear();
+                dispatching = true;
+            }
+            try {
+                for (Map.Entry<String, ChangeType> change : changes.entrySet()) {
+                    try {
+                        dispatcher.dispatch(change.getKey(), change.getValue());
+                    } catch (RuntimeException e) {
+                        System.err.println("Error while dispatching workspace change of " + change.getKey());
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    dispatching = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
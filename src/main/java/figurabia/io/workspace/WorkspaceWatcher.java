@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io.workspace;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import figurabia.io.workspace.Workspace.ChangeType;
+
+/**
+ * Watches the directory of a {@link LocalFileWorkspace} for changes made by other programs (e.g. a synchronisation
+ * tool) and reports them as changes of resources.
+ * <p>
+ * The watcher keeps the modification time and size of every file. Events of the file system are collected until there
+ * are none for a short time (but at most for {@link #DEFAULT_MAX_DELAY_MILLIS}), then only the changed paths are
+ * compared with this index. If the file system dropped events, and regularly as a fallback, the whole directory is
+ * compared with the index. Changes made through the workspace itself update the index (see {@link #ownChange(String)})
+ * and are therefore not reported again, neither are files while the workspace is writing them.
+ *
+ * @author Samuel Berner
+ */
+class WorkspaceWatcher {
+
+    /**
+     * Receives the changes (in the watcher thread).
+     */
+    interface ChangeHandler {
+        void changed(String resourcePath, ChangeType type);
+    }
+
+    public static final long DEFAULT_QUIET_MILLIS = 200;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+    public static final long DEFAULT_FULL_SCAN_MILLIS = 10 * 60 * 1000;
+
+    // files the workspace started writing but never finished are watched again after this time
+    private static final long WRITING_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    private static final class FileState {
+        final long lastModified;
+        final long length;
+
+        FileState(File f) {
+            lastModified = f.lastModified();
+            length = f.length();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileState))
+                return false;
+            FileState other = (FileState) obj;
+            return lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (lastModified ^ length);
+        }
+    }
+
+    private final File root;
+    private final int prefixToRemove;
+    private final ChangeHandler handler;
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private final long fullScanMillis;
+
+    // the state of every known file by resource path
+    private final ConcurrentSkipListMap<String, FileState> index = new ConcurrentSkipListMap<String, FileState>();
+    // the time the workspace started writing a file by resource path
+    private final ConcurrentHashMap<String, Long> writing = new ConcurrentHashMap<String, Long>();
+
+    // only used in the watcher thread
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<WatchKey, Path>();
+    private final Map<Path, WatchKey> dirKeys = new HashMap<Path, WatchKey>();
+
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean stopped;
+
+    public WorkspaceWatcher(File root, ChangeHandler handler) {
+        this(root, handler, DEFAULT_QUIET_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_FULL_SCAN_MILLIS);
+    }
+
+    /**
+     * @param fullScanMillis the interval of comparing the whole directory with the index (0 for only when events were
+     *            dropped)
+     */
+    public WorkspaceWatcher(File root, ChangeHandler handler, long quietMillis, long maxDelayMillis,
+            long fullScanMillis) {
+        this.root = root.getAbsoluteFile();
+        this.prefixToRemove = this.root.getAbsolutePath().length();
+        this.handler = handler;
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.fullScanMillis = fullScanMillis;
+    }
+
+    /**
+     * Starts watching in a background thread, which first builds the index (without reporting anything).
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null)
+            throw new IllegalStateException("already started");
+        watchService = FileSystems.getDefault().newWatchService();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "WorkspaceWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread == null)
+            return;
+        stopped = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Could not close WatchService");
+            e.printStackTrace();
+        }
+        thread.interrupt();
+    }
+
+    /**
+     * Tells the watcher that the workspace is going to write the resource, so it is not reported until
+     * {@link #ownChange(String)} is called for it.
+     */
+    public void writing(String resourcePath) {
+        writing.put(resourcePath, System.currentTimeMillis());
+    }
+
+    /**
+     * Tells the watcher that the workspace changed the file or directory at the resource path (and reports it itself).
+     */
+    public void ownChange(String resourcePath) {
+        File f = new File(root, resourcePath);
+        if (f.isFile()) {
+            index.put(resourcePath, new FileState(f));
+        } else {
+            index.remove(resourcePath);
+            index.subMap(resourcePath + '/', resourcePath + '0').clear();
+            if (f.isDirectory())
+                indexTree(f);
+        }
+        writing.remove(resourcePath);
+    }
+
+    private void indexTree(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            if (f.isDirectory())
+                indexTree(f);
+            else if (f.isFile())
+                index.put(toResourcePath(f), new FileState(f));
+        }
+    }
+
+    private void watch() {
+        // register before indexing, so no change gets lost in between
+        scan(root, null, false);
+        long lastFullScan = System.currentTimeMillis();
+
+        Set<Path> changed = new LinkedHashSet<Path>();
+        boolean overflow = false;
+        long firstEvent = 0;
+        while (!stopped) {
+            long now = System.currentTimeMillis();
+            long timeout;
+            if (!changed.isEmpty() || overflow)
+                timeout = quietMillis;
+            else if (fullScanMillis > 0)
+                timeout = Math.max(1, lastFullScan + fullScanMillis - now);
+            else
+                timeout = Long.MAX_VALUE;
+
+            WatchKey key;
+            try {
+                key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+            now = System.currentTimeMillis();
+            if (key != null) {
+                Path dir = watchedDirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW)
+                        overflow = true;
+                    else if (dir != null)
+                        changed.add(dir.resolve((Path) event.context()));
+                }
+                if (!key.reset()) {
+                    // the directory is gone
+                    watchedDirs.remove(key);
+                    if (dir != null) {
+                        dirKeys.remove(dir);
+                        changed.add(dir);
+                    }
+                }
+                if (firstEvent == 0)
+                    firstEvent = now;
+                // wait for more events, unless they have been arriving for too long already
+                if (now - firstEvent < maxDelayMillis)
+                    continue;
+            }
+
+            try {
+                if (overflow || (fullScanMillis > 0 && now - lastFullScan >= fullScanMillis)) {
+                    Set<String> seen = new HashSet<String>();
+                    scan(root, seen, true);
+                    reportDeletedExcept(seen);
+                    lastFullScan = System.currentTimeMillis();
+                } else {
+                    for (Path p : changed) {
+                        refresh(p.toFile());
+                    }
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error while looking for changes in the workspace");
+                e.printStackTrace();
+            }
+            changed.clear();
+            overflow = false;
+            firstEvent = 0;
+        }
+    }
+
+    /**
+     * Compares the file or directory (with everything below it) with the index.
+     */
+    private void refresh(File f) {
+        if (f.isFile()) {
+            compare(f);
+        } else if (f.isDirectory()) {
+            // a new directory is watched from now on, but files could have been created in it before
+            if (!dirKeys.containsKey(f.toPath()))
+                scan(f, null, true);
+        } else {
+            unregisterTree(f.toPath());
+            String path = toResourcePath(f);
+            if (index.remove(path) != null)
+                handler.changed(path, ChangeType.DELETED);
+            List<String> below = new ArrayList<String>(index.subMap(path + '/', path + '0').keySet());
+            for (String p : below) {
+                if (!isBeingWritten(p) && index.remove(p) != null)
+                    handler.changed(p, ChangeType.DELETED);
+            }
+        }
+    }
+
+    /**
+     * Watches the directory and all directories below it and compares the files in them with the index.
+     *
+     * @param seen collects the resource paths of all files found (may be null)
+     */
+    private void scan(File dir, Set<String> seen, boolean report) {
+        register(dir.toPath());
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            if (f.isDirectory()) {
+                scan(f, seen, report);
+            } else if (f.isFile()) {
+                if (seen != null)
+                    seen.add(toResourcePath(f));
+                if (report)
+                    compare(f);
+                else
+                    index.put(toResourcePath(f), new FileState(f));
+            }
+        }
+    }
+
+    private void compare(File f) {
+        String path = toResourcePath(f);
+        if (isBeingWritten(path))
+            return;
+        FileState state = new FileState(f);
+        FileState old = index.put(path, state);
+        if (old == null)
+            handler.changed(path, ChangeType.CREATED);
+        else if (!old.equals(state))
+            handler.changed(path, ChangeType.UPDATED);
+    }
+
+    private void reportDeletedExcept(Set<String> seen) {
+        for (Iterator<String> it = index.keySet().iterator(); it.hasNext();) {
+            String path = it.next();
+            if (!seen.contains(path) && !isBeingWritten(path) && !new File(root, path).isFile()) {
+                it.remove();
+                handler.changed(path, ChangeType.DELETED);
+            }
+        }
+    }
+
+    private boolean isBeingWritten(String resourcePath) {
+        Long since = writing.get(resourcePath);
+        return since != null && System.currentTimeMillis() - since < WRITING_TIMEOUT_MILLIS;
+    }
+
+    private void register(Path dir) {
+        if (dirKeys.containsKey(dir))
+            return;
+        try {
+            WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            watchedDirs.put(key, dir);
+            dirKeys.put(dir, key);
+        } catch (ClosedWatchServiceException e) {
+            // stopped in the meantime
+        } catch (IOException e) {
+            System.err.println("Could not watch directory " + dir);
+            e.printStackTrace();
+        }
+    }
+
+    private void unregister(Path dir) {
+        WatchKey key = dirKeys.remove(dir);
+        if (key != null) {
+            key.cancel();
+            watchedDirs.remove(key);
+        }
+    }
+
+    private void unregisterTree(Path dir) {
+        List<Path> below = new ArrayList<Path>();
+        for (Path p : dirKeys.keySet()) {
+            if (p.startsWith(dir))
+                below.add(p);
+        }
+        for (Path p : below) {
+            unregister(p);
+        }
+    }
+
+    private String toResourcePath(File f) {
+        return f.getAbsolutePath().substring(prefixToRemove);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.Arrays;
+
+import figurabia.math.LinearLeastSquares.RunningFit;
+
+/**
+ * Fits a regular grid of bars to tapped 1s and 5s, one tap at a time. The bars are numbered in the order of their
+ * times, where two 1s or two 5s in a row mean that the bar in between was not tapped (one is added in the middle, as
+ * {@link LinearLeastSquares#fitToBars(java.util.List, java.util.List)} always did). A tap after the last one updates
+ * the fit in constant time, an earlier one renumbers all bars.
+ * <p>
+ * Besides the plain least squares line, there is a robust fit (Huber weights, so a mis-tapped bar hardly matters)
+ * and a local one (every bar fitted with its neighbours only, for a changing tempo).
+ *
+ * @author Samuel Berner
+ */
+public class BarFitter {
+
+    // residuals up to this many (robust) standard deviations count fully, bigger ones less
+    private static final double HUBER_K = 1.345;
+    private static final int MAX_ITERATIONS = 10;
+    // stop iterating when the fit changes less than this (in nanoseconds)
+    private static final double CONVERGED = 1000;
+
+    // the tapped bars in ascending order
+    private long[] tapTimes = new long[16];
+    private int[] tapBeats = new int[16];
+    private int tapCount = 0;
+    private long latestTap;
+
+    // all bars (tapped and added ones) in ascending order, times relative to the origin
+    private double[] times = new double[16];
+    private int size = 0;
+    private long origin;
+    private int lastBeat;
+    private final RunningFit fit = new RunningFit();
+
+    /**
+     * @return a fitter with the given taps (in any order)
+     */
+    public static BarFitter of(long[] ones, long[] fives) {
+        long[] sortedOnes = ones.clone();
+        long[] sortedFives = fives.clone();
+        Arrays.sort(sortedOnes);
+        Arrays.sort(sortedFives);
+        BarFitter fitter = new BarFitter();
+        int i = 0;
+        int j = 0;
+        while (i < sortedOnes.length || j < sortedFives.length) {
+            // at the same time, the 5 wins (it is tapped later)
+            if (j == sortedFives.length || (i < sortedOnes.length && sortedOnes[i] <= sortedFives[j]))
+                fitter.tap(sortedOnes[i++], 1);
+            else
+                fitter.tap(sortedFives[j++], 5);
+        }
+        return fitter;
+    }
+
+    /**
+     * Adds a tapped bar.
+     *
+     * @param beat 1 or 5
+     */
+    public void tap(long time, int beat) {
+        latestTap = time;
+        int index = tapCount;
+        while (index > 0 && tapTimes[index - 1] >= time)
+            index--;
+        if (index < tapCount && tapTimes[index] == time) {
+            // tapped again, the later tap counts
+            tapBeats[index] = beat;
+            rebuild();
+            return;
+        }
+        if (tapCount == tapTimes.length) {
+            tapTimes = Arrays.copyOf(tapTimes, tapCount * 2);
+            tapBeats = Arrays.copyOf(tapBeats, tapCount * 2);
+        }
+        System.arraycopy(tapTimes, index, tapTimes, index + 1, tapCount - index);
+        System.arraycopy(tapBeats, index, tapBeats, index + 1, tapCount - index);
+        tapTimes[index] = time;
+        tapBeats[index] = beat;
+        tapCount++;
+        if (index == tapCount - 1)
+            append(time, beat);
+        else
+            rebuild();
+    }
+
+    private void rebuild() {
+        size = 0;
+        fit.clear();
+        for (int i = 0; i < tapCount; i++) {
+            append(tapTimes[i], tapBeats[i]);
+        }
+    }
+
+    private void append(long time, int beat) {
+        if (size == 0) {
+            origin = time;
+        } else if (beat == lastBeat) {
+            // the alternating bar in between is missing
+            add(((time - origin) + times[size - 1]) / 2);
+        }
+        add(time - origin);
+        lastBeat = beat;
+    }
+
+    private void add(double time) {
+        if (size == times.length)
+            times = Arrays.copyOf(times, size * 2);
+        times[size] = time;
+        fit.add(size, time);
+        size++;
+    }
+
+    /**
+     * @return the number of bars (tapped and added ones)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of the bar tapped most recently (it may be before others), or -1 if there are no bars
+     */
+    public int getLatestBar() {
+        if (size == 0)
+            return -1;
+        return Arrays.binarySearch(times, 0, size, latestTap - origin);
+    }
+
+    /**
+     * @return the fitted duration of a bar (from a 1 to the next 5) in nanoseconds
+     */
+    public double getBarDuration() {
+        return fit.slope();
+    }
+
+    /**
+     * @return the fitted time of the given bar
+     */
+    public long getFitted(int bar) {
+        return origin + Math.round(fit.valueAt(bar));
+    }
+
+    /**
+     * @return how far the tap of the given bar is from the fitted grid (positive if it is late)
+     */
+    public long getDeviation(int bar) {
+        return Math.round(times[bar] - fit.valueAt(bar));
+    }
+
+    /**
+     * @return the least squares fitted times of all bars
+     */
+    public long[] fitted() {
+        long[] fitted = new long[size];
+        double a = fit.slope();
+        double b = fit.intercept();
+        for (int i = 0; i < size; i++)
+            fitted[i] = origin + Math.round(a * i + b);
+        return fitted;
+    }
+
+    /**
+     * @return the times of all bars fitted with Huber weights (iteratively reweighted least squares)
+     */
+    public long[] fittedRobust() {
+        double a = fit.slope();
+        double b = fit.intercept();
+        double[] residuals = new double[size];
+        RunningFit weighted = new RunningFit();
+        for (int iteration = 0; iteration < MAX_ITERATIONS && size > 2; iteration++) {
+            for (int i = 0; i < size; i++)
+                residuals[i] = times[i] - (a * i + b);
+            double k = HUBER_K * robustDeviation(residuals);
+            if (k == 0)
+                break;
+            weighted.clear();
+            for (int i = 0; i < size; i++)
+                weighted.add(i, times[i], huberWeight(residuals[i], k));
+            double newA = weighted.slope();
+            double newB = weighted.intercept();
+            boolean converged = Math.abs(newB - b) < CONVERGED && Math.abs((newA - a) * size) < CONVERGED;
+            a = newA;
+            b = newB;
+            if (converged)
+                break;
+        }
+        long[] fitted = new long[size];
+        for (int i = 0; i < size; i++)
+            fitted[i] = origin + Math.round(a * i + b);
+        return fitted;
+    }
+
+    /**
+     * Fits every bar with the line through the bars around it (a sliding window, updated in constant time per bar).
+     *
+     * @param window the number of bars in the window
+     * @param robust true to weight the bars like {@link #fittedRobust()}
+     */
+    public long[] fittedPiecewise(int window, boolean robust) {
+        int half = Math.max(1, window / 2);
+        double[] weights = new double[size];
+        Arrays.fill(weights, 1);
+        double[] values = new double[size];
+        slidingFit(weights, half, values);
+        if (robust && size > 2) {
+            double[] residuals = new double[size];
+            for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                for (int i = 0; i < size; i++)
+                    residuals[i] = times[i] - values[i];
+                double k = HUBER_K * robustDeviation(residuals);
+                if (k == 0)
+                    break;
+                for (int i = 0; i < size; i++)
+                    weights[i] = huberWeight(residuals[i], k);
+                double[] previous = values.clone();
+                slidingFit(weights, half, values);
+                double change = 0;
+                for (int i = 0; i < size; i++)
+                    change = Math.max(change, Math.abs(values[i] - previous[i]));
+                if (change < CONVERGED)
+                    break;
+            }
+        }
+        long[] fitted = new long[size];
+        for (int i = 0; i < size; i++)
+            fitted[i] = origin + Math.round(values[i]);
+        return fitted;
+    }
+
+    private void slidingFit(double[] weights, int half, double[] values) {
+        RunningFit window = new RunningFit();
+        int from = 0;
+        int to = 0;
+        for (int i = 0; i < size; i++) {
+            // window [i - half, i + half], moved along
+            while (to < size && to <= i + half) {
+                window.add(to, times[to], weights[to]);
+                to++;
+            }
+            while (from < i - half) {
+                window.remove(from, times[from], weights[from]);
+                from++;
+            }
+            values[i] = window.valueAt(i);
+        }
+    }
+
+    private static double huberWeight(double residual, double k) {
+        double r = Math.abs(residual);
+        return r <= k ? 1 : k / r;
+    }
+
+    /**
+     * @return the standard deviation estimated from the median absolute residual (not influenced by outliers)
+     */
+    private static double robustDeviation(double[] residuals) {
+        double[] absolute = new double[residuals.length];
+        for (int i = 0; i < residuals.length; i++)
+            absolute[i] = Math.abs(residuals[i]);
+        Arrays.sort(absolute);
+        int n = absolute.length;
+        double median = n % 2 == 1 ? absolute[n / 2] : (absolute[n / 2 - 1] + absolute[n / 2]) / 2;
+        return median / 0.6745;
+    }
+}
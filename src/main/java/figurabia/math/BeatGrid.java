@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.Arrays;
+
+/**
+ * The beats found in the audio of a video (in nanoseconds of video time) and the downbeats among them, i.e. the beats
+ * where the 1s and 5s are. Immutable.
+ *
+ * @author Samuel Berner
+ */
+public class BeatGrid {
+
+    private final long[] beats;
+    private final long[] downbeats;
+
+    public BeatGrid(long[] beats, long[] downbeats) {
+        this.beats = beats;
+        this.downbeats = downbeats;
+    }
+
+    /**
+     * @return all beats in ascending order (not to be changed)
+     */
+    public long[] getBeats() {
+        return beats;
+    }
+
+    /**
+     * @return the downbeats in ascending order (not to be changed)
+     */
+    public long[] getDownbeats() {
+        return downbeats;
+    }
+
+    /**
+     * @return the beats from start to end (both inclusive)
+     */
+    public long[] beatsBetween(long start, long end) {
+        return between(beats, start, end);
+    }
+
+    /**
+     * @return the downbeats from start to end (both inclusive)
+     */
+    public long[] downbeatsBetween(long start, long end) {
+        return between(downbeats, start, end);
+    }
+
+    /**
+     * @return the index of the beat nearest to the given time, or -1 if there are no beats
+     */
+    public int nearestBeat(long time) {
+        if (beats.length == 0)
+            return -1;
+        int i = Arrays.binarySearch(beats, time);
+        if (i >= 0)
+            return i;
+        int after = -i - 1;
+        if (after == 0)
+            return 0;
+        if (after == beats.length)
+            return beats.length - 1;
+        return time - beats[after - 1] <= beats[after] - time ? after - 1 : after;
+    }
+
+    private static long[] between(long[] times, long start, long end) {
+        int from = Arrays.binarySearch(times, start);
+        if (from < 0)
+            from = -from - 1;
+        int to = Arrays.binarySearch(times, end);
+        to = to < 0 ? -to - 1 : to + 1;
+        return Arrays.copyOfRange(times, from, Math.max(from, to));
+    }
+}
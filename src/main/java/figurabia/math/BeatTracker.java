@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.Arrays;
+
+/**
+ * Finds the beats in an onset strength envelope (see {@link OnsetDetector}): the tempo from the autocorrelation of the
+ * envelope, the phase from the best matching comb of that tempo, and then every beat near its predicted time, so the
+ * grid may follow a slowly changing tempo. Every fourth beat is a downbeat (a 1 or 5), the one of the four possible
+ * offsets with the strongest low frequency onsets (see {@link #findDownbeats(Beats)}, for all parts of a video at
+ * once).
+ *
+ * @author Samuel Berner
+ */
+public class BeatTracker {
+
+    // salsa is usually between 150 and 220 beats per minute
+    public static final double MIN_BPM = 90;
+    public static final double MAX_BPM = 250;
+    private static final double PREFERRED_BPM = 180;
+    // width of the tempo preference in octaves
+    private static final double TEMPO_DEVIATION = 1.0;
+    // how far (as part of a beat) a beat may be found from its predicted time
+    private static final double SEARCH_RANGE = 0.15;
+    // resolution of the period search in frames
+    private static final double PERIOD_STEP = 0.02;
+    // the envelope is compared to its mean in a window of this length (in seconds)
+    private static final double MEAN_WINDOW = 0.5;
+
+    private final double framesPerSecond;
+    private final long firstFrameNanos;
+
+    /**
+     * @param framesPerSecond the frame rate of the envelope (sample rate / hop)
+     * @param firstFrameNanos the video time of the first frame (e.g. the start of the part plus half a frame)
+     */
+    public BeatTracker(double framesPerSecond, long firstFrameNanos) {
+        this.framesPerSecond = framesPerSecond;
+        this.firstFrameNanos = firstFrameNanos;
+    }
+
+    /**
+     * The beats in nanoseconds of video time and the low frequency onset strength at each of them.
+     */
+    public static class Beats {
+        private final long[] times;
+        private final float[] accents;
+
+        public Beats(long[] times, float[] accents) {
+            this.times = times;
+            this.accents = accents;
+        }
+
+        public long[] getTimes() {
+            return times;
+        }
+
+        public float[] getAccents() {
+            return accents;
+        }
+    }
+
+    /**
+     * @return the beats, without downbeats yet (see {@link #findDownbeats(Beats)})
+     */
+    public Beats track(float[] onsets, float[] lowOnsets, int length) {
+        double[] envelope = normalize(onsets, length);
+        int lag = findLag(envelope);
+        if (lag <= 0)
+            return new Beats(new long[0], new float[0]);
+        double[] comb = fitComb(envelope, lag);
+        double period = comb[0];
+        double phase = comb[1];
+
+        // follow the beats, each one searched near the position predicted by the previous one
+        double[] beatFrames = new double[(int) (length / period) + 2];
+        int count = 0;
+        int range = Math.max(1, (int) (period * SEARCH_RANGE));
+        for (double predicted = phase; predicted < length; ) {
+            int center = (int) Math.round(predicted);
+            int best = -1;
+            double bestScore = 0;
+            for (int f = Math.max(0, center - range); f <= Math.min(length - 1, center + range); f++) {
+                double distance = (f - predicted) / range;
+                double score = envelope[f] * (1 - 0.5 * distance * distance);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = f;
+                }
+            }
+            if (best == -1 && count == 0) {
+                // no beats before the music starts
+                predicted += period;
+                continue;
+            }
+            double beat = best == -1 ? predicted : best;
+            if (beat >= length)
+                break;
+            if (count == beatFrames.length)
+                beatFrames = Arrays.copyOf(beatFrames, count * 2);
+            beatFrames[count++] = beat;
+            // the found beat only pulls the prediction half way, so a single wrong onset does not shift the grid
+            predicted = (predicted + beat) / 2 + period;
+        }
+
+        long[] times = new long[count];
+        float[] accents = new float[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = toNanos(beatFrames[i]);
+            // a beat just before the end would round to the first frame after it
+            accents[i] = lowOnsets[Math.min(length - 1, (int) Math.round(beatFrames[i]))];
+        }
+        return new Beats(times, accents);
+    }
+
+    /**
+     * Takes every fourth beat as a downbeat, starting with the one of the first four which gives the strongest
+     * accents. Only meaningful for all beats of a video, the parts of it may each start at a different offset.
+     */
+    public static BeatGrid findDownbeats(Beats beats) {
+        long[] times = beats.getTimes();
+        float[] accents = beats.getAccents();
+        double[] scores = new double[4];
+        for (int i = 0; i < times.length; i++) {
+            scores[i % 4] += accents[i];
+        }
+        int offset = 0;
+        for (int i = 1; i < 4; i++) {
+            if (scores[i] > scores[offset])
+                offset = i;
+        }
+        long[] downbeats = new long[times.length <= offset ? 0 : (times.length - offset + 3) / 4];
+        for (int i = 0; i < downbeats.length; i++) {
+            downbeats[i] = times[offset + 4 * i];
+        }
+        return new BeatGrid(times, downbeats);
+    }
+
+    private long toNanos(double frame) {
+        return firstFrameNanos + (long) (frame / framesPerSecond * 1e9);
+    }
+
+    /**
+     * Subtracts the local mean, so that only the peaks remain.
+     */
+    private double[] normalize(float[] onsets, int length) {
+        double[] envelope = new double[length];
+        int half = Math.max(1, (int) (MEAN_WINDOW * framesPerSecond / 2));
+        double sum = 0;
+        int from = 0;
+        int to = 0;
+        for (int i = 0; i < length; i++) {
+            // sliding window [i - half, i + half]
+            while (to < length && to <= i + half) {
+                sum += onsets[to++];
+            }
+            while (from < i - half) {
+                sum -= onsets[from++];
+            }
+            double mean = sum / (to - from);
+            envelope[i] = Math.max(0, onsets[i] - mean);
+        }
+        return envelope;
+    }
+
+    /**
+     * @return the beat period in whole frames, or 0 if the envelope is too short
+     */
+    private int findLag(double[] envelope) {
+        int minLag = Math.max(1, (int) Math.floor(framesPerSecond * 60 / MAX_BPM));
+        int maxLag = (int) Math.ceil(framesPerSecond * 60 / MIN_BPM);
+        if (envelope.length < 2 * maxLag)
+            return 0;
+        int bestLag = 0;
+        double bestScore = 0;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            double sum = 0;
+            for (int i = 0; i + lag < envelope.length; i++) {
+                sum += envelope[i] * envelope[i + lag];
+            }
+            double octaves = Math.log(framesPerSecond * 60 / lag / PREFERRED_BPM) / Math.log(2);
+            double preference = Math.exp(-0.5 * (octaves / TEMPO_DEVIATION) * (octaves / TEMPO_DEVIATION));
+            double score = sum / (envelope.length - lag) * preference;
+            if (score > bestScore) {
+                bestScore = score;
+                bestLag = lag;
+            }
+        }
+        return bestLag;
+    }
+
+    /**
+     * Finds the comb (period and offset, in frames) with the most onset strength. The period is searched with
+     * fractions around the given lag, because over a whole part even a small error adds up to a wrong phase.
+     *
+     * @return the period and the offset (less than a period)
+     */
+    private double[] fitComb(double[] envelope, int lag) {
+        double bestPeriod = lag;
+        double bestPhase = 0;
+        double bestScore = -1;
+        int steps = (int) Math.round(2 / PERIOD_STEP);
+        for (int step = 0; step <= steps; step++) {
+            double period = lag - 1 + step * PERIOD_STEP;
+            for (int phase = 0; phase < (int) Math.ceil(period); phase++) {
+                double score = 0;
+                for (double t = phase; t < envelope.length; t += period) {
+                    int f = (int) Math.round(t);
+                    if (f >= envelope.length)
+                        break;
+                    score += envelope[f];
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestPeriod = period;
+                    bestPhase = phase;
+                }
+            }
+        }
+        return new double[] { bestPeriod, bestPhase };
+    }
+}
@@ -17,46 +17,28 @@ package figurabia.math;
  *  -----------
  *   -  assumes N is a power of 2
  *
- *   -  not the most memory efficient algorithm (because it uses
- *      an object type for representing complex numbers and because
- *      it re-allocates memory for the subarray, instead of doing
- *      in-place or reusing a single temporary array)
+ *   -  not memory efficient (because it uses an object type for
+ *      representing complex numbers), the transform itself is done
+ *      in place by FFTPlan
  *  
  *************************************************************************/
 
 public class FFT {
 
     // compute the FFT of x[], assuming its length is a power of 2
+    // (converts to arrays of doubles for FFTPlan, which should be used directly where it matters)
     public static Complex[] fft(Complex[] x) {
         int N = x.length;
-
-        // base case
-        if (N == 1) return new Complex[] { x[0] };
-
-        // radix 2 Cooley-Tukey FFT
-        if (N % 2 != 0) { throw new RuntimeException("N is not a power of 2"); }
-
-        // fft of even terms
-        Complex[] even = new Complex[N/2];
-        for (int k = 0; k < N/2; k++) {
-            even[k] = x[2*k];
+        double[] re = new double[N];
+        double[] im = new double[N];
+        for (int k = 0; k < N; k++) {
+            re[k] = x[k].re();
+            im[k] = x[k].im();
         }
-        Complex[] q = fft(even);
-
-        // fft of odd terms
-        Complex[] odd  = even;  // reuse the array
-        for (int k = 0; k < N/2; k++) {
-            odd[k] = x[2*k + 1];
-        }
-        Complex[] r = fft(odd);
-
-        // combine
+        FFTPlan.forSize(N).forward(re, im);
         Complex[] y = new Complex[N];
-        for (int k = 0; k < N/2; k++) {
-            double kth = -2 * k * Math.PI / N;
-            Complex wk = new Complex(Math.cos(kth), Math.sin(kth));
-            y[k]       = q[k].plus(wk.times(r[k]));
-            y[k + N/2] = q[k].minus(wk.times(r[k]));
+        for (int k = 0; k < N; k++) {
+            y[k] = new Complex(re[k], im[k]);
         }
         return y;
     }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An iterative in-place radix 2 FFT of a fixed size (a power of 2) on separate arrays of real and imaginary parts.
+ * The twiddle factors and the bit reversal permutation are calculated once when creating the plan, transforming
+ * allocates nothing. A plan is immutable, so the same plan can be used by several threads at the same time (with
+ * different arrays), plans are cached by {@link #forSize(int)}.
+ * <p>
+ * Besides the complex transform, a plan of size n transforms n real values with a complex transform of size n/2.
+ *
+ * @author Samuel Berner
+ */
+public final class FFTPlan {
+
+    private static final ConcurrentMap<Integer, FFTPlan> PLANS = new ConcurrentHashMap<Integer, FFTPlan>();
+
+    private final int size;
+    // cos and sin of -2*pi*k/size for k < size/2
+    private final double[] cos;
+    private final double[] sin;
+    // the pairs of indices to swap (i < j) for the bit reversal permutation of size and of size/2 values
+    private final int[] swaps;
+    private final int[] halfSwaps;
+
+    /**
+     * @param size the number of values to transform, a power of 2
+     */
+    public FFTPlan(int size) {
+        if (size < 1 || (size & (size - 1)) != 0)
+            throw new IllegalArgumentException("size must be a power of 2: " + size);
+        this.size = size;
+        int half = size / 2;
+        cos = new double[half];
+        sin = new double[half];
+        for (int k = 0; k < half; k++) {
+            double angle = -2 * Math.PI * k / size;
+            cos[k] = Math.cos(angle);
+            sin[k] = Math.sin(angle);
+        }
+        swaps = bitReversalSwaps(size);
+        halfSwaps = bitReversalSwaps(Math.max(half, 1));
+    }
+
+    /**
+     * @return the (shared) plan of the given size
+     */
+    public static FFTPlan forSize(int size) {
+        FFTPlan plan = PLANS.get(size);
+        if (plan == null) {
+            plan = new FFTPlan(size);
+            FFTPlan existing = PLANS.putIfAbsent(size, plan);
+            if (existing != null)
+                plan = existing;
+        }
+        return plan;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Replaces the values by their discrete Fourier transform.
+     *
+     * @param re the real parts, at least {@link #getSize()} values
+     * @param im the imaginary parts, at least {@link #getSize()} values
+     */
+    public void forward(double[] re, double[] im) {
+        checkLength(re, size);
+        checkLength(im, size);
+        transform(re, im, size, swaps);
+    }
+
+    /**
+     * Replaces the values by their inverse discrete Fourier transform (scaled by 1/size, so it undoes
+     * {@link #forward(double[], double[])}).
+     */
+    public void inverse(double[] re, double[] im) {
+        checkLength(re, size);
+        checkLength(im, size);
+        // swapping the real and imaginary parts before and after conjugates (and multiplies by i) both times
+        transform(im, re, size, swaps);
+        double scale = 1.0 / size;
+        for (int i = 0; i < size; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    /**
+     * Calculates the transform of {@link #getSize()} real values. Only the first size/2 + 1 frequencies are written,
+     * the others are the complex conjugates of these (X[size - k] = conj(X[k])).
+     *
+     * @param in the real values, not changed
+     * @param re receives the real parts, at least size/2 + 1 values
+     * @param im receives the imaginary parts, at least size/2 + 1 values
+     */
+    public void realForward(double[] in, double[] re, double[] im) {
+        if (size < 2)
+            throw new IllegalStateException("the real transform needs a size of at least 2");
+        int half = size / 2;
+        checkLength(in, size);
+        checkLength(re, half + 1);
+        checkLength(im, half + 1);
+
+        // the even values as real and the odd ones as imaginary parts of a transform of half the size
+        for (int k = 0; k < half; k++) {
+            re[k] = in[2 * k];
+            im[k] = in[2 * k + 1];
+        }
+        transform(re, im, half, halfSwaps);
+
+        // split into the transforms of the even and odd values and combine them, pairs k and half - k together
+        double zr = re[0];
+        double zi = im[0];
+        re[0] = zr + zi;
+        im[0] = 0;
+        re[half] = zr - zi;
+        im[half] = 0;
+        for (int k = 1, j = half - 1; k <= j; k++, j--) {
+            double kr = re[k];
+            double ki = im[k];
+            double jr = re[j];
+            double ji = im[j];
+            // even = (Z[k] + conj(Z[j])) / 2, odd = (Z[k] - conj(Z[j])) / 2i
+            double er = (kr + jr) * 0.5;
+            double ei = (ki - ji) * 0.5;
+            double or = (ki + ji) * 0.5;
+            double oi = (jr - kr) * 0.5;
+            // w * odd with w = e^(-2*pi*i*k/size)
+            double wr = cos[k];
+            double wi = sin[k];
+            double tr = wr * or - wi * oi;
+            double ti = wr * oi + wi * or;
+            re[k] = er + tr;
+            im[k] = ei + ti;
+            // X[half - k] = conj(even - w * odd)
+            re[j] = er - tr;
+            im[j] = ti - ei;
+        }
+    }
+
+    private void transform(double[] re, double[] im, int n, int[] permutation) {
+        for (int s = 0; s < permutation.length; s += 2) {
+            int i = permutation[s];
+            int j = permutation[s + 1];
+            double t = re[i];
+            re[i] = re[j];
+            re[j] = t;
+            t = im[i];
+            im[i] = im[j];
+            im[j] = t;
+        }
+
+        // first pass separately, its only twiddle factor is 1
+        for (int i = 0; i + 1 < n; i += 2) {
+            double tr = re[i + 1];
+            double ti = im[i + 1];
+            re[i + 1] = re[i] - tr;
+            im[i + 1] = im[i] - ti;
+            re[i] += tr;
+            im[i] += ti;
+        }
+
+        for (int length = 4; length <= n; length <<= 1) {
+            int halfLength = length >> 1;
+            // the tables are for this plan's size, a transform of length needs every (size / length)th factor
+            int step = size / length;
+            for (int start = 0; start < n; start += length) {
+                for (int k = 0, t = 0; k < halfLength; k++, t += step) {
+                    int a = start + k;
+                    int b = a + halfLength;
+                    double wr = cos[t];
+                    double wi = sin[t];
+                    double br = re[b];
+                    double bi = im[b];
+                    double tr = wr * br - wi * bi;
+                    double ti = wr * bi + wi * br;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    private static int[] bitReversalSwaps(int n) {
+        int bits = Integer.numberOfTrailingZeros(n);
+        int count = 0;
+        int[] pairs = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            if (i < j) {
+                pairs[count++] = i;
+                pairs[count++] = j;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(pairs, 0, result, 0, count);
+        return result;
+    }
+
+    private static void checkLength(double[] values, int length) {
+        if (values.length < length)
+            throw new IllegalArgumentException("expected at least " + length + " values, but got " + values.length);
+    }
+}
@@ -5,52 +5,54 @@
 package figurabia.math;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 public class LinearLeastSquares {
 
     public static List<Long> fitToBars(List<Long> ones, List<Long> fives) {
-        Collections.sort(ones);
-        Collections.sort(fives);
-        
-        SortedMap<Long, Integer> beats = new TreeMap<Long, Integer>();
-        for( Long time : ones)
-            beats.put(time, 1);
-        for( Long time : fives)
-            beats.put(time, 5);
-        
-        // match to coordinates (better simple than complicated)
-        int lastType = 5;
-        int virtualIdealTime = -5;
-        long lastMeasuredTime = -1;
-        for( Long measuredTime : new TreeSet<Long>(beats.keySet())) {
-            int currentType = beats.get(measuredTime); // get beat type (1 or 5) of current beat
-
-            
-            // add a beat inbetween if the alternating beat is missing
-            if( currentType == lastType && lastMeasuredTime != -1) {
-                virtualIdealTime += 5;
-                long timeInbetween = (measuredTime + lastMeasuredTime) / 2;
-                beats.put(timeInbetween, virtualIdealTime);
-            }
-            
-            virtualIdealTime += 5;
-            beats.put(measuredTime, virtualIdealTime);
-            
-            // update last values for next iteration
-            lastMeasuredTime = measuredTime;
-            lastType = currentType;
-        }
-        
-        // do the linear least squares algorithm
-        return linearLeastSquareFitted(beats);
+        long[] fitted = fitToBars(toArray(ones), toArray(fives));
+        List<Long> newValues = new ArrayList<Long>(fitted.length);
+        for (long time : fitted)
+            newValues.add(time);
+        return newValues;
+    }
+
+    /**
+     * Fits a line through the 1s and 5s (in any order). If the alternating beat is missing between two 1s or two 5s,
+     * one is added in the middle.
+     * 
+     * @return the fitted times of all bars (including the added ones) in ascending order
+     */
+    public static long[] fitToBars(long[] ones, long[] fives) {
+        return BarFitter.of(ones, fives).fitted();
     }
-    
+
+    /**
+     * Like {@link #fitToBars(long[], long[])}, but single mis-tapped bars (outliers) hardly influence the fit.
+     */
+    public static long[] fitToBarsRobust(long[] ones, long[] fives) {
+        return BarFitter.of(ones, fives).fittedRobust();
+    }
+
+    /**
+     * Like {@link #fitToBarsRobust(long[], long[])}, but each bar is fitted only with its neighbours, so the grid may
+     * follow a changing tempo.
+     * 
+     * @param window the number of bars fitted together (around each bar)
+     */
+    public static long[] fitToBarsPiecewise(long[] ones, long[] fives, int window) {
+        return BarFitter.of(ones, fives).fittedPiecewise(window, true);
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = values.get(i);
+        return array;
+    }
+
     public static List<Long> linearLeastSquareFitted(SortedMap<Long,Integer> coordinates) {
         // find parameters of line equation (using least squares) (x goes from 0 to size-1)
         Set<Long> keySet = coordinates.keySet();
@@ -80,4 +82,59 @@ public class LinearLeastSquares {
         }
         return newValues;
     }
+
+    /**
+     * The sums needed for a (weighted) least squares line y = a*x + b, updated in constant time when a point is
+     * added or removed.
+     */
+    public static class RunningFit {
+        private double sumW;
+        private double sumX;
+        private double sumY;
+        private double sumXX;
+        private double sumXY;
+
+        public void add(double x, double y) {
+            add(x, y, 1);
+        }
+
+        public void add(double x, double y, double weight) {
+            sumW += weight;
+            sumX += weight * x;
+            sumY += weight * y;
+            sumXX += weight * x * x;
+            sumXY += weight * x * y;
+        }
+
+        public void remove(double x, double y, double weight) {
+            add(x, y, -weight);
+        }
+
+        public void clear() {
+            sumW = sumX = sumY = sumXX = sumXY = 0;
+        }
+
+        /**
+         * @return a, or 0 if the points do not determine a line
+         */
+        public double slope() {
+            double denominator = sumW * sumXX - sumX * sumX;
+            if (denominator == 0)
+                return 0;
+            return (sumW * sumXY - sumX * sumY) / denominator;
+        }
+
+        /**
+         * @return b (the weighted mean of y if the points do not determine a line)
+         */
+        public double intercept() {
+            if (sumW == 0)
+                return 0;
+            return (sumY - slope() * sumX) / sumW;
+        }
+
+        public double valueAt(double x) {
+            return slope() * x + intercept();
+        }
+    }
 }
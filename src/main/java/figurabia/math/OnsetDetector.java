@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.Arrays;
+
+import figurabia.math.ShortTimeFourierTransform.FrameListener;
+
+/**
+ * Calculates the onset strength of every frame of a {@link ShortTimeFourierTransform}: the increase of the (log
+ * compressed) magnitudes compared to the previous frame, summed over all frequencies and separately over the low
+ * frequencies (bass and drums, which mark the downbeats).
+ *
+ * @author Samuel Berner
+ */
+public class OnsetDetector implements FrameListener {
+
+    private static final double COMPRESSION = 100;
+
+    private final int lowBins;
+    private float[] previous;
+    private float[] onsets = new float[1024];
+    private float[] lowOnsets = new float[1024];
+    private int length = 0;
+
+    /**
+     * @param binCount the number of magnitudes per frame
+     * @param lowBins the number of the lowest magnitudes counted as low frequencies
+     */
+    public OnsetDetector(int binCount, int lowBins) {
+        this.lowBins = Math.min(lowBins, binCount);
+        this.previous = new float[binCount];
+    }
+
+    @Override
+    public void frame(long frameIndex, float[] magnitudes) {
+        if (length == onsets.length) {
+            onsets = Arrays.copyOf(onsets, length * 2);
+            lowOnsets = Arrays.copyOf(lowOnsets, length * 2);
+        }
+        double sum = 0;
+        double lowSum = 0;
+        for (int k = 0; k < previous.length; k++) {
+            float compressed = (float) Math.log(1 + COMPRESSION * magnitudes[k]);
+            // the first frame has nothing to compare with
+            if (frameIndex > 0) {
+                float increase = compressed - previous[k];
+                if (increase > 0) {
+                    sum += increase;
+                    if (k < lowBins)
+                        lowSum += increase;
+                }
+            }
+            previous[k] = compressed;
+        }
+        onsets[length] = (float) sum;
+        lowOnsets[length] = (float) lowSum;
+        length++;
+    }
+
+    /**
+     * @return the number of frames
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the onset strengths, only the first {@link #getLength()} are valid
+     */
+    public float[] getOnsets() {
+        return onsets;
+    }
+
+    /**
+     * @return the onset strengths of the low frequencies, only the first {@link #getLength()} are valid
+     */
+    public float[] getLowOnsets() {
+        return lowOnsets;
+    }
+}
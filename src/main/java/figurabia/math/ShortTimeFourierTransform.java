@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.io.IOException;
+
+import figurabia.io.AudioSource;
+
+/**
+ * Calculates the magnitude spectra of overlapping, windowed frames of a stream of samples. The samples are pushed in
+ * pieces of any size, only the samples of the current frame are kept. Each frame is passed to the listener as soon as
+ * it is complete (e.g. to a {@link SpectrogramBuffer}).
+ * <p>
+ * Frame i starts at sample i * hop. Not thread safe, one instance per stream.
+ *
+ * @author Samuel Berner
+ */
+public class ShortTimeFourierTransform {
+
+    private static final int READ_SIZE = 4096;
+
+    public enum Window {
+        RECTANGULAR, HANN, HAMMING;
+
+        /**
+         * @return the periodic window of the given size
+         */
+        public double[] coefficients(int size) {
+            double[] w = new double[size];
+            for (int i = 0; i < size; i++) {
+                double c = Math.cos(2 * Math.PI * i / size);
+                switch (this) {
+                case HANN:
+                    w[i] = 0.5 - 0.5 * c;
+                    break;
+                case HAMMING:
+                    w[i] = 0.54 - 0.46 * c;
+                    break;
+                default:
+                    w[i] = 1;
+                }
+            }
+            return w;
+        }
+    }
+
+    public interface FrameListener {
+        /**
+         * @param frameIndex the number of the frame (starting with 0)
+         * @param magnitudes the magnitudes of the frequencies 0 to sampleRate/2, only valid during the call
+         */
+        void frame(long frameIndex, float[] magnitudes);
+    }
+
+    private final int frameSize;
+    private final int hop;
+    private final double[] window;
+    private final FFTPlan plan;
+    private final FrameListener listener;
+
+    // the samples of the current frame, scaled to [-1, 1)
+    private final double[] samples;
+    private int filled = 0;
+    // samples pushed since the last frame
+    private int fresh = 0;
+    private long frameIndex = 0;
+
+    private final double[] windowed;
+    private final double[] re;
+    private final double[] im;
+    private final float[] magnitudes;
+
+    /**
+     * @param frameSize the number of samples per frame, a power of 2
+     * @param hop the number of samples from the start of one frame to the next, at most frameSize
+     */
+    public ShortTimeFourierTransform(int frameSize, int hop, Window window, FrameListener listener) {
+        if (hop < 1 || hop > frameSize)
+            throw new IllegalArgumentException("hop must be between 1 and the frame size: " + hop);
+        this.frameSize = frameSize;
+        this.hop = hop;
+        this.window = window.coefficients(frameSize);
+        this.plan = FFTPlan.forSize(frameSize);
+        this.listener = listener;
+        samples = new double[frameSize];
+        windowed = new double[frameSize];
+        re = new double[frameSize / 2 + 1];
+        im = new double[frameSize / 2 + 1];
+        magnitudes = new float[frameSize / 2 + 1];
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public int getHop() {
+        return hop;
+    }
+
+    /**
+     * @return the number of magnitudes per frame
+     */
+    public int getBinCount() {
+        return magnitudes.length;
+    }
+
+    /**
+     * @return the number of frames passed to the listener so far
+     */
+    public long getFrameCount() {
+        return frameIndex;
+    }
+
+    /**
+     * Adds samples to the stream, passing every frame completed by them to the listener.
+     */
+    public void push(short[] buffer, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            samples[filled++] = buffer[i] / 32768.0;
+            fresh++;
+            if (filled == frameSize) {
+                emitFrame();
+                // keep the overlap with the next frame
+                System.arraycopy(samples, hop, samples, 0, frameSize - hop);
+                filled = frameSize - hop;
+                fresh = 0;
+            }
+        }
+    }
+
+    /**
+     * Ends the stream: if there are samples that are not part of a frame yet, they are padded with silence to a last
+     * frame.
+     */
+    public void finish() {
+        if (fresh > 0) {
+            for (int i = filled; i < frameSize; i++) {
+                samples[i] = 0;
+            }
+            emitFrame();
+        }
+        filled = 0;
+        fresh = 0;
+    }
+
+    /**
+     * Pushes all samples of the source and finishes the stream.
+     */
+    public void process(AudioSource source) throws IOException {
+        short[] buffer = new short[READ_SIZE];
+        int read;
+        while ((read = source.read(buffer, 0, buffer.length)) != -1) {
+            push(buffer, 0, read);
+        }
+        finish();
+    }
+
+    private void emitFrame() {
+        for (int i = 0; i < frameSize; i++) {
+            windowed[i] = samples[i] * window[i];
+        }
+        plan.realForward(windowed, re, im);
+        for (int k = 0; k < magnitudes.length; k++) {
+            magnitudes[k] = (float) Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+        }
+        listener.frame(frameIndex++, magnitudes);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import figurabia.math.ShortTimeFourierTransform.FrameListener;
+
+/**
+ * Keeps the latest magnitude frames of a {@link ShortTimeFourierTransform} in a ring buffer of fixed size, so the
+ * memory needed does not depend on the length of the track. Older frames are overwritten. Can be read by another
+ * thread (e.g. for display) while frames are added.
+ *
+ * @author Samuel Berner
+ */
+public class SpectrogramBuffer implements FrameListener {
+
+    private final int capacity;
+    private final int binCount;
+    // frame i is at (i % capacity) * binCount
+    private final float[] magnitudes;
+    // the number of frames added so far, guarded by this
+    private long frameCount = 0;
+
+    /**
+     * @param capacity the number of frames kept
+     * @param binCount the number of magnitudes per frame
+     */
+    public SpectrogramBuffer(int capacity, int binCount) {
+        if (capacity < 1 || binCount < 1)
+            throw new IllegalArgumentException("capacity and bin count must be at least 1: " + capacity + " x "
+                    + binCount);
+        if ((long) capacity * binCount > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("buffer too large: " + capacity + " x " + binCount);
+        this.capacity = capacity;
+        this.binCount = binCount;
+        this.magnitudes = new float[capacity * binCount];
+    }
+
+    @Override
+    public synchronized void frame(long frameIndex, float[] frame) {
+        if (frameIndex != frameCount)
+            throw new IllegalArgumentException("expected frame " + frameCount + ", but got " + frameIndex);
+        System.arraycopy(frame, 0, magnitudes, slot(frameIndex), binCount);
+        frameCount++;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getBinCount() {
+        return binCount;
+    }
+
+    /**
+     * @return the number of frames added so far (including the ones overwritten already)
+     */
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the index of the oldest frame still available
+     */
+    public synchronized long getFirstFrame() {
+        return Math.max(0, frameCount - capacity);
+    }
+
+    public synchronized boolean isAvailable(long frameIndex) {
+        return frameIndex < frameCount && frameIndex >= frameCount - capacity && frameIndex >= 0;
+    }
+
+    public synchronized float getMagnitude(long frameIndex, int bin) {
+        checkAvailable(frameIndex);
+        return magnitudes[slot(frameIndex) + bin];
+    }
+
+    /**
+     * Copies the magnitudes of the frame into the given array.
+     */
+    public synchronized void getFrame(long frameIndex, float[] frame) {
+        checkAvailable(frameIndex);
+        System.arraycopy(magnitudes, slot(frameIndex), frame, 0, binCount);
+    }
+
+    private int slot(long frameIndex) {
+        return (int) (frameIndex % capacity) * binCount;
+    }
+
+    private void checkAvailable(long frameIndex) {
+        if (!isAvailable(frameIndex))
+            throw new IndexOutOfBoundsException("frame " + frameIndex + " is not available, frames "
+                    + getFirstFrame() + " to " + (frameCount - 1) + " are");
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import figurabia.io.AudioSource;
+import figurabia.io.PcmAudio;
+import figurabia.io.PcmCache;
+import figurabia.io.VideoMetaData;
+import figurabia.io.VideoMetaDataStore;
+import figurabia.math.BeatGrid;
+import figurabia.math.BeatTracker;
+import figurabia.math.BeatTracker.Beats;
+import figurabia.math.LinearLeastSquares;
+import figurabia.math.OnsetDetector;
+import figurabia.math.ShortTimeFourierTransform;
+import figurabia.math.ShortTimeFourierTransform.Window;
+
+/**
+ * Detects the beats and downbeats in the audio of videos and proposes the positions (the 1s and 5s) of a figure from
+ * them. The decoded audio (see {@link PcmCache}) is analysed in parts of half a minute, several parts at the same
+ * time. The parts overlap, so that the tracker has found the beats already where they are joined. The beats of a
+ * video are stored with its meta data, so they are only detected once.
+ *
+ * @author Samuel Berner
+ */
+public class BeatDetectionService {
+
+    private static final long SEGMENT_NANOS = 30L * 1000 * 1000 * 1000;
+    // the parts are joined in the middle of the overlap, where each has seen at least a frame and the longest period
+    private static final long OVERLAP_NANOS = 2L * 1000 * 1000 * 1000;
+    // beats of two parts closer than this (half of the shortest period) are the same beat
+    private static final long SAME_BEAT_NANOS = (long) (60e9 / BeatTracker.MAX_BPM / 2);
+    private static final int FRAME_SIZE = 1024;
+    private static final int HOP = 256;
+    // onsets below this frequency (Hz) count for finding the downbeats
+    private static final int LOW_FREQUENCY = 200;
+
+    private final VideoMetaDataStore metaDataStore;
+    private final PcmCache pcmCache;
+    private final ExecutorService executor;
+    // the beats detected but maybe not stored yet, by MD5 sum of the video
+    private final Map<String, BeatGrid> detected = new HashMap<String, BeatGrid>();
+
+    public BeatDetectionService(VideoMetaDataStore metaDataStore, PcmCache pcmCache) {
+        this.metaDataStore = metaDataStore;
+        this.pcmCache = pcmCache;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BeatDetection-" + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @return the meta data of the video, to be read in the event dispatch thread (like the store)
+     */
+    public VideoMetaData getMetaData(String videoId) {
+        return metaDataStore.read(videoId);
+    }
+
+    /**
+     * Proposes the 1s and 5s between the first and the last of the marked ones: the detected beats a bar apart from
+     * the first mark on, fitted together with the marks. Must not be called in the event dispatch thread, because the
+     * beats may have to be detected first.
+     *
+     * @param md5 the MD5 sum of the video, read from its meta data in the event dispatch thread
+     * @param stored the beats stored with the meta data of the video, or null if there are none yet
+     * @param ones the times of the marked 1s
+     * @param fives the times of the marked 5s
+     * @return the times of the positions, alternating between the beat of the first mark and the other one
+     */
+    public List<Long> proposeBars(String videoId, String md5, BeatGrid stored, List<Long> ones, List<Long> fives)
+            throws IOException {
+        List<Long> marks = new ArrayList<Long>(ones);
+        marks.addAll(fives);
+        if (marks.size() < 2)
+            throw new IllegalArgumentException("at least the first and the last bar must be marked");
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (long m : marks) {
+            start = Math.min(start, m);
+            end = Math.max(end, m);
+        }
+        boolean startsWithOne = ones.contains(start);
+
+        BeatGrid grid = getBeatGrid(videoId, md5, stored);
+        long[] beats = grid.getBeats();
+        List<Long> fittedOnes = new ArrayList<Long>(ones);
+        List<Long> fittedFives = new ArrayList<Long>(fives);
+        int first = grid.nearestBeat(start);
+        if (first != -1 && beats.length > first + 4) {
+            // the whole number of detected bars that fits best between the first and the last mark
+            long detectedBar = beats[first + 4] - beats[first];
+            long bars = Math.max(1, Math.round((end - start) / (double) detectedBar));
+            long bar = end > start ? (end - start) / bars : detectedBar;
+            // only if the detected beats agree with the first mark
+            if (Math.abs(beats[first] - start) <= bar / 8) {
+                // add the detected bars which were not marked, keeping the marks (they are measured as well)
+                boolean one = startsWithOne;
+                for (long expected = beats[first]; expected <= end + bar / 4; expected += bar) {
+                    long beat = beats[grid.nearestBeat(expected)];
+                    // where no beat was detected, the bar is left to the fit
+                    if (Math.abs(beat - expected) <= bar / 8) {
+                        if (!isNear(marks, beat, bar / 4)) {
+                            if (one)
+                                fittedOnes.add(beat);
+                            else
+                                fittedFives.add(beat);
+                        }
+                        // follow the beats, the tempo may change slightly
+                        expected = beat;
+                    }
+                    one = !one;
+                }
+            }
+        }
+        // robust, because a mis-tapped mark or a wrong beat should not shift the whole figure
+        long[] fitted = LinearLeastSquares.fitToBarsRobust(toArray(fittedOnes), toArray(fittedFives));
+        List<Long> result = new ArrayList<Long>(fitted.length);
+        for (long time : fitted)
+            result.add(time);
+        return result;
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = values.get(i);
+        return array;
+    }
+
+    private static boolean isNear(List<Long> times, long time, long tolerance) {
+        for (long t : times) {
+            if (Math.abs(t - time) <= tolerance)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Detects the beats of the video, unless they are stored with its meta data already. Newly detected ones are
+     * stored with its meta data (in the event dispatch thread), if the video was not changed meanwhile and any beats
+     * were found.
+     *
+     * @param md5 the MD5 sum of the video, read from its meta data in the event dispatch thread
+     * @param stored the beats stored with the meta data of the video, or null if there are none yet
+     */
+    public synchronized BeatGrid getBeatGrid(final String videoId, final String md5, BeatGrid stored)
+            throws IOException {
+        if (stored != null)
+            return stored;
+        if (detected.containsKey(md5))
+            return detected.get(md5);
+
+        final BeatGrid grid = detectBeats(pcmCache.open(videoId, md5));
+        if (grid.getBeats().length == 0)
+            return grid;
+        detected.put(md5, grid);
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    VideoMetaData current = metaDataStore.read(videoId);
+                    if (current == null || !md5.equals(current.getMd5Sum()))
+                        return;
+                    current.setBeatGrid(grid);
+                    metaDataStore.update(current);
+                }
+            });
+        } catch (InvocationTargetException e) {
+            // still usable, only not cached
+            System.err.println("Could not store the beats of video " + videoId);
+            e.getCause().printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return grid;
+    }
+
+    /**
+     * Detects the beats of the whole audio, analysing as many parts at the same time as there are processors. The
+     * last part takes the rest of the audio, if it would otherwise leave less than half a part.
+     */
+    public BeatGrid detectBeats(final PcmAudio audio) throws IOException {
+        List<Future<Beats>> futures = new ArrayList<Future<Beats>>();
+        List<Long> starts = new ArrayList<Long>();
+        for (long start = 0; start == 0 || start < audio.getDuration(); start += SEGMENT_NANOS) {
+            final long segmentStart = start;
+            final boolean last = audio.getDuration() - start <= SEGMENT_NANOS + SEGMENT_NANOS / 2;
+            starts.add(start);
+            futures.add(executor.submit(new Callable<Beats>() {
+                @Override
+                public Beats call() throws Exception {
+                    long duration = last ? -1 : SEGMENT_NANOS + OVERLAP_NANOS;
+                    return analyzeSegment(audio.source(segmentStart, duration), segmentStart);
+                }
+            }));
+            if (last)
+                break;
+        }
+        Beats[] parts = new Beats[futures.size()];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                parts[i] = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while detecting beats", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Could not detect beats", e.getCause());
+            }
+        }
+        return BeatTracker.findDownbeats(join(parts, starts));
+    }
+
+    /**
+     * Joins the beats of overlapping parts in the middle of each overlap: the beats of a part up to there, then the
+     * ones of the next part which are not the same as the last one taken.
+     */
+    private static Beats join(Beats[] parts, List<Long> starts) {
+        int total = 0;
+        for (Beats part : parts) {
+            total += part.getTimes().length;
+        }
+        long[] times = new long[total];
+        float[] accents = new float[total];
+        int count = 0;
+        for (int p = 0; p < parts.length; p++) {
+            long from = p == 0 ? Long.MIN_VALUE : starts.get(p) + OVERLAP_NANOS / 2;
+            long to = p == parts.length - 1 ? Long.MAX_VALUE : starts.get(p + 1) + OVERLAP_NANOS / 2;
+            long[] partTimes = parts[p].getTimes();
+            for (int i = 0; i < partTimes.length; i++) {
+                long time = partTimes[i];
+                if (time < from || time >= to)
+                    continue;
+                if (count > 0 && time - times[count - 1] < SAME_BEAT_NANOS)
+                    continue;
+                times[count] = time;
+                accents[count] = parts[p].getAccents()[i];
+                count++;
+            }
+        }
+        return new Beats(Arrays.copyOf(times, count), Arrays.copyOf(accents, count));
+    }
+
+    private Beats analyzeSegment(AudioSource source, long start) throws IOException {
+        try {
+            int sampleRate = source.getSampleRate();
+            int lowBins = LOW_FREQUENCY * FRAME_SIZE / sampleRate + 1;
+            OnsetDetector onsets = new OnsetDetector(FRAME_SIZE / 2 + 1, lowBins);
+            ShortTimeFourierTransform stft = new ShortTimeFourierTransform(FRAME_SIZE, HOP, Window.HANN, onsets);
+            stft.process(source);
+
+            long firstFrameNanos = start + (FRAME_SIZE / 2) * 1000000000L / sampleRate;
+            BeatTracker tracker = new BeatTracker((double) sampleRate / HOP, firstFrameNanos);
+            return tracker.track(onsets.getOnsets(), onsets.getLowOnsets(), onsets.getLength());
+        } finally {
+            source.close();
+        }
+    }
+}
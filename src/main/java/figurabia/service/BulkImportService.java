@@ -0,0 +1,530 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import figurabia.domain.Figure;
+import figurabia.io.VideoDir;
+import figurabia.io.VideoMetaData;
+
+/**
+ * Imports all videos of a directory as new figures, in a new folder named like the directory. The import runs in
+ * stages connected by bounded queues, so a slow stage holds back the ones before it:
+ * <ol>
+ * <li>hashing (a few threads): the fingerprint of each video, known videos are not copied again</li>
+ * <li>copying (one thread, as it is bound by the disks): the MD5 sum is calculated while copying, a video contained
+ * in the directory twice (same fingerprint and MD5 sum) is only copied once</li>
+ * <li>analysing (one thread per processor): the meta data are stored as soon as a video is done</li>
+ * <li>creating all figures and tree items in one batch at the end</li>
+ * </ol>
+ * An interrupted import can simply be started again: videos already copied and analysed are found again by their
+ * fingerprint, a video copied but not analysed is used again and videos which already have a figure get no second
+ * one.
+ *
+ * @author Samuel Berner
+ */
+public class BulkImportService {
+
+    private static final List<String> VIDEO_EXTENSIONS = Arrays.asList("avi", "flv", "m2ts", "m4v", "mkv", "mov",
+            "mp4", "mpeg", "mpg", "mts", "ogv", "webm", "wmv", "3gp");
+
+    private static final int HASHING_THREADS = 2;
+    private static final int QUEUE_CAPACITY = 4;
+
+    /**
+     * How far an import got.
+     */
+    public static class Progress {
+        private final int total;
+        private final int hashed;
+        private final int copied;
+        private final int analyzed;
+        private final int known;
+        private final int failed;
+        private final long bytesCopied;
+        private final long elapsedMillis;
+
+        Progress(int total, int hashed, int copied, int analyzed, int known, int failed, long bytesCopied,
+                long elapsedMillis) {
+            this.total = total;
+            this.hashed = hashed;
+            this.copied = copied;
+            this.analyzed = analyzed;
+            this.known = known;
+            this.failed = failed;
+            this.bytesCopied = bytesCopied;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getHashed() {
+            return hashed;
+        }
+
+        public int getCopied() {
+            return copied;
+        }
+
+        public int getAnalyzed() {
+            return analyzed;
+        }
+
+        /**
+         * @return the number of videos which were in the workspace already
+         */
+        public int getKnown() {
+            return known;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the number of videos which passed all stages
+         */
+        public int getDone() {
+            return analyzed + known + failed;
+        }
+
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return the number of megabytes copied per second since the start
+         */
+        public double getThroughput() {
+            return elapsedMillis == 0 ? 0 : bytesCopied / 1048576.0 / (elapsedMillis / 1000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%d of %d done (%d known, %d failed), %d copied, %.1f MB/s",
+                    getDone(), total, known, failed, copied, getThroughput());
+        }
+    }
+
+    /**
+     * Is notified about the progress of an import (in the threads of the import).
+     */
+    public interface BulkImportListener {
+        void progress(Progress progress);
+
+        /**
+         * Called once at the end, also if the import was cancelled or failed.
+         *
+         * @param createdFigures the figures created (none if cancelled)
+         * @param failures the exceptions by video file (or by the directory, if creating the figures failed)
+         */
+        void finished(Progress progress, List<Figure> createdFigures, Map<File, Exception> failures);
+    }
+
+    public static class BulkImport {
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Thread thread;
+        private final Object finishLock = new Object();
+
+        /**
+         * Stops the import, videos already analysed are kept (so starting the import again continues where it
+         * stopped), but no figures are created.
+         */
+        public void cancel() {
+            cancelled = true;
+            Thread t = thread;
+            if (t != null)
+                t.interrupt();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Waits until the import is done.
+         */
+        public void await() throws InterruptedException {
+            synchronized (finishLock) {
+                while (!done)
+                    finishLock.wait();
+            }
+        }
+
+        private void finish() {
+            synchronized (finishLock) {
+                done = true;
+                finishLock.notifyAll();
+            }
+        }
+    }
+
+    private final VideoDir videoDir;
+    private final FigureCreationService creationService;
+
+    public BulkImportService(VideoDir videoDir, FigureCreationService creationService) {
+        this.videoDir = videoDir;
+        this.creationService = creationService;
+    }
+
+    /**
+     * @return the video files in the directory (not in sub directories), sorted by name
+     */
+    public static List<File> listVideos(File directory) {
+        List<File> videos = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        if (files == null)
+            return videos;
+        for (File f : files) {
+            String name = f.getName();
+            int dot = name.lastIndexOf('.');
+            if (f.isFile() && !f.isHidden() && dot != -1
+                    && VIDEO_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH)))
+                videos.add(f);
+        }
+        Collections.sort(videos);
+        return videos;
+    }
+
+    /**
+     * Starts importing the videos of the directory in the background. Must be called in the event dispatch thread,
+     * which also stores the results.
+     */
+    public BulkImport importDirectory(File directory, BulkImportListener listener) {
+        try {
+            videoDir.addFingerprintsToOlderVideos();
+        } catch (Exception e) {
+            System.err.println("Could not add fingerprints to older videos, they might be imported again");
+            e.printStackTrace();
+        }
+        final Pipeline pipeline = new Pipeline(directory, listVideos(directory), listener);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.run();
+            }
+        }, "BulkImport");
+        pipeline.handle.thread = thread;
+        thread.setDaemon(true);
+        thread.start();
+        return pipeline.handle;
+    }
+
+    /**
+     * One video on its way through the stages.
+     */
+    private static class Item {
+        final File file;
+        String fingerprint;
+        String videoId;
+        boolean known;
+        VideoMetaData metaData;
+        Exception error;
+
+        Item(File file) {
+            this.file = file;
+        }
+    }
+
+    // tells the analysing threads that there is nothing more to do
+    private static final Item END = new Item(null);
+
+    private class Pipeline {
+        final File directory;
+        final List<File> files;
+        final BulkImportListener listener;
+        final BulkImport handle = new BulkImport();
+
+        final BlockingQueue<Item> toCopy = new ArrayBlockingQueue<Item>(QUEUE_CAPACITY);
+        final BlockingQueue<Item> toAnalyze = new ArrayBlockingQueue<Item>(QUEUE_CAPACITY);
+        final BlockingQueue<Item> done = new LinkedBlockingQueue<Item>();
+
+        final AtomicInteger hashed = new AtomicInteger();
+        final AtomicInteger copied = new AtomicInteger();
+        final AtomicInteger analyzed = new AtomicInteger();
+        final AtomicInteger known = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicLong bytesCopied = new AtomicLong();
+        final int analyzerCount = Runtime.getRuntime().availableProcessors();
+        long startTime;
+
+        Pipeline(File directory, List<File> files, BulkImportListener listener) {
+            this.directory = directory;
+            this.files = files;
+            this.listener = listener;
+        }
+
+        void run() {
+            startTime = System.currentTimeMillis();
+            ExecutorService hashers = Executors.newFixedThreadPool(HASHING_THREADS, threadFactory("BulkImportHasher"));
+            ExecutorService copier = Executors.newSingleThreadExecutor(threadFactory("BulkImportCopier"));
+            ExecutorService analyzers = Executors.newFixedThreadPool(analyzerCount,
+                    threadFactory("BulkImportAnalyzer"));
+            List<Figure> created = Collections.emptyList();
+            Map<File, Exception> failures = new LinkedHashMap<File, Exception>();
+            try {
+                for (final File f : files) {
+                    hashers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            hash(f);
+                        }
+                    });
+                }
+                copier.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        copyAll();
+                    }
+                });
+                for (int i = 0; i < analyzerCount; i++) {
+                    analyzers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            analyzeAll();
+                        }
+                    });
+                }
+
+                // store the meta data of each video as soon as it is done, so an interrupted import loses nothing
+                Map<File, Item> items = new HashMap<File, Item>();
+                for (int i = 0; i < files.size(); i++) {
+                    Item item = done.take();
+                    if (item.metaData != null)
+                        storeMetaData(item);
+                    items.put(item.file, item);
+                }
+                // the figures in the order of the files
+                List<String> videoIds = new ArrayList<String>();
+                for (File f : files) {
+                    Item item = items.get(f);
+                    if (item.error == null)
+                        videoIds.add(item.videoId);
+                    else
+                        failures.put(f, item.error);
+                }
+                created = createFigures(videoIds, failures);
+            } catch (InterruptedException e) {
+                // cancelled
+            } finally {
+                hashers.shutdownNow();
+                copier.shutdownNow();
+                analyzers.shutdownNow();
+                handle.thread = null;
+                listener.finished(progress(), created, failures);
+                handle.finish();
+            }
+        }
+
+        private void storeMetaData(final Item item) throws InterruptedException {
+            try {
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        videoDir.storeMetaData(item.metaData);
+                    }
+                });
+            } catch (InvocationTargetException e) {
+                item.error = (Exception) e.getCause();
+                analyzed.decrementAndGet();
+                failed.incrementAndGet();
+            }
+        }
+
+        private List<Figure> createFigures(final List<String> videoIds, Map<File, Exception> failures)
+                throws InterruptedException {
+            final List<Figure> created = new ArrayList<Figure>();
+            try {
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        created.addAll(creationService.createNewFigures(videoIds, directory.getName()));
+                    }
+                });
+            } catch (InvocationTargetException e) {
+                System.err.println("Error while creating the figures of the imported videos");
+                e.getCause().printStackTrace();
+                failures.put(directory, (Exception) e.getCause());
+            }
+            return created;
+        }
+
+        private void hash(File f) {
+            Item item = new Item(f);
+            try {
+                item.fingerprint = VideoDir.calculateFingerprint(f);
+                item.videoId = videoDir.findVideo(f, item.fingerprint);
+                item.known = item.videoId != null;
+            } catch (Exception e) {
+                item.error = e;
+            }
+            hashed.incrementAndGet();
+            reportProgress();
+            try {
+                // waits while the copying stage is behind
+                toCopy.put(item);
+            } catch (InterruptedException e) {
+                // cancelled
+            }
+        }
+
+        private void copyAll() {
+            // the videos copied by this import by fingerprint
+            Map<String, List<Item>> copiedByFingerprint = new HashMap<String, List<Item>>();
+            try {
+                for (int i = 0; i < files.size(); i++) {
+                    Item item = toCopy.take();
+                    if (item.error != null || item.known) {
+                        complete(item);
+                        continue;
+                    }
+                    try {
+                        Item original = findCopied(copiedByFingerprint, item);
+                        if (original != null) {
+                            item.videoId = original.videoId;
+                            item.known = true;
+                            complete(item);
+                            continue;
+                        }
+                        item.videoId = videoDir.copyVideo(item.file, item.fingerprint);
+                        bytesCopied.addAndGet(item.file.length());
+                        copied.incrementAndGet();
+                        List<Item> sameFingerprint = copiedByFingerprint.get(item.fingerprint);
+                        if (sameFingerprint == null) {
+                            sameFingerprint = new ArrayList<Item>();
+                            copiedByFingerprint.put(item.fingerprint, sameFingerprint);
+                        }
+                        sameFingerprint.add(item);
+                        reportProgress();
+                        // waits while the analysing stage is behind
+                        toAnalyze.put(item);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        item.error = e;
+                        complete(item);
+                    }
+                }
+                for (int i = 0; i < analyzerCount; i++) {
+                    toAnalyze.put(END);
+                }
+            } catch (InterruptedException e) {
+                // cancelled
+            }
+        }
+
+        /**
+         * Looks for a video with the same content, which was copied by this import already (the known videos are
+         * found by the hashing stage, but not the ones which are still being imported).
+         *
+         * @return the item of that video or null
+         */
+        private Item findCopied(Map<String, List<Item>> copiedByFingerprint, Item item) throws IOException {
+            List<Item> candidates = copiedByFingerprint.get(item.fingerprint);
+            if (candidates == null)
+                return null;
+            // only the MD5 sum of the whole file is certain (the ones of the copied videos are known from copying)
+            String md5 = videoDir.getMD5(item.file);
+            for (Item candidate : candidates) {
+                if (videoDir.getMD5(candidate.file).equals(md5))
+                    return candidate;
+            }
+            return null;
+        }
+
+        private void analyzeAll() {
+            try {
+                while (true) {
+                    Item item = toAnalyze.take();
+                    if (item == END)
+                        return;
+                    try {
+                        item.metaData = videoDir.analyzeVideo(item.videoId, item.file, item.fingerprint);
+                    } catch (Exception e) {
+                        item.error = e;
+                    }
+                    complete(item);
+                }
+            } catch (InterruptedException e) {
+                // cancelled
+            }
+        }
+
+        /**
+         * Counts the item as done and hands it over to the pipeline thread.
+         */
+        private void complete(Item item) throws InterruptedException {
+            if (item.error != null)
+                failed.incrementAndGet();
+            else if (item.known)
+                known.incrementAndGet();
+            else
+                analyzed.incrementAndGet();
+            reportProgress();
+            done.put(item);
+        }
+
+        private void reportProgress() {
+            if (handle.isCancelled())
+                return;
+            try {
+                listener.progress(progress());
+            } catch (RuntimeException e) {
+                System.err.println("Error in BulkImportListener");
+                e.printStackTrace();
+            }
+        }
+
+        private Progress progress() {
+            return new Progress(files.size(), hashed.get(), copied.get(), analyzed.get(), known.get(), failed.get(),
+                    bytesCopied.get(), System.currentTimeMillis() - startTime);
+        }
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import figurabia.domain.Element;
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoPosition;
+import figurabia.io.FigureStore;
+
+/**
+ * Generates choreographies: sequences of active figures with a given length in bars, each figure starting in the
+ * position the previous one ended in.
+ * <p>
+ * The number of sequences completing a choreography from a position with a number of bars left (and element names still
+ * missing) is computed once per such state and remembered, so the search never enters a branch that cannot be
+ * completed. If there are few enough sequences, all of them are enumerated. Otherwise random sequences are drawn on
+ * several threads, weighted by these numbers.
+ *
+ * @author Samuel Berner
+ */
+public class ChoreographyService {
+
+    /**
+     * What should be generated.
+     */
+    public static class Request {
+        private final PuertoPosition startPosition;
+        private final int bars;
+        private boolean endInInitialPosition;
+        private boolean noRepeatedFigures;
+        private Set<String> requiredElementNames = Collections.emptySet();
+        private int maxResults = 100;
+        private long exhaustiveLimit = 100000;
+        private int samples = 20000;
+
+        public Request(PuertoPosition startPosition, int bars) {
+            this.startPosition = startPosition;
+            this.bars = bars;
+        }
+
+        public PuertoPosition getStartPosition() {
+            return startPosition;
+        }
+
+        public int getBars() {
+            return bars;
+        }
+
+        public boolean isEndInInitialPosition() {
+            return endInInitialPosition;
+        }
+
+        /**
+         * @param endInInitialPosition if the last figure must end in {@link PuertoPosition#getInitialPosition()}
+         */
+        public void setEndInInitialPosition(boolean endInInitialPosition) {
+            this.endInInitialPosition = endInInitialPosition;
+        }
+
+        public boolean isNoRepeatedFigures() {
+            return noRepeatedFigures;
+        }
+
+        public void setNoRepeatedFigures(boolean noRepeatedFigures) {
+            this.noRepeatedFigures = noRepeatedFigures;
+        }
+
+        public Set<String> getRequiredElementNames() {
+            return requiredElementNames;
+        }
+
+        /**
+         * @param requiredElementNames names of elements which must all occur in the choreography (at most 30)
+         */
+        public void setRequiredElementNames(Set<String> requiredElementNames) {
+            if (requiredElementNames.size() > 30)
+                throw new IllegalArgumentException("at most 30 element names can be required");
+            this.requiredElementNames = requiredElementNames;
+        }
+
+        public int getMaxResults() {
+            return maxResults;
+        }
+
+        /**
+         * @param maxResults how many of the best choreographies are kept in the ranking
+         */
+        public void setMaxResults(int maxResults) {
+            this.maxResults = maxResults;
+        }
+
+        public long getExhaustiveLimit() {
+            return exhaustiveLimit;
+        }
+
+        /**
+         * @param exhaustiveLimit up to how many possible sequences all of them are enumerated (instead of sampled)
+         */
+        public void setExhaustiveLimit(long exhaustiveLimit) {
+            this.exhaustiveLimit = exhaustiveLimit;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+        /**
+         * @param samples how many random sequences are drawn if there are too many to enumerate them all
+         */
+        public void setSamples(int samples) {
+            this.samples = samples;
+        }
+    }
+
+    /**
+     * A generated sequence of figures.
+     */
+    public static class Choreography {
+        private final List<Figure> figures;
+        private final int distinctFigures;
+        private final int distinctPositions;
+
+        Choreography(List<Figure> figures) {
+            this.figures = Collections.unmodifiableList(figures);
+            distinctFigures = new HashSet<Figure>(figures).size();
+            Set<Integer> positions = new HashSet<Integer>();
+            for (Figure f : figures) {
+                positions.add(f.getPositions().get(0).asNumber());
+            }
+            distinctPositions = positions.size();
+        }
+
+        public List<Figure> getFigures() {
+            return figures;
+        }
+
+        /**
+         * Choreographies with more variety are ranked higher: more different figures, then more different positions in
+         * which figures start.
+         */
+        public int compareRank(Choreography o) {
+            if (distinctFigures != o.distinctFigures)
+                return distinctFigures > o.distinctFigures ? -1 : 1;
+            if (distinctPositions != o.distinctPositions)
+                return distinctPositions > o.distinctPositions ? -1 : 1;
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            List<String> names = new ArrayList<String>();
+            for (Figure f : figures) {
+                names.add(f.getName());
+            }
+            return names.toString();
+        }
+    }
+
+    /**
+     * Receives the results of a generation (in the generating threads).
+     */
+    public interface ChoreographyListener {
+        /**
+         * Called for every (distinct) choreography found, as soon as it is found.
+         */
+        void found(Choreography choreography);
+
+        /**
+         * Called once at the end (also when cancelled).
+         *
+         * @param ranked the best choreographies found, the best first
+         */
+        void finished(List<Choreography> ranked);
+    }
+
+    /**
+     * A running generation.
+     */
+    public static class Generation {
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile long possibleSequences = -1;
+        private final Object finishLock = new Object();
+
+        /**
+         * Stops the generation, the listener is still called with the ranking of what was found so far.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return the number of possible sequences (not counting the repeated figures constraint), -1 if not known yet
+         */
+        public long getPossibleSequences() {
+            return possibleSequences;
+        }
+
+        /**
+         * Waits until the generation is done.
+         */
+        public void await() throws InterruptedException {
+            synchronized (finishLock) {
+                while (!done)
+                    finishLock.wait();
+            }
+        }
+
+        private void finish() {
+            synchronized (finishLock) {
+                done = true;
+                finishLock.notifyAll();
+            }
+        }
+    }
+
+    private static final long SATURATED = Long.MAX_VALUE / 4;
+
+    private final FigureStore figureStore;
+
+    public ChoreographyService(FigureStore figureStore) {
+        this.figureStore = figureStore;
+    }
+
+    /**
+     * Starts generating choreographies from all active figures in the background.
+     */
+    public Generation generate(Request request, ChoreographyListener listener) {
+        return generate(request, figureStore.getAllActiveFigures(), listener);
+    }
+
+    /**
+     * Starts generating choreographies from the given figures in the background.
+     */
+    public Generation generate(Request request, Collection<Figure> figures, ChoreographyListener listener) {
+        final Search search = new Search(request, new ArrayList<Figure>(figures), listener);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                search.run();
+            }
+        }, "ChoreographyGenerator");
+        thread.setDaemon(true);
+        thread.start();
+        return search.generation;
+    }
+
+    /**
+     * A figure as a step from one position to another.
+     */
+    private static class Step {
+        final Figure figure;
+        final int to;
+        final int bars;
+        final int nameMask;
+
+        Step(Figure figure, int to, int bars, int nameMask) {
+            this.figure = figure;
+            this.to = to;
+            this.bars = bars;
+            this.nameMask = nameMask;
+        }
+    }
+
+    private static class Search {
+        final Request request;
+        final ChoreographyListener listener;
+        final Generation generation = new Generation();
+
+        // position numbers (sorted) and the steps starting in each of them
+        final int[] nodes;
+        final Step[][] steps;
+        final int end;
+        final int allNames;
+        final Map<Long, Long> counts = new HashMap<Long, Long>();
+
+        // guarded by ranking
+        final PriorityQueue<Choreography> ranking;
+        // the sequences drawn so far (when sampling)
+        final Set<List<Figure>> seen = Collections.newSetFromMap(new ConcurrentHashMap<List<Figure>, Boolean>());
+
+        Search(Request request, Collection<Figure> figures, ChoreographyListener listener) {
+            this.request = request;
+            this.listener = listener;
+            ranking = new PriorityQueue<Choreography>(11, new Comparator<Choreography>() {
+                @Override
+                public int compare(Choreography o1, Choreography o2) {
+                    // worst first, to be removed when the ranking is full
+                    return o2.compareRank(o1);
+                }
+            });
+
+            List<String> names = new ArrayList<String>(request.getRequiredElementNames());
+            allNames = (1 << names.size()) - 1;
+            List<Figure> usable = new ArrayList<Figure>();
+            Set<Integer> codes = new HashSet<Integer>();
+            codes.add(request.getStartPosition().asNumber());
+            if (request.isEndInInitialPosition())
+                codes.add(PuertoPosition.getInitialPosition().asNumber());
+            for (Figure f : figures) {
+                List<PuertoPosition> positions = f.getPositions();
+                if (positions.size() < 3 || positions.size() % 2 != 1 || positions.get(0).getBeat() != 1)
+                    continue;
+                usable.add(f);
+                codes.add(positions.get(0).asNumber());
+                codes.add(positions.get(positions.size() - 1).asNumber());
+            }
+            nodes = new int[codes.size()];
+            int i = 0;
+            for (int code : codes) {
+                nodes[i++] = code;
+            }
+            Arrays.sort(nodes);
+
+            List<List<Step>> stepLists = new ArrayList<List<Step>>();
+            for (i = 0; i < nodes.length; i++) {
+                stepLists.add(new ArrayList<Step>());
+            }
+            for (Figure f : usable) {
+                List<PuertoPosition> positions = f.getPositions();
+                int nameMask = 0;
+                if (f.getElements() != null) {
+                    for (Element e : f.getElements()) {
+                        int index = e == null ? -1 : names.indexOf(e.getName());
+                        if (index != -1)
+                            nameMask |= 1 << index;
+                    }
+                }
+                int from = node(positions.get(0).asNumber());
+                int to = node(positions.get(positions.size() - 1).asNumber());
+                stepLists.get(from).add(new Step(f, to, (positions.size() - 1) / 2, nameMask));
+            }
+            steps = new Step[nodes.length][];
+            for (i = 0; i < nodes.length; i++) {
+                steps[i] = stepLists.get(i).toArray(new Step[0]);
+            }
+            end = request.isEndInInitialPosition() ? node(PuertoPosition.getInitialPosition().asNumber()) : -1;
+        }
+
+        void run() {
+            try {
+                int start = node(request.getStartPosition().asNumber());
+                long possible = count(start, request.getBars(), allNames);
+                generation.possibleSequences = possible;
+                if (possible == 0) {
+                    // nothing to do
+                } else if (possible <= request.getExhaustiveLimit()) {
+                    enumerate(start, request.getBars(), allNames, new ArrayList<Figure>());
+                } else {
+                    sample(start);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Exception while generating choreographies");
+                e.printStackTrace();
+            } finally {
+                List<Choreography> ranked;
+                synchronized (ranking) {
+                    ranked = new ArrayList<Choreography>(ranking);
+                }
+                Collections.sort(ranked, new Comparator<Choreography>() {
+                    @Override
+                    public int compare(Choreography o1, Choreography o2) {
+                        return o1.compareRank(o2);
+                    }
+                });
+                listener.finished(ranked);
+                generation.finish();
+            }
+        }
+
+        /**
+         * The number of sequences from the node with exactly the given number of bars, which contain all the names of
+         * the mask (memoized).
+         */
+        long count(int node, int bars, int missingNames) {
+            if (bars == 0)
+                return missingNames == 0 && (end == -1 || node == end) ? 1 : 0;
+            Long key = key(node, bars, missingNames);
+            Long known = counts.get(key);
+            if (known != null)
+                return known;
+            long sum = 0;
+            for (Step s : steps[node]) {
+                if (s.bars <= bars)
+                    sum = Math.min(SATURATED, sum + count(s.to, bars - s.bars, missingNames & ~s.nameMask));
+            }
+            counts.put(key, sum);
+            return sum;
+        }
+
+        /**
+         * Looks up a count computed before (safe to call from several threads after counting).
+         */
+        long knownCount(int node, int bars, int missingNames) {
+            if (bars == 0)
+                return missingNames == 0 && (end == -1 || node == end) ? 1 : 0;
+            Long known = counts.get(key(node, bars, missingNames));
+            return known == null ? 0 : known;
+        }
+
+        private void enumerate(int node, int bars, int missingNames, List<Figure> sequence) {
+            if (generation.isCancelled())
+                return;
+            if (bars == 0) {
+                report(new ArrayList<Figure>(sequence));
+                return;
+            }
+            for (Step s : steps[node]) {
+                if (s.bars > bars || request.isNoRepeatedFigures() && sequence.contains(s.figure))
+                    continue;
+                int missing = missingNames & ~s.nameMask;
+                if (knownCount(s.to, bars - s.bars, missing) == 0)
+                    continue;
+                sequence.add(s.figure);
+                enumerate(s.to, bars - s.bars, missing, sequence);
+                sequence.remove(sequence.size() - 1);
+            }
+        }
+
+        private void sample(final int start) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            final AtomicLong remaining = new AtomicLong(request.getSamples());
+            ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int count;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ChoreographySampler-" + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            for (int i = 0; i < threads; i++) {
+                final long seed = System.nanoTime() + i;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Random random = new Random(seed);
+                        while (!generation.isCancelled() && remaining.decrementAndGet() >= 0) {
+                            List<Figure> sequence = randomWalk(start, random);
+                            if (sequence != null && seen.add(sequence))
+                                report(sequence);
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // wait
+                }
+            } catch (InterruptedException e) {
+                generation.cancel();
+            }
+        }
+
+        /**
+         * Draws a random sequence, choosing each figure with a probability proportional to the number of sequences
+         * which can still be completed with it (so without the repeated figures constraint, every sequence is equally
+         * likely). Figures which were used already are skipped if repeating them is not allowed.
+         *
+         * @return the sequence or null if it ran into a dead end
+         */
+        private List<Figure> randomWalk(int start, Random random) {
+            boolean noRepeats = request.isNoRepeatedFigures();
+            List<Figure> sequence = new ArrayList<Figure>();
+            int node = start;
+            int bars = request.getBars();
+            int missingNames = allNames;
+            while (bars > 0) {
+                long total = 0;
+                for (Step s : steps[node]) {
+                    if (s.bars > bars || noRepeats && sequence.contains(s.figure))
+                        continue;
+                    total = Math.min(SATURATED, total + knownCount(s.to, bars - s.bars, missingNames & ~s.nameMask));
+                }
+                if (total == 0)
+                    return null;
+                long r = (long) (random.nextDouble() * total);
+                Step chosen = null;
+                for (Step s : steps[node]) {
+                    if (s.bars > bars || noRepeats && sequence.contains(s.figure))
+                        continue;
+                    long count = knownCount(s.to, bars - s.bars, missingNames & ~s.nameMask);
+                    if (count == 0)
+                        continue;
+                    chosen = s;
+                    r -= count;
+                    if (r < 0)
+                        break;
+                }
+                sequence.add(chosen.figure);
+                node = chosen.to;
+                bars -= chosen.bars;
+                missingNames &= ~chosen.nameMask;
+            }
+            return sequence;
+        }
+
+        private void report(List<Figure> sequence) {
+            Choreography c = new Choreography(sequence);
+            synchronized (ranking) {
+                ranking.add(c);
+                if (ranking.size() > request.getMaxResults())
+                    ranking.poll();
+                listener.found(c);
+            }
+        }
+
+        private Long key(int node, int bars, int missingNames) {
+            return ((long) node * (request.getBars() + 1) + bars) << 31 | missingNames;
+        }
+
+        private int node(int code) {
+            int i = Arrays.binarySearch(nodes, code);
+            return i < 0 ? -1 : i;
+        }
+    }
+}
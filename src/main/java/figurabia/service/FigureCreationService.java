@@ -7,7 +7,9 @@ package figurabia.service;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.JOptionPane;
 
@@ -20,6 +22,7 @@ import figurabia.domain.TreeItem.ItemType;
 import figurabia.io.FigureStore;
 import figurabia.io.FiguresTreeStore;
 import figurabia.io.VideoDir;
+import figurabia.io.store.Batch;
 import figurabia.io.workspace.Workspace;
 import figurabia.io.workspace.WorkspaceException;
 
@@ -51,24 +54,76 @@ public class FigureCreationService {
         f.setVideoPositions(new ArrayList<Long>());
         prepareFigure(f);
 
-        figureStore.create(f);
+        // figure, tree item and parent folder are written together
+        Batch batch = figureStore.batch(treeStore);
+        try {
+            figureStore.create(f);
 
-        if (parent == null) {
-            parent = treeStore.getRootFolder();
-            index = -1;
-        }
-        // -1 means insert at the end
-        if (index == -1) {
-            index = parent.getChildIds().size();
+            if (parent == null) {
+                parent = treeStore.getRootFolder();
+                index = -1;
+            }
+            // -1 means insert at the end
+            if (index == -1) {
+                index = parent.getChildIds().size();
+            }
+            TreeItem itemRef = new TreeItem(null, ItemType.ITEM, f.getName());
+            itemRef.setRefId(f.getId());
+            treeStore.create(itemRef);
+            treeStore.insertItem(parent, index, itemRef);
+            batch.commit();
+        } finally {
+            batch.discard();
         }
-        TreeItem itemRef = new TreeItem(null, ItemType.ITEM, f.getName());
-        itemRef.setRefId(f.getId());
-        treeStore.create(itemRef);
-        treeStore.insertItem(parent, index, itemRef);
 
         return f;
     }
 
+    /**
+     * Creates a figure for each of the videos (except the ones which already have a figure) in a new folder at the end
+     * of the root folder, all in one batch.
+     * 
+     * @return the created figures
+     */
+    public List<Figure> createNewFigures(List<String> videoIds, String folderName) {
+        Set<String> videosWithFigure = new HashSet<String>();
+        for (Figure f : figureStore.getAllFigures()) {
+            videosWithFigure.add(f.getVideoName());
+        }
+        List<Figure> created = new ArrayList<Figure>();
+        Batch batch = figureStore.batch(treeStore);
+        try {
+            TreeItem folder = null;
+            for (String videoId : videoIds) {
+                if (!videosWithFigure.add(videoId))
+                    continue;
+                if (folder == null) {
+                    folder = new TreeItem(null, ItemType.FOLDER, folderName);
+                    treeStore.create(folder);
+                }
+                Figure f = new Figure();
+                f.setVideoName(videoId);
+                f.setVideoPositions(new ArrayList<Long>());
+                prepareFigure(f);
+                figureStore.create(f);
+                TreeItem itemRef = new TreeItem(null, ItemType.ITEM, f.getName());
+                itemRef.setRefId(f.getId());
+                treeStore.create(itemRef);
+                folder.getChildIds().add(itemRef.getId());
+                created.add(f);
+            }
+            if (folder != null) {
+                treeStore.update(folder);
+                TreeItem root = treeStore.getRootFolder();
+                treeStore.insertItem(root, root.getChildIds().size(), folder);
+            }
+            batch.commit();
+        } finally {
+            batch.discard();
+        }
+        return created;
+    }
+
     public void prepareFigure(Figure f) {
         // check if figure already has a name, if not set the filename without ending
         if (f.getName() == null) {
@@ -126,6 +181,7 @@ public class FigureCreationService {
             String newName = JOptionPane.showInputDialog(null,
                     "Please enter a name for the cloned figure:", f.getName());
             if (newName != null && !newName.equals("")) {
+                Batch batch = figureStore.batch(treeStore);
                 try {
                     Figure clone = f.clone();
                     clone.setId(null);
@@ -141,10 +197,13 @@ public class FigureCreationService {
                     cloneItem.setRefId(clone.getId());
                     treeStore.create(cloneItem);
                     treeStore.insertItem(parent, index, cloneItem);
+                    batch.commit();
                 } catch (WorkspaceException ex) {
                     ex.printStackTrace();
                     JOptionPane.showMessageDialog(null,
                             "IO Error occured while copying pictures of the cloned figure: " + ex.getLocalizedMessage());
+                } finally {
+                    batch.discard();
                 }
             }
         } else {
@@ -163,8 +222,13 @@ public class FigureCreationService {
             parent = treeStore.read(parent.getId()); // in case it is a stale object
         }
         TreeItem newFolder = new TreeItem(null, ItemType.FOLDER, name);
-        treeStore.create(newFolder);
-
-        treeStore.insertItem(parent, index, newFolder);
+        Batch batch = treeStore.batch();
+        try {
+            treeStore.create(newFolder);
+            treeStore.insertItem(parent, index, newFolder);
+            batch.commit();
+        } finally {
+            batch.discard();
+        }
     }
 }
@@ -21,6 +21,7 @@ import figurabia.domain.TreeItem.ItemType;
 import figurabia.io.BeatPictureCache;
 import figurabia.io.FigureStore;
 import figurabia.io.FiguresTreeStore;
+import figurabia.io.store.Batch;
 import figurabia.io.workspace.Workspace;
 
 public class FigureUpdateService {
@@ -47,10 +48,16 @@ public class FigureUpdateService {
         case ITEM:
             String figureId = item.getRefId();
             Figure f = figureStore.read(figureId);
-            f.setName(newName);
-            figureStore.update(f);
-            item.setName(newName);
-            treeStore.update(item);
+            Batch batch = figureStore.batch(treeStore);
+            try {
+                f.setName(newName);
+                figureStore.update(f);
+                item.setName(newName);
+                treeStore.update(item);
+                batch.commit();
+            } finally {
+                batch.discard();
+            }
             break;
         }
     }
@@ -88,7 +95,8 @@ public class FigureUpdateService {
             throw new IllegalArgumentException("figure does not end with a 1");
         }
 
-        // rearrange bar ids, rename files
+        // rearrange bar ids, rename files (after pictures captured just before are written)
+        beatPictureCache.awaitPicturesWritten();
         List<Integer> barIds = f.getBarIds();
         for (int i = 0; i < barIds.size(); i++) {
             int oldBarId = barIds.get(i);
@@ -119,15 +127,18 @@ public class FigureUpdateService {
             if (index == -1) {
                 // delete the picture because it is not referenced by any bar
                 workspace.delete(newPath);
+                beatPictureCache.deleteThumbnails(newPath);
             } else {
                 // swap new name out (should only be temporary)
                 int backupBarId = 10000 + newBarId;
                 String backupPath = beatPictureCache.getPicturePath(f.getId(), backupBarId, beat);
                 workspace.move(oldPath, backupPath);
+                beatPictureCache.moveThumbnails(oldPath, backupPath);
                 barIds.set(index, backupBarId);
             }
         }
         workspace.move(oldPath, newPath);
+        beatPictureCache.moveThumbnails(oldPath, newPath);
     }
 
     private void clearImageCache(Figure f) {
@@ -142,10 +153,16 @@ public class FigureUpdateService {
         if (item.getType() == ItemType.ITEM) {
             TreeItem parent = treeStore.getParentFolder(item);
             int index = parent.getChildIds().indexOf(item.getId());
-            treeStore.removeItem(parent, index);
-            treeStore.delete(item);
             Figure f = figureStore.read(item.getRefId());
-            figureStore.delete(f);
+            Batch batch = treeStore.batch(figureStore);
+            try {
+                treeStore.removeItem(parent, index);
+                treeStore.delete(item);
+                figureStore.delete(f);
+                batch.commit();
+            } finally {
+                batch.discard();
+            }
             // TODO maybe delete video too
             try {
                 beatPictureCache.deleteAllPictures(f.getId());
@@ -159,9 +176,14 @@ public class FigureUpdateService {
                 throw new IllegalArgumentException("Currently only supports deleting empty folders.");
             TreeItem parent = treeStore.getParentFolder(item);
             int index = parent.getChildIds().indexOf(item.getId());
-            treeStore.removeItem(parent, index);
-            treeStore.delete(item);
-
+            Batch batch = treeStore.batch();
+            try {
+                treeStore.removeItem(parent, index);
+                treeStore.delete(item);
+                batch.commit();
+            } finally {
+                batch.discard();
+            }
         }
     }
 
@@ -8,58 +8,243 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import figurabia.domain.Element;
 import figurabia.domain.Figure;
 import figurabia.domain.PuertoPosition;
 import figurabia.framework.FigurabiaModel;
+import figurabia.framework.ViewSetListener;
+import figurabia.io.FigureStore;
+import figurabia.io.store.StoreListener;
+import figurabia.util.IntHashMap;
 
+/**
+ * Indexes the elements of all figures in the view set by their initial position. The index is kept up to date with the
+ * view set and with updates of the figures in the store, by only re-indexing the figures that changed.
+ * <p>
+ * The results for a position are immutable snapshots, which are replaced as a whole when they change (copy on write),
+ * so reading never blocks. They are kept in an {@link IntHashMap} keyed by the number of the position, so that a lookup
+ * allocates nothing.
+ */
 public class FiguresByPositionService {
+
+    /**
+     * Is notified after the index was changed by a change of the view set or of a figure (in the thread of that
+     * change), so listeners do not depend on being notified after the service.
+     */
+    public interface IndexListener {
+        /**
+         * @param positions the positions whose results changed
+         */
+        void indexChanged(Set<PuertoPosition> positions);
+    }
+
     private FigurabiaModel figurabiaModel;
-    private Map<PuertoPosition, Map<Element, List<Result>>> figuresByPosition;
+    // keyed by PuertoPosition.asNumber()
+    private final IntHashMap<Map<Element, List<Result>>> figuresByPosition =
+            new IntHashMap<Map<Element, List<Result>>>();
+    /**
+     * The positions under which each indexed figure was added (figures may be modified in place, so they are not
+     * derived from the figure again when removing it).
+     */
+    private final Map<String, Set<PuertoPosition>> positionsByFigure = new HashMap<String, Set<PuertoPosition>>();
+    private final List<IndexListener> indexListeners = new CopyOnWriteArrayList<IndexListener>();
 
-    public FiguresByPositionService(final FigurabiaModel figurabiaModel) {
+    public FiguresByPositionService(final FigurabiaModel figurabiaModel, FigureStore figureStore) {
         this.figurabiaModel = figurabiaModel;
         init(figurabiaModel.getViewSet());
+        figurabiaModel.addViewSetListener(new ViewSetListener() {
+            @Override
+            public void update(ChangeType type, List<Figure> changed) {
+                if (type == ChangeType.ADDED) {
+                    notifyIndexListeners(reindex(changed));
+                } else {
+                    List<String> ids = new ArrayList<String>(changed.size());
+                    for (Figure f : changed) {
+                        ids.add(f.getId());
+                    }
+                    notifyIndexListeners(remove(ids));
+                }
+            }
+        });
+        figureStore.addStoreListener(new StoreListener<Figure>() {
+            @Override
+            public void update(StateChange change, Figure f) {
+                switch (change) {
+                case UPDATED:
+                    if (isIndexed(f.getId()))
+                        notifyIndexListeners(reindex(Collections.singletonList(f)));
+                    break;
+                case DELETED:
+                    notifyIndexListeners(remove(Collections.singletonList(f.getId())));
+                    break;
+                default:
+                    // new figures are not in the view set yet
+                    break;
+                }
+            }
+        });
     }
 
     /**
      * Creates the index of all the figures.
-     * 
+     *
      * @param figures the figures that should be retrievable afterwards
      */
-    public void init(Collection<Figure> figures) {
-        figuresByPosition = new HashMap<PuertoPosition, Map<Element, List<Result>>>();
+    public synchronized void init(Collection<Figure> figures) {
+        figuresByPosition.clear();
+        positionsByFigure.clear();
+        reindex(figures);
+    }
+
+    private synchronized boolean isIndexed(String figureId) {
+        return positionsByFigure.containsKey(figureId);
+    }
+
+    /**
+     * Adds the figures to the index, replacing the results of older versions of them (if any). Only the positions
+     * occurring in these figures are touched, each one once.
+     *
+     * @return the positions whose results changed
+     */
+    private synchronized Set<PuertoPosition> reindex(Collection<Figure> figures) {
+        Set<String> figureIds = new HashSet<String>();
+        Set<PuertoPosition> affected = new HashSet<PuertoPosition>();
+        Map<PuertoPosition, Map<Element, List<Result>>> added =
+                new HashMap<PuertoPosition, Map<Element, List<Result>>>();
         for (Figure f : figures) {
-            List<PuertoPosition> positions = f.getPositions();
-            List<Element> elements = f.getElements();
-            for (int i = 0; i < positions.size() - 1; i++) {
-                PuertoPosition p = positions.get(i);
-                Map<Element, List<Result>> resultMap = figuresByPosition.get(p);
-                if (resultMap == null) {
-                    resultMap = new HashMap<Element, List<Result>>();
-                    figuresByPosition.put(p, resultMap);
-                }
-                Element e = elements.get(i);
-                List<Result> resultList = resultMap.get(e);
-                if (resultList == null) {
-                    resultList = new ArrayList<Result>();
-                    resultMap.put(e, resultList);
-                }
-                resultList.add(new Result(f, i));
+            figureIds.add(f.getId());
+            Set<PuertoPosition> oldPositions = positionsByFigure.remove(f.getId());
+            if (oldPositions != null)
+                affected.addAll(oldPositions);
+            Set<PuertoPosition> positions = collectResults(f, added);
+            positionsByFigure.put(f.getId(), positions);
+            affected.addAll(positions);
+        }
+        for (PuertoPosition p : affected) {
+            replace(p, figureIds, added.get(p));
+        }
+        return affected;
+    }
+
+    /**
+     * @return the positions whose results changed
+     */
+    private synchronized Set<PuertoPosition> remove(Collection<String> figureIds) {
+        Set<String> removed = new HashSet<String>();
+        Set<PuertoPosition> affected = new HashSet<PuertoPosition>();
+        for (String figureId : figureIds) {
+            Set<PuertoPosition> oldPositions = positionsByFigure.remove(figureId);
+            if (oldPositions != null) {
+                removed.add(figureId);
+                affected.addAll(oldPositions);
+            }
+        }
+        for (PuertoPosition p : affected) {
+            replace(p, removed, null);
+        }
+        return affected;
+    }
+
+    public void addIndexListener(IndexListener l) {
+        indexListeners.add(l);
+    }
+
+    public void removeIndexListener(IndexListener l) {
+        indexListeners.remove(l);
+    }
+
+    private void notifyIndexListeners(Set<PuertoPosition> positions) {
+        if (positions.isEmpty())
+            return;
+        for (IndexListener l : indexListeners) {
+            try {
+                l.indexChanged(positions);
+            } catch (RuntimeException e) {
+                System.err.println("Exception from an IndexListener. Positions: " + positions);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Replaces the results for one position by a copy without the results of the given figures, but with the new ones.
+     * Only the result lists containing one of the figures are copied.
+     */
+    private void replace(PuertoPosition p, Set<String> figureIds, Map<Element, List<Result>> newResults) {
+        Map<Element, List<Result>> resultMap = new HashMap<Element, List<Result>>();
+        int code = p.asNumber();
+        Map<Element, List<Result>> oldResultMap = figuresByPosition.get(code);
+        if (oldResultMap != null) {
+            for (Map.Entry<Element, List<Result>> e : oldResultMap.entrySet()) {
+                List<Result> resultList = withoutFigures(e.getValue(), figureIds);
+                if (!resultList.isEmpty())
+                    resultMap.put(e.getKey(), resultList);
+            }
+        }
+        if (newResults != null) {
+            for (Map.Entry<Element, List<Result>> e : newResults.entrySet()) {
+                List<Result> resultList = resultMap.get(e.getKey());
+                List<Result> merged = new ArrayList<Result>();
+                if (resultList != null)
+                    merged.addAll(resultList);
+                merged.addAll(e.getValue());
+                resultMap.put(e.getKey(), Collections.unmodifiableList(merged));
             }
         }
 
-        // make all collections immutable
-        for (PuertoPosition p : figuresByPosition.keySet()) {
-            Map<Element, List<Result>> resultMap = figuresByPosition.get(p);
-            for (Element e : resultMap.keySet()) {
-                resultMap.put(e, Collections.unmodifiableList(resultMap.get(e)));
+        if (resultMap.isEmpty())
+            figuresByPosition.remove(code);
+        else
+            figuresByPosition.put(code, Collections.unmodifiableMap(resultMap));
+    }
+
+    private static List<Result> withoutFigures(List<Result> resultList, Set<String> figureIds) {
+        List<Result> filtered = null;
+        for (int i = 0; i < resultList.size(); i++) {
+            Result r = resultList.get(i);
+            if (figureIds.contains(r.figure.getId())) {
+                if (filtered == null)
+                    filtered = new ArrayList<Result>(resultList.subList(0, i));
+            } else if (filtered != null) {
+                filtered.add(r);
+            }
+        }
+        return filtered == null ? resultList : Collections.unmodifiableList(filtered);
+    }
+
+    /**
+     * Adds the results of one figure to the given map.
+     *
+     * @return the positions occurring in the figure
+     */
+    private static Set<PuertoPosition> collectResults(Figure f,
+            Map<PuertoPosition, Map<Element, List<Result>>> results) {
+        Set<PuertoPosition> occurring = new HashSet<PuertoPosition>();
+        List<PuertoPosition> positions = f.getPositions();
+        List<Element> elements = f.getElements();
+        for (int i = 0; i < positions.size() - 1; i++) {
+            PuertoPosition p = positions.get(i);
+            occurring.add(p);
+            Map<Element, List<Result>> resultMap = results.get(p);
+            if (resultMap == null) {
+                resultMap = new HashMap<Element, List<Result>>();
+                results.put(p, resultMap);
+            }
+            Element e = elements.get(i);
+            List<Result> resultList = resultMap.get(e);
+            if (resultList == null) {
+                resultList = new ArrayList<Result>();
+                resultMap.put(e, resultList);
             }
-            figuresByPosition.put(p, Collections.unmodifiableMap(resultMap));
+            resultList.add(new Result(f, i));
         }
+        return occurring;
     }
 
     public static class Result {
@@ -77,7 +262,7 @@ public class FiguresByPositionService {
     }
 
     public Map<Element, List<Result>> retrieveFiguresByPosition(PuertoPosition position) {
-        Map<Element, List<Result>> resultMap = figuresByPosition.get(position);
+        Map<Element, List<Result>> resultMap = figuresByPosition.get(position.asNumber());
         if (resultMap == null)
             return Collections.emptyMap();
         return resultMap;
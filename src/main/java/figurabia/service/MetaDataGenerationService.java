@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.swing.SwingUtilities;
+
+import figurabia.io.VideoDir;
+import figurabia.io.VideoMetaData;
+import figurabia.io.VideoMetaDataStore;
+import figurabia.io.workspace.Workspace;
+
+/**
+ * Generates the missing meta data of videos (e.g. of videos copied into the workspace by hand) in the background, with
+ * a few threads. The meta data are stored in the event dispatch thread one by one as they are done. A video which is
+ * needed right now can be moved to the front of the queue.
+ *
+ * @author Samuel Berner
+ */
+public class MetaDataGenerationService {
+
+    private static final int MAX_THREADS = 4;
+
+    /**
+     * Is notified in the event dispatch thread.
+     */
+    public interface MetaDataListener {
+        /**
+         * Called after the meta data of a video were stored (or generating them failed).
+         */
+        void generated(String videoId, int done, int total);
+
+        /**
+         * Called once at the end, also if cancelled.
+         */
+        void finished(int done, int total, Map<String, Exception> failures);
+    }
+
+    private final Workspace workspace;
+    private final String basePath;
+    private final VideoDir videoDir;
+    private final VideoMetaDataStore metaDataStore;
+
+    // the videos waiting to be analysed
+    private final LinkedBlockingDeque<String> queue = new LinkedBlockingDeque<String>();
+    // the videos whose meta data are not stored yet (waiting, being analysed or waiting to be stored)
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // only used in the event dispatch thread
+    private MetaDataListener listener;
+    private int total;
+    private int done;
+    private int runningThreads;
+    private final Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+
+    private volatile boolean cancelled;
+
+    public MetaDataGenerationService(Workspace workspace, String basePath, VideoDir videoDir,
+            VideoMetaDataStore metaDataStore) {
+        this.workspace = workspace;
+        this.basePath = basePath;
+        this.videoDir = videoDir;
+        this.metaDataStore = metaDataStore;
+    }
+
+    /**
+     * Starts generating the meta data of all videos which have none. Must be called in the event dispatch thread.
+     *
+     * @return the number of videos without meta data
+     */
+    public int start(MetaDataListener listener) {
+        if (this.listener != null)
+            throw new IllegalStateException("already started");
+        this.listener = listener;
+        List<String> videoPaths = workspace.list(basePath);
+        for (String vp : videoPaths) {
+            String videoId = vp.substring(basePath.length() + 1);
+            if (!metaDataStore.exists(videoId)) {
+                pending.add(videoId);
+                queue.add(videoId);
+            }
+        }
+        total = queue.size();
+        runningThreads = Math.min(total, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        for (int i = 0; i < runningThreads; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    generateAll();
+                }
+            }, "MetaDataGenerator-" + (i + 1));
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+        }
+        if (total == 0)
+            listener.finished(0, 0, failures);
+        return total;
+    }
+
+    /**
+     * @return true if the meta data of the video are not generated yet, but will be
+     */
+    public boolean isPending(String videoId) {
+        return pending.contains(videoId);
+    }
+
+    /**
+     * Generates the meta data of the video next (if it is still waiting).
+     */
+    public void prioritize(String videoId) {
+        if (queue.remove(videoId))
+            queue.addFirst(videoId);
+    }
+
+    /**
+     * Stops generating, the videos being analysed right now are finished, but not stored any more.
+     */
+    public void cancel() {
+        cancelled = true;
+        queue.clear();
+    }
+
+    private void generateAll() {
+        String videoId;
+        while (!cancelled && (videoId = queue.poll()) != null) {
+            System.out.println("Pregenerating metadata for video " + videoId);
+            VideoMetaData md = null;
+            Exception error = null;
+            try {
+                File videoFile = workspace.fileForReading(basePath + "/" + videoId);
+                md = videoDir.analyzeVideo(videoId, videoFile, VideoDir.calculateFingerprint(videoFile));
+            } catch (Exception e) {
+                System.err.println("Exception while creating meta data for " + videoId);
+                e.printStackTrace();
+                error = e;
+            }
+            storeLater(videoId, md, error);
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                runningThreads--;
+                if (runningThreads == 0)
+                    listener.finished(done, total, failures);
+            }
+        });
+    }
+
+    private void storeLater(final String videoId, final VideoMetaData md, final Exception error) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (cancelled)
+                    return;
+                if (error != null) {
+                    failures.put(videoId, error);
+                } else {
+                    videoDir.storeMetaData(md);
+                    workspace.finishedWriting(basePath + "/" + videoId, true);
+                }
+                pending.remove(videoId);
+                done++;
+                listener.generated(videoId, done, total);
+            }
+        });
+    }
+}
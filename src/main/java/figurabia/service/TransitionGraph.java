@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoPosition;
+import figurabia.service.FiguresByPositionService.Result;
+
+/**
+ * An immutable graph of the transitions between positions: the nodes are positions (by their
+ * {@link PuertoPosition#asNumber() number}) and every element of a figure is an edge. The graph is stored in compact
+ * arrays (the outgoing edges of all nodes one after the other, with an offset per node), so that searches only touch
+ * int arrays.
+ * <p>
+ * Paths are returned as lists of {@link Result}s, i.e. the figure and index of each element. Each element takes half a
+ * bar (from beat 1 to 5 or from 5 to the next 1).
+ *
+ * @author Samuel Berner
+ */
+public class TransitionGraph {
+
+    /**
+     * The edges (elements) of one figure.
+     */
+    static class FigureEdges {
+        final Figure figure;
+        final int[] from;
+        final int[] to;
+
+        FigureEdges(Figure figure) {
+            this.figure = figure;
+            List<PuertoPosition> positions = figure.getPositions();
+            int n = Math.max(0, positions.size() - 1);
+            from = new int[n];
+            to = new int[n];
+            for (int i = 0; i < n; i++) {
+                from[i] = positions.get(i).asNumber();
+                to[i] = positions.get(i + 1).asNumber();
+            }
+        }
+    }
+
+    // sorted position numbers, the index is the node id
+    private final int[] nodes;
+    // the outgoing edges of node i are edgeOffsets[i] until edgeOffsets[i + 1] (exclusive)
+    private final int[] edgeOffsets;
+    private final int[] edgeTargets;
+    private final Figure[] edgeFigures;
+    private final int[] edgeIndexes;
+
+    TransitionGraph(Collection<FigureEdges> figures) {
+        int edgeCount = 0;
+        for (FigureEdges f : figures) {
+            edgeCount += f.from.length;
+        }
+        int[] allCodes = new int[edgeCount * 2];
+        int c = 0;
+        for (FigureEdges f : figures) {
+            System.arraycopy(f.from, 0, allCodes, c, f.from.length);
+            c += f.from.length;
+            System.arraycopy(f.to, 0, allCodes, c, f.to.length);
+            c += f.to.length;
+        }
+        nodes = distinctSorted(allCodes);
+
+        // counting sort of the edges by their source node
+        edgeOffsets = new int[nodes.length + 1];
+        for (FigureEdges f : figures) {
+            for (int code : f.from) {
+                edgeOffsets[node(code) + 1]++;
+            }
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            edgeOffsets[i + 1] += edgeOffsets[i];
+        }
+        int[] fill = Arrays.copyOf(edgeOffsets, nodes.length);
+        edgeTargets = new int[edgeCount];
+        edgeFigures = new Figure[edgeCount];
+        edgeIndexes = new int[edgeCount];
+        for (FigureEdges f : figures) {
+            for (int i = 0; i < f.from.length; i++) {
+                int e = fill[node(f.from[i])]++;
+                edgeTargets[e] = node(f.to[i]);
+                edgeFigures[e] = f.figure;
+                edgeIndexes[e] = i;
+            }
+        }
+    }
+
+    /**
+     * Compiles the graph of the given figures.
+     */
+    public static TransitionGraph compile(Collection<Figure> figures) {
+        List<FigureEdges> edges = new ArrayList<FigureEdges>(figures.size());
+        for (Figure f : figures) {
+            edges.add(new FigureEdges(f));
+        }
+        return new TransitionGraph(edges);
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public int getEdgeCount() {
+        return edgeTargets.length;
+    }
+
+    public boolean containsPosition(PuertoPosition p) {
+        return node(p.asNumber()) >= 0;
+    }
+
+    /**
+     * Returns a path with the fewest elements.
+     *
+     * @return the elements of the path (empty if from equals to), or null if there is none
+     */
+    public List<Result> shortestPath(PuertoPosition from, PuertoPosition to) {
+        int source = node(from.asNumber());
+        int target = node(to.asNumber());
+        if (source < 0 || target < 0)
+            return null;
+        int[] path = bfs(source, target, null, null);
+        return path == null ? null : toResults(path);
+    }
+
+    /**
+     * Returns up to k paths without repeated positions, the shortest first (using Yen's algorithm). Paths using
+     * different figures for the same transition count as different paths.
+     *
+     * @return the paths, an empty list if there is none
+     */
+    public List<List<Result>> kShortestPaths(PuertoPosition from, PuertoPosition to, int k) {
+        int source = node(from.asNumber());
+        int target = node(to.asNumber());
+        List<List<Result>> results = new ArrayList<List<Result>>();
+        if (source < 0 || target < 0 || k <= 0)
+            return results;
+        int[] first = bfs(source, target, null, null);
+        if (first == null)
+            return results;
+
+        List<int[]> found = new ArrayList<int[]>();
+        found.add(first);
+        PriorityQueue<int[]> candidates = new PriorityQueue<int[]>(11, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a.length - b.length;
+            }
+        });
+        Set<String> known = new HashSet<String>();
+        known.add(Arrays.toString(first));
+        boolean[] removedEdges = new boolean[edgeTargets.length];
+        boolean[] removedNodes = new boolean[nodes.length];
+
+        while (found.size() < k) {
+            int[] previous = found.get(found.size() - 1);
+            int spurNode = source;
+            for (int i = 0; i < previous.length; i++) {
+                // the root path is previous[0..i), deviate after it
+                for (int[] p : found) {
+                    if (p.length > i && sameStart(p, previous, i))
+                        removedEdges[p[i]] = true;
+                }
+                int[] spurPath = bfs(spurNode, target, removedEdges, removedNodes);
+                if (spurPath != null) {
+                    int[] candidate = new int[i + spurPath.length];
+                    System.arraycopy(previous, 0, candidate, 0, i);
+                    System.arraycopy(spurPath, 0, candidate, i, spurPath.length);
+                    if (known.add(Arrays.toString(candidate)))
+                        candidates.add(candidate);
+                }
+                Arrays.fill(removedEdges, false);
+                // the nodes of the root path must not be visited again
+                removedNodes[spurNode] = true;
+                spurNode = edgeTargets[previous[i]];
+            }
+            Arrays.fill(removedNodes, false);
+            if (candidates.isEmpty())
+                break;
+            found.add(candidates.poll());
+        }
+
+        for (int[] path : found) {
+            results.add(toResults(path));
+        }
+        return results;
+    }
+
+    /**
+     * Returns a sequence of elements leading from one position to another in exactly the given number of bars
+     * (positions may be repeated).
+     *
+     * @return the elements (two per bar), or null if it is not possible
+     */
+    public List<Result> pathWithBars(PuertoPosition from, PuertoPosition to, int bars) {
+        int source = node(from.asNumber());
+        int target = node(to.asNumber());
+        if (source < 0 || target < 0 || bars < 0)
+            return null;
+        int steps = bars * 2;
+        int n = nodes.length;
+        // the edge used to reach a node in a step (-1 if not reached)
+        int[] reachedBy = new int[(steps + 1) * n];
+        Arrays.fill(reachedBy, -1);
+        int[] current = new int[n];
+        int[] next = new int[n];
+        int currentSize = 1;
+        current[0] = source;
+        for (int step = 0; step < steps; step++) {
+            int nextSize = 0;
+            int base = (step + 1) * n;
+            for (int i = 0; i < currentSize; i++) {
+                int node = current[i];
+                for (int e = edgeOffsets[node]; e < edgeOffsets[node + 1]; e++) {
+                    int t = edgeTargets[e];
+                    if (reachedBy[base + t] == -1) {
+                        reachedBy[base + t] = e;
+                        next[nextSize++] = t;
+                    }
+                }
+            }
+            if (nextSize == 0)
+                return null;
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
+        }
+        if (steps == 0)
+            return source == target ? Collections.<Result> emptyList() : null;
+        if (reachedBy[steps * n + target] == -1)
+            return null;
+
+        int[] path = new int[steps];
+        int node = target;
+        for (int step = steps; step > 0; step--) {
+            int e = reachedBy[step * n + node];
+            path[step - 1] = e;
+            node = sourceOf(e);
+        }
+        return toResults(path);
+    }
+
+    /**
+     * Breadth first search for a path with the fewest edges.
+     *
+     * @return the edges of the path or null
+     */
+    private int[] bfs(int source, int target, boolean[] removedEdges, boolean[] removedNodes) {
+        if (source == target)
+            return new int[0];
+        int n = nodes.length;
+        int[] reachedBy = new int[n];
+        Arrays.fill(reachedBy, -1);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        reachedBy[source] = -2;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int e = edgeOffsets[node]; e < edgeOffsets[node + 1]; e++) {
+                if (removedEdges != null && removedEdges[e])
+                    continue;
+                int t = edgeTargets[e];
+                if (reachedBy[t] != -1 || (removedNodes != null && removedNodes[t]))
+                    continue;
+                reachedBy[t] = e;
+                if (t == target)
+                    return tracePath(reachedBy, source, target);
+                queue[tail++] = t;
+            }
+        }
+        return null;
+    }
+
+    private int[] tracePath(int[] reachedBy, int source, int target) {
+        int length = 0;
+        for (int node = target; node != source; node = sourceOf(reachedBy[node])) {
+            length++;
+        }
+        int[] path = new int[length];
+        int node = target;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = reachedBy[node];
+            node = sourceOf(path[i]);
+        }
+        return path;
+    }
+
+    private static boolean sameStart(int[] a, int[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The source node of an edge (binary search in the offsets).
+     */
+    private int sourceOf(int edge) {
+        int low = 0;
+        int high = nodes.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (edgeOffsets[mid] <= edge)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    private int node(int code) {
+        int i = Arrays.binarySearch(nodes, code);
+        return i < 0 ? -1 : i;
+    }
+
+    private List<Result> toResults(int[] path) {
+        List<Result> results = new ArrayList<Result>(path.length);
+        for (int e : path) {
+            results.add(new Result(edgeFigures[e], edgeIndexes[e]));
+        }
+        return results;
+    }
+
+    private static int[] distinctSorted(int[] codes) {
+        int[] sorted = codes.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[n - 1] != sorted[i])
+                sorted[n++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+}
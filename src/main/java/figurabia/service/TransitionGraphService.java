@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoPosition;
+import figurabia.io.FigureStore;
+import figurabia.io.store.StoreListener;
+import figurabia.service.FiguresByPositionService.Result;
+
+/**
+ * Provides the {@link TransitionGraph} of all active figures. The edges of each figure are kept up to date with the
+ * changes in the store (only the changed figure is looked at again), the graph itself is compiled from them when it is
+ * needed the next time.
+ *
+ * @author Samuel Berner
+ */
+public class TransitionGraphService {
+
+    // guarded by this
+    private final Map<String, TransitionGraph.FigureEdges> edgesByFigure =
+            new LinkedHashMap<String, TransitionGraph.FigureEdges>();
+    private volatile TransitionGraph graph;
+
+    public TransitionGraphService(FigureStore figureStore) {
+        synchronized (this) {
+            for (Figure f : figureStore.getAllActiveFigures()) {
+                edgesByFigure.put(f.getId(), new TransitionGraph.FigureEdges(f));
+            }
+        }
+        figureStore.addStoreListener(new StoreListener<Figure>() {
+            @Override
+            public void update(StateChange change, Figure f) {
+                switch (change) {
+                case CREATED:
+                case UPDATED:
+                    if (f.isActive())
+                        put(f);
+                    else
+                        remove(f.getId());
+                    break;
+                case DELETED:
+                    remove(f.getId());
+                    break;
+                }
+            }
+        });
+    }
+
+    private synchronized void put(Figure f) {
+        edgesByFigure.put(f.getId(), new TransitionGraph.FigureEdges(f));
+        graph = null;
+    }
+
+    private synchronized void remove(String figureId) {
+        if (edgesByFigure.remove(figureId) != null)
+            graph = null;
+    }
+
+    /**
+     * Returns the graph of the current figures. The graph does not change anymore, later changes of the figures result
+     * in a new graph.
+     */
+    public TransitionGraph getGraph() {
+        TransitionGraph g = graph;
+        if (g != null)
+            return g;
+        synchronized (this) {
+            if (graph == null)
+                graph = new TransitionGraph(new ArrayList<TransitionGraph.FigureEdges>(edgesByFigure.values()));
+            return graph;
+        }
+    }
+
+    /**
+     * @see TransitionGraph#shortestPath(PuertoPosition, PuertoPosition)
+     */
+    public List<Result> shortestPath(PuertoPosition from, PuertoPosition to) {
+        return getGraph().shortestPath(from, to);
+    }
+
+    /**
+     * @see TransitionGraph#kShortestPaths(PuertoPosition, PuertoPosition, int)
+     */
+    public List<List<Result>> kShortestPaths(PuertoPosition from, PuertoPosition to, int k) {
+        return getGraph().kShortestPaths(from, to, k);
+    }
+
+    /**
+     * @see TransitionGraph#pathWithBars(PuertoPosition, PuertoPosition, int)
+     */
+    public List<Result> pathWithBars(PuertoPosition from, PuertoPosition to, int bars) {
+        return getGraph().pathWithBars(from, to, bars);
+    }
+}
@@ -10,11 +10,14 @@ import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JDialog;
@@ -25,7 +28,9 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JRadioButtonMenuItem;
+import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
@@ -37,16 +42,29 @@ import figurabia.domain.Figure;
 import figurabia.framework.FigurabiaModel;
 import figurabia.framework.FigureIndexListener;
 import figurabia.io.BeatPictureCache;
+import figurabia.io.DigestCache;
+import figurabia.io.FFmpegAudioDecoder;
 import figurabia.io.FigureStore;
 import figurabia.io.FiguresTreeStore;
+import figurabia.io.PcmCache;
 import figurabia.io.VideoDir;
 import figurabia.io.VideoMetaData;
 import figurabia.io.VideoMetaDataStore;
 import figurabia.io.workspace.LocalFileWorkspace;
 import figurabia.io.workspace.Workspace;
+import figurabia.service.BeatDetectionService;
+import figurabia.service.BulkImportService;
+import figurabia.service.BulkImportService.BulkImport;
+import figurabia.service.BulkImportService.BulkImportListener;
+import figurabia.service.BulkImportService.Progress;
+import figurabia.service.ChoreographyService;
 import figurabia.service.FigureCreationService;
 import figurabia.service.FigureUpdateService;
+import figurabia.service.MetaDataGenerationService;
+import figurabia.service.MetaDataGenerationService.MetaDataListener;
+import figurabia.service.TransitionGraphService;
 import figurabia.ui.figureeditor.FigureEditPerspective;
+import figurabia.ui.figureexplorer.ChoreographyDialog;
 import figurabia.ui.figureexplorer.FigureExplorerPerspective;
 import figurabia.ui.figuremapper.FigureMapperPerspective;
 import figurabia.ui.framework.Perspective;
@@ -67,6 +85,11 @@ public class ApplicationFrame extends JFrame {
 
     private final FigureCreationService figureCreationService;
     private final FigureUpdateService figureUpdateService;
+    private final BeatDetectionService beatDetectionService;
+    private final BulkImportService bulkImportService;
+    private final MetaDataGenerationService metaDataGenerationService;
+    private final TransitionGraphService transitionGraphService;
+    private final ChoreographyService choreographyService;
 
     private CardLayout cardLayout;
 
@@ -79,6 +102,9 @@ public class ApplicationFrame extends JFrame {
     private JMenuBar appMenuBar;
     private JMenu fileMenu;
     private JMenuItem fileMenuImportVideo;
+    private JMenuItem fileMenuImportVideoFolder;
+    private JMenu toolsMenu;
+    private JMenuItem toolsMenuGenerateChoreography;
     private JMenu perspectiveMenu;
     private JMenuItem perspectiveMenuFigureEditor;
     private JMenuItem perspectiveMenuFigureExplorer;
@@ -88,17 +114,29 @@ public class ApplicationFrame extends JFrame {
 
     private File currentDir = null;
 
+    private MediaPlayer player;
+    // shown instead of a figure whose video is not analysed yet
+    private Figure waitingFigure;
+    private int waitingIndex;
+
     public ApplicationFrame(Workspace ws) throws IOException {
         this.workspace = ws;
         this.figureStore = new FigureStore(ws, "/figures");
         this.treeStore = new FiguresTreeStore(ws, "/tree");
         this.beatPictureCache = new BeatPictureCache(ws, "/pics");
+        beatPictureCache.backfillThumbnails(figureStore.getAllFigures());
         this.videoMetaDataStore = new VideoMetaDataStore(ws, "/vids/meta");
-        this.videoDir = new VideoDir(ws, "/vids", videoMetaDataStore);
-        pregenerateMissingMetadata();
+        this.videoDir = new VideoDir(ws, "/vids", videoMetaDataStore, new DigestCache(ws,
+                "/vids/meta/digests.properties"));
+        this.metaDataGenerationService = new MetaDataGenerationService(ws, "/vids", videoDir, videoMetaDataStore);
 
         this.figureCreationService = new FigureCreationService(ws, figureStore, videoDir, treeStore);
         this.figureUpdateService = new FigureUpdateService(ws, figureStore, treeStore, beatPictureCache);
+        this.beatDetectionService = new BeatDetectionService(videoMetaDataStore, new PcmCache(ws, "/vids", "/vids/meta",
+                new FFmpegAudioDecoder()));
+        this.bulkImportService = new BulkImportService(videoDir, figureCreationService);
+        this.transitionGraphService = new TransitionGraphService(figureStore);
+        this.choreographyService = new ChoreographyService(figureStore);
 
         setTitle("Figurabia");
         Toolkit tk = Toolkit.getDefaultToolkit();
@@ -111,34 +149,26 @@ public class ApplicationFrame extends JFrame {
         final Container contentPane = getContentPane();
         contentPane.setLayout(cardLayout); //new MigLayout("", "[fill]", "[fill]")
 
-        final MediaPlayer player = new MediaPlayer();
+        player = new MediaPlayer();
         figurabiaModel = new FigurabiaModel();
         figurabiaModel.addFigureIndexListener(new FigureIndexListener() {
             @Override
             public void update(Figure figure, int index, boolean figureChanged) {
                 if (figureChanged) {
-                    // set video of figure
-                    String videoPath = "/vids/" + figure.getVideoName();
-                    File videoFile = workspace.fileForReading(videoPath);
-                    long initialPosition = 0;
-                    if (index != -1) {
-                        initialPosition = figure.getVideoPositions().get(index) / 1000000L;
-                    }
-                    VideoMetaData metaData = videoMetaDataStore.read(figure.getVideoName());
-                    player.openVideo(videoFile, metaData.getMediaInfo(), initialPosition);
+                    openVideo(figure, index);
                 }
             }
         });
 
         // create and add FigureExplorerPerspective
-        explorerPerspective = new FigureExplorerPerspective(figureStore, beatPictureCache, player,
-                figurabiaModel);
+        explorerPerspective = new FigureExplorerPerspective(figureStore, beatPictureCache, transitionGraphService,
+                player, figurabiaModel);
         contentPane.add(explorerPerspective, explorerPerspective.getPerspectiveId());
 
         // create and add FigureEditPerspective
         editPerspective = new FigureEditPerspective(workspace, figureStore, treeStore, beatPictureCache,
                 figureCreationService,
-                figureUpdateService, player, figurabiaModel);
+                figureUpdateService, beatDetectionService, player, figurabiaModel);
         contentPane.add(editPerspective, editPerspective.getPerspectiveId());
 
         // create and add FigureMapperPerspective
@@ -160,6 +190,25 @@ public class ApplicationFrame extends JFrame {
             }
         });
         fileMenu.add(fileMenuImportVideo);
+        fileMenuImportVideoFolder = new JMenuItem("Import Video Folder...");
+        fileMenuImportVideoFolder.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                importVideoFolder();
+            }
+        });
+        fileMenu.add(fileMenuImportVideoFolder);
+
+        toolsMenu = new JMenu("Tools");
+        appMenuBar.add(toolsMenu);
+        toolsMenuGenerateChoreography = new JMenuItem("Generate Choreography...");
+        toolsMenuGenerateChoreography.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                new ChoreographyDialog(ApplicationFrame.this, choreographyService, figurabiaModel).setVisible(true);
+            }
+        });
+        toolsMenu.add(toolsMenuGenerateChoreography);
 
         perspectiveMenu = new JMenu("Perspective");
         //perspectiveMenu.getPopupMenu().setLightWeightPopupEnabled(false);
@@ -202,9 +251,52 @@ public class ApplicationFrame extends JFrame {
         switchToPerspective(explorerPerspective);
 
         // set frame properties
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                metaDataGenerationService.cancel();
+                // pictures are written in the background, don't lose the last ones
+                beatPictureCache.awaitPicturesWritten();
+                // writes the figures still only in the journal to their files
+                figureStore.close();
+                // the last changes are still reported, then the workspace threads stop
+                if (workspace instanceof LocalFileWorkspace)
+                    ((LocalFileWorkspace) workspace).stopWatching();
+            }
+        });
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(INITIAL_WIDTH, INITIAL_HEIGHT);
         setVisible(true);
+
+        pregenerateMissingMetadata();
+    }
+
+    private void openVideo(Figure figure, int index) {
+        String videoName = figure.getVideoName();
+        if (metaDataGenerationService.isPending(videoName)) {
+            // opened as soon as the meta data are there
+            waitingFigure = figure;
+            waitingIndex = index;
+            metaDataGenerationService.prioritize(videoName);
+            figurabiaModel.setVideoPlaceholder("Analysing video " + videoName + "...");
+            return;
+        }
+        waitingFigure = null;
+        figurabiaModel.setVideoPlaceholder(null);
+
+        // set video of figure
+        String videoPath = "/vids/" + videoName;
+        File videoFile = workspace.fileForReading(videoPath);
+        long initialPosition = 0;
+        if (index != -1) {
+            initialPosition = figure.getVideoPositions().get(index) / 1000000L;
+        }
+        VideoMetaData metaData = videoMetaDataStore.read(videoName);
+        if (metaData == null) {
+            JOptionPane.showMessageDialog(ApplicationFrame.this, "The video " + videoName + " could not be analysed.");
+            return;
+        }
+        player.openVideo(videoFile, metaData.getMediaInfo(), initialPosition);
     }
 
     private void importVideo() {
@@ -241,20 +333,96 @@ public class ApplicationFrame extends JFrame {
         }
     }
 
+    private void importVideoFolder() {
+        // select folder
+        JFileChooser fileChooser = new JFileChooser(currentDir);
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (fileChooser.showOpenDialog(ApplicationFrame.this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        currentDir = fileChooser.getCurrentDirectory();
+        final File folder = fileChooser.getSelectedFile();
+        int count = BulkImportService.listVideos(folder).size();
+        if (count == 0) {
+            JOptionPane.showMessageDialog(ApplicationFrame.this, "There are no videos in " + folder);
+            return;
+        }
+
+        // import in the background, showing the progress
+        fileMenuImportVideoFolder.setEnabled(false);
+        final ProgressMonitor monitor = new ProgressMonitor(ApplicationFrame.this, "Importing videos from " + folder,
+                null, 0, count);
+        monitor.setMillisToDecideToPopup(0);
+        monitor.setMillisToPopup(0);
+        final BulkImport[] bulkImport = new BulkImport[1];
+        // the cancel button is polled, as the progress is not reported while a large video is copied or analysed
+        final Timer cancelTimer = new Timer(200, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (monitor.isCanceled())
+                    bulkImport[0].cancel();
+            }
+        });
+        bulkImport[0] = bulkImportService.importDirectory(folder, new BulkImportListener() {
+            @Override
+            public void progress(final Progress progress) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (bulkImport[0].isCancelled())
+                            return;
+                        monitor.setProgress(progress.getDone());
+                        monitor.setNote(progress.toString());
+                    }
+                });
+            }
+
+            @Override
+            public void finished(final Progress progress, final List<Figure> createdFigures,
+                    final Map<File, Exception> failures) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        cancelTimer.stop();
+                        monitor.close();
+                        fileMenuImportVideoFolder.setEnabled(true);
+                        StringBuilder message = new StringBuilder();
+                        if (bulkImport[0].isCancelled())
+                            message.append("Import cancelled, importing the folder again continues it.\n");
+                        message.append(createdFigures.size() + " figures created (" + progress + ")");
+                        for (Map.Entry<File, Exception> failure : failures.entrySet()) {
+                            message.append("\n" + failure.getKey().getName() + ": "
+                                    + failure.getValue().getLocalizedMessage());
+                        }
+                        JOptionPane.showMessageDialog(ApplicationFrame.this, message.toString());
+                        if (!createdFigures.isEmpty())
+                            switchToPerspective(editPerspective);
+                    }
+                });
+            }
+        });
+        cancelTimer.start();
+    }
+
     private void pregenerateMissingMetadata() {
-        List<String> videoPaths = workspace.list("/vids");
-        for (String vp : videoPaths) {
-            String videoId = vp.substring("/vids/".length());
-            if (!videoMetaDataStore.exists(videoId)) {
-                System.out.println("Pregenerating metadata for video " + videoId);
-                try {
-                    videoDir.createAndStoreMetaData(videoId);
-                } catch (IOException e) {
-                    System.err.println("Exception while creating meta data for " + videoId);
-                    e.printStackTrace();
+        int count = metaDataGenerationService.start(new MetaDataListener() {
+            @Override
+            public void generated(String videoId, int done, int total) {
+                setTitle("Figurabia (analysing videos: " + done + " of " + total + " done)");
+                if (waitingFigure != null && waitingFigure.getVideoName().equals(videoId))
+                    openVideo(waitingFigure, waitingIndex);
+            }
+
+            @Override
+            public void finished(int done, int total, Map<String, Exception> failures) {
+                setTitle("Figurabia");
+                for (String videoId : failures.keySet()) {
+                    System.err.println("Could not create meta data for video " + videoId);
                 }
             }
-        }
+        });
+        if (count > 0)
+            setTitle("Figurabia (analysing videos: 0 of " + count + " done)");
     }
 
     private void switchToPerspective(Perspective perspective) {
@@ -284,7 +452,8 @@ public class ApplicationFrame extends JFrame {
 
         JNIMemoryManager.setMemoryModel(MemoryModel.NATIVE_BUFFERS);
 
-        final Workspace w = new LocalFileWorkspace(new File("figurantdata"));
+        final LocalFileWorkspace w = new LocalFileWorkspace(new File("figurantdata"));
+        w.startWatching();
 
         // do UI construction in Swing's Event Dispatch Thread
         SwingUtilities.invokeLater(new Runnable() {
@@ -18,12 +18,16 @@ import figurabia.domain.Figure;
 import figurabia.framework.FigurabiaModel;
 import figurabia.framework.FigureIndexListener;
 import figurabia.io.BeatPictureCache;
+import figurabia.io.DigestCache;
+import figurabia.io.FFmpegAudioDecoder;
 import figurabia.io.FigureStore;
 import figurabia.io.FiguresTreeStore;
+import figurabia.io.PcmCache;
 import figurabia.io.VideoDir;
 import figurabia.io.VideoMetaDataStore;
 import figurabia.io.workspace.LocalFileWorkspace;
 import figurabia.io.workspace.Workspace;
+import figurabia.service.BeatDetectionService;
 import figurabia.service.FigureCreationService;
 import figurabia.service.FigureUpdateService;
 import figurabia.ui.framework.Perspective;
@@ -37,11 +41,11 @@ public class FigureEditPerspective extends JPanel implements Perspective {
     private FigureEditor figureEditor;
 
     public FigureEditPerspective(Workspace workspace, FigureStore fs, FiguresTreeStore treeStore, BeatPictureCache bpc,
-            FigureCreationService fcs, FigureUpdateService fus, MediaPlayer player,
+            FigureCreationService fcs, FigureUpdateService fus, BeatDetectionService bds, MediaPlayer player,
             FigurabiaModel figurabiaModel_) {
         this.figurabiaModel = figurabiaModel_;
         figureList = new FigureList(treeStore, fcs, fus, figurabiaModel_);
-        figureEditor = new FigureEditor(workspace, fs, bpc, player, figurabiaModel_, fcs, fus);
+        figureEditor = new FigureEditor(workspace, fs, bpc, player, figurabiaModel_, fcs, fus, bds);
 
         setLayout(new MigLayout("ins 0", "[fill]", "[fill]"));
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, true, figureList, figureEditor);
@@ -103,11 +107,13 @@ public class FigureEditPerspective extends JPanel implements Perspective {
         FiguresTreeStore fts = new FiguresTreeStore(w, "/tree");
         BeatPictureCache bpc = new BeatPictureCache(w, "/pics");
         VideoMetaDataStore vmds = new VideoMetaDataStore(w, "/vids/meta");
-        VideoDir videoDir = new VideoDir(w, "/vids", vmds);
+        VideoDir videoDir = new VideoDir(w, "/vids", vmds, new DigestCache(w, "/vids/meta/digests.properties"));
 
         FigureEditPerspective panel = new FigureEditPerspective(w, fs, fts, bpc, new FigureCreationService(w, fs,
                 videoDir,
-                fts), new FigureUpdateService(w, fs, fts, bpc), new MediaPlayer(), new FigurabiaModel());
+                fts), new FigureUpdateService(w, fs, fts, bpc), new BeatDetectionService(vmds,
+                new PcmCache(w, "/vids", "/vids/meta", new FFmpegAudioDecoder())), new MediaPlayer(),
+                new FigurabiaModel());
         final SimplePanelFrame frame = new SimplePanelFrame(panel, 1000, 720);
     }
 
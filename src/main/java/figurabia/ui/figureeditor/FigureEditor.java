@@ -23,6 +23,7 @@ import figurabia.framework.FigureIndexListener;
 import figurabia.io.BeatPictureCache;
 import figurabia.io.FigureStore;
 import figurabia.io.workspace.Workspace;
+import figurabia.service.BeatDetectionService;
 import figurabia.service.FigureCreationService;
 import figurabia.service.FigureUpdateService;
 import figurabia.ui.framework.PlayerListener;
@@ -46,7 +47,7 @@ public class FigureEditor extends JPanel {
     private boolean inSetter = false;
 
     public FigureEditor(Workspace workspace, FigureStore fs, BeatPictureCache bpc, MediaPlayer player,
-            FigurabiaModel fm, FigureCreationService fcs, FigureUpdateService fus) {
+            FigurabiaModel fm, FigureCreationService fcs, FigureUpdateService fus, BeatDetectionService bds) {
         this.figurabiaModel = fm;
         this.figureCreationService = fcs;
         this.figureStore = fs;
@@ -60,7 +61,7 @@ public class FigureEditor extends JPanel {
         centerPanel.setLayout(new MigLayout("ins 0", "[fill]", "[fill]"));
 
         //pictureView = new PositionPictureView(workspace);
-        pictureExtractor = new VideoPictureExtractor(fs, bpc, player, fm);
+        pictureExtractor = new VideoPictureExtractor(fs, bpc, player, fm, bds);
         dialogEditor = new PositionDialogEditor();
         //centerPanel.add(pictureView, "push,gap 0 1 0 6");
         centerPanel.add(pictureExtractor, "push,gap 0 1 0 6");
@@ -175,6 +176,18 @@ public class FigureEditor extends JPanel {
                 pictureExtractor.correctSelectedPosition();
             }
         });
+        pictureExtractor.addDetectButtonActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                pictureExtractor.detectBars(new Runnable() {
+                    @Override
+                    public void run() {
+                        // FIXME this should be notified through backend
+                        positionList.updateList();
+                    }
+                });
+            }
+        });
     }
 
     // FIXME needs call to FigureStore to persist, 
@@ -184,10 +184,7 @@ public class PositionList extends JPanel {
                 // delete picture of position
                 PuertoPosition p = positions.get(selected);
                 int bar = barIds.get(selected);
-                String pictureName = beatPictureCache.getPictureName(figure.getId(), bar, p.getBeat());
-                String picturePath = "/pics" + pictureName;
-                if (workspace.exists(picturePath))
-                    workspace.delete(picturePath);
+                beatPictureCache.deletePicture(figure.getId(), bar, p.getBeat());
                 positions.remove(selected);
                 videoPositions.remove(selected);
                 barIds.remove(selected);
@@ -5,10 +5,14 @@
 package figurabia.ui.figureeditor;
 
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import net.miginfocom.swing.MigLayout;
 import exmoplay.engine.MediaPlayer;
@@ -18,9 +22,14 @@ import figurabia.domain.PuertoOffset;
 import figurabia.domain.PuertoPosition;
 import figurabia.framework.FigurabiaModel;
 import figurabia.framework.FigureIndexListener;
+import figurabia.framework.VideoPlaceholderListener;
 import figurabia.io.BeatPictureCache;
 import figurabia.io.FigureStore;
+import figurabia.io.VideoMetaData;
 import figurabia.io.store.StoreListener;
+import figurabia.math.BarFitter;
+import figurabia.math.BeatGrid;
+import figurabia.service.BeatDetectionService;
 import figurabia.ui.framework.PlayerListener;
 import figurabia.ui.video.FigurePlayer;
 
@@ -35,17 +44,25 @@ public class VideoPictureExtractor extends JPanel {
     private JButton new1Button;
     private JButton new5Button;
     private JButton correctButton;
+    private JButton detectButton;
+    private JLabel gridLabel;
+
+    // the bars of the current figure, for showing the grid while tapping
+    private BarFitter barFitter = new BarFitter();
+
+    private final BeatDetectionService beatDetectionService;
 
     public VideoPictureExtractor(FigureStore fs, BeatPictureCache bpc, MediaPlayer player,
-            FigurabiaModel fm) {
+            FigurabiaModel fm, BeatDetectionService bds) {
         this.figureStore = fs;
+        this.beatDetectionService = bds;
         this.beatPictureCache = bpc;
         this.figurabiaModel = fm;
 
-        setLayout(new MigLayout("ins 0", "[][][]push[]", "[][]"));
+        setLayout(new MigLayout("ins 0", "[][][][][]push[]", "[][]"));
 
         figurePlayer = new FigurePlayer(beatPictureCache, player, fm);
-        add(figurePlayer, "span 4,grow,push,wrap");
+        add(figurePlayer, "span 6,grow,push,wrap");
 
         new1Button = new JButton("New 1");
         new1Button.setEnabled(false);
@@ -59,16 +76,34 @@ public class VideoPictureExtractor extends JPanel {
         correctButton.setEnabled(false);
         add(correctButton, "");
 
+        detectButton = new JButton("Detect Bars");
+        detectButton.setToolTipText("Fills in the bars between the first and the last one from the beats of the music");
+        detectButton.setEnabled(false);
+        add(detectButton, "");
+
+        gridLabel = new JLabel();
+        add(gridLabel, "");
+
         // when the user selects a different figure
         figurabiaModel.addFigureIndexListener(new FigureIndexListener() {
             @Override
             public void update(Figure figure, int position, boolean figureChanged) {
                 if (figureChanged) {
                     updateButtonsEnabled(figure);
+                    updateBarFitter(figure);
                 }
             }
         });
 
+        // the figure cannot be edited before its video is there
+        figurabiaModel.addVideoPlaceholderListener(new VideoPlaceholderListener() {
+            @Override
+            public void update(String text) {
+                if (figurabiaModel.getCurrentFigure() != null)
+                    updateButtonsEnabled(figurabiaModel.getCurrentFigure());
+            }
+        });
+
         // when the user changes the figure between active and inactive
         figureStore.addStoreListener(new StoreListener<Figure>() {
             @Override
@@ -82,6 +117,126 @@ public class VideoPictureExtractor extends JPanel {
     public void addNewPosition(int beat) {
         long videoTime = figurePlayer.getVideoNanoseconds();
         Figure figure = figurabiaModel.getCurrentFigure();
+        insertPosition(figure, beat, videoTime);
+        figureStore.update(figure);
+
+        barFitter.tap(videoTime, beat);
+        updateGridLabel();
+    }
+
+    private void updateBarFitter(Figure figure) {
+        barFitter = new BarFitter();
+        if (figure != null) {
+            for (int i = 0; i < figure.getPositions().size(); i++)
+                barFitter.tap(figure.getVideoPositions().get(i), figure.getPositions().get(i).getBeat());
+        }
+        updateGridLabel();
+    }
+
+    private void updateGridLabel() {
+        if (barFitter.size() < 3) {
+            gridLabel.setText("");
+            return;
+        }
+        long deviation = barFitter.getDeviation(barFitter.getLatestBar());
+        gridLabel.setText(String.format("Bar: %.3f s, latest one %+d ms off the grid",
+                barFitter.getBarDuration() / 1e9, deviation / 1000000L));
+    }
+
+    /**
+     * Fills in the 1s and 5s between the first and the last marked one from the beats detected in the video (in the
+     * background, the first time for a video it takes a while), and corrects the marked ones.
+     * 
+     * @param done called when the positions were added
+     */
+    public void detectBars(final Runnable done) {
+        final Figure figure = figurabiaModel.getCurrentFigure();
+        final List<Long> ones = new ArrayList<Long>();
+        final List<Long> fives = new ArrayList<Long>();
+        for (int i = 0; i < figure.getPositions().size(); i++) {
+            if (figure.getPositions().get(i).getBeat() == 1)
+                ones.add(figure.getVideoPositions().get(i));
+            else
+                fives.add(figure.getVideoPositions().get(i));
+        }
+        if (ones.size() + fives.size() < 2) {
+            JOptionPane.showMessageDialog(this, "Please mark the first and the last bar of the figure first.");
+            return;
+        }
+        final String videoName = figure.getVideoName();
+        // the meta data is only read here, in the event dispatch thread
+        VideoMetaData md = beatDetectionService.getMetaData(videoName);
+        if (md == null) {
+            JOptionPane.showMessageDialog(this, "The meta data of the video is not there yet.");
+            return;
+        }
+        final String md5 = md.getMd5Sum();
+        final BeatGrid stored = md.getBeatGrid();
+        detectButton.setEnabled(false);
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<Long> bars = null;
+                Exception error = null;
+                try {
+                    bars = beatDetectionService.proposeBars(videoName, md5, stored, ones, fives);
+                } catch (Exception e) {
+                    System.err.println("Could not detect the bars of video " + videoName);
+                    e.printStackTrace();
+                    error = e;
+                }
+                final List<Long> finalBars = bars;
+                final Exception finalError = error;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateButtonsEnabled(figurabiaModel.getCurrentFigure());
+                        if (finalError != null) {
+                            JOptionPane.showMessageDialog(VideoPictureExtractor.this, "Could not detect the bars: "
+                                    + finalError.getMessage());
+                        } else if (figure == figurabiaModel.getCurrentFigure() && !figure.isActive()) {
+                            // pictures can only be captured from the video of the current figure
+                            setBars(figure, finalBars);
+                            done.run();
+                        }
+                    }
+                });
+            }
+        }, "BarDetection");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void setBars(Figure figure, List<Long> bars) {
+        if (bars.size() < 2)
+            return;
+        List<Long> videoPositions = figure.getVideoPositions();
+        int firstBeat = figure.getPositions().get(0).getBeat();
+        int otherBeat = firstBeat == 1 ? 5 : 1;
+        long tolerance = (bars.get(bars.size() - 1) - bars.get(0)) / (bars.size() - 1) / 2;
+        for (int i = 0; i < bars.size(); i++) {
+            long time = bars.get(i);
+            int beat = i % 2 == 0 ? firstBeat : otherBeat;
+            int existing = -1;
+            for (int j = 0; j < videoPositions.size(); j++) {
+                if (Math.abs(videoPositions.get(j) - time) < tolerance
+                        && figure.getPositions().get(j).getBeat() == beat) {
+                    existing = j;
+                    break;
+                }
+            }
+            if (existing == -1) {
+                insertPosition(figure, beat, time);
+            } else {
+                videoPositions.set(existing, time);
+                figurePlayer.captureCurrentImage(figure.getId(), figure.getBarIds().get(existing), beat, time);
+            }
+        }
+        figureStore.update(figure);
+        updateBarFitter(figure);
+    }
+
+    private void insertPosition(Figure figure, int beat, long videoTime) {
         // find position to insert
         List<Long> videoPositions = figure.getVideoPositions();
         int pos = videoPositions.size();
@@ -128,8 +283,6 @@ public class VideoPictureExtractor extends JPanel {
 
         // add picture
         figurePlayer.captureCurrentImage(figure.getId(), newBarId, beat, videoTime);
-
-        figureStore.update(figure);
     }
 
     public void correctSelectedPosition() {
@@ -142,6 +295,7 @@ public class VideoPictureExtractor extends JPanel {
         figurePlayer.captureCurrentImage(figure.getId(), bar, beat, time);
 
         figureStore.update(figure);
+        updateBarFitter(figure);
     }
 
     public void setPosition(int pos) {
@@ -149,10 +303,11 @@ public class VideoPictureExtractor extends JPanel {
     }
 
     private void updateButtonsEnabled(Figure figure) {
-        boolean enabled = !figure.isActive();
+        boolean enabled = !figure.isActive() && figurabiaModel.getVideoPlaceholder() == null;
         new1Button.setEnabled(enabled);
         new5Button.setEnabled(enabled);
         correctButton.setEnabled(enabled);
+        detectButton.setEnabled(enabled);
     }
 
     public void setActive(boolean active) {
@@ -222,4 +377,20 @@ public class VideoPictureExtractor extends JPanel {
     public void removeCorrectButtonActionListener(ActionListener l) {
         correctButton.removeActionListener(l);
     }
+
+    /**
+     * @param l
+     * @see javax.swing.AbstractButton#addActionListener(java.awt.event.ActionListener)
+     */
+    public void addDetectButtonActionListener(ActionListener l) {
+        detectButton.addActionListener(l);
+    }
+
+    /**
+     * @param l
+     * @see javax.swing.AbstractButton#removeActionListener(java.awt.event.ActionListener)
+     */
+    public void removeDetectButtonActionListener(ActionListener l) {
+        detectButton.removeActionListener(l);
+    }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.ui.figureexplorer;
+
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import net.miginfocom.swing.MigLayout;
+import figurabia.domain.PuertoPosition;
+import figurabia.framework.FigurabiaModel;
+import figurabia.service.ChoreographyService;
+import figurabia.service.ChoreographyService.Choreography;
+import figurabia.service.ChoreographyService.ChoreographyListener;
+import figurabia.service.ChoreographyService.Generation;
+import figurabia.service.ChoreographyService.Request;
+
+/**
+ * Lets the user generate choreographies starting in the current position and shows the best ones found. Double
+ * clicking a choreography shows its first figure.
+ *
+ * @author Samuel Berner
+ */
+@SuppressWarnings("serial")
+public class ChoreographyDialog extends JDialog {
+
+    private final ChoreographyService service;
+    private final FigurabiaModel figurabiaModel;
+
+    private final JSpinner barsSpinner = new JSpinner(new SpinnerNumberModel(8, 1, 64, 1));
+    private final JCheckBox endInInitialPosition = new JCheckBox("End in initial position", true);
+    private final JCheckBox noRepeatedFigures = new JCheckBox("No repeated figures", true);
+    private final JTextField requiredElements = new JTextField(30);
+    private final JButton generateButton = new JButton("Generate");
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JLabel statusLabel = new JLabel(" ");
+    private final DefaultListModel resultModel = new DefaultListModel();
+    private final JList resultList = new JList(resultModel);
+
+    private Generation generation;
+    private final AtomicInteger found = new AtomicInteger();
+    // the listener is called in the generating threads, so the status is only polled
+    private final Timer statusTimer = new Timer(200, new ActionListener() {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            updateStatus();
+        }
+    });
+
+    public ChoreographyDialog(Frame owner, ChoreographyService choreographyService, FigurabiaModel fm) {
+        super(owner, "Generate Choreography");
+        service = choreographyService;
+        figurabiaModel = fm;
+
+        setLayout(new MigLayout("", "[][grow,fill]", "[][][][][][grow,fill][]"));
+        add(new JLabel("Bars:"));
+        add(barsSpinner, "wrap");
+        add(endInInitialPosition, "skip, wrap");
+        add(noRepeatedFigures, "skip, wrap");
+        add(new JLabel("Required elements:"));
+        add(requiredElements, "wrap");
+        add(generateButton, "skip, split 2");
+        add(cancelButton, "wrap");
+        add(new JScrollPane(resultList), "span 2, push, wrap");
+        add(statusLabel, "span 2");
+        requiredElements.setToolTipText("Names of elements, separated by commas");
+        cancelButton.setEnabled(false);
+
+        generateButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                generate();
+            }
+        });
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (generation != null)
+                    generation.cancel();
+            }
+        });
+        resultList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Choreography c = (Choreography) resultList.getSelectedValue();
+                if (e.getClickCount() == 2 && c != null)
+                    figurabiaModel.setCurrentFigure(c.getFigures().get(0), 0);
+            }
+        });
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (generation != null)
+                    generation.cancel();
+            }
+        });
+
+        setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        setSize(500, 450);
+        setLocationRelativeTo(owner);
+    }
+
+    private void generate() {
+        PuertoPosition start = figurabiaModel.getCurrentPosition();
+        if (start == null)
+            start = PuertoPosition.getInitialPosition();
+        Request request = new Request(start, (Integer) barsSpinner.getValue());
+        request.setEndInInitialPosition(endInInitialPosition.isSelected());
+        request.setNoRepeatedFigures(noRepeatedFigures.isSelected());
+        Set<String> names = new LinkedHashSet<String>();
+        for (String name : requiredElements.getText().split(",")) {
+            if (name.trim().length() != 0)
+                names.add(name.trim());
+        }
+        try {
+            request.setRequiredElementNames(names);
+        } catch (IllegalArgumentException e) {
+            statusLabel.setText(e.getMessage());
+            return;
+        }
+
+        resultModel.clear();
+        found.set(0);
+        generateButton.setEnabled(false);
+        cancelButton.setEnabled(true);
+        generation = service.generate(request, new ChoreographyListener() {
+            @Override
+            public void found(Choreography choreography) {
+                found.incrementAndGet();
+            }
+
+            @Override
+            public void finished(final List<Choreography> ranked) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        showResults(ranked);
+                    }
+                });
+            }
+        });
+        statusTimer.start();
+    }
+
+    private void updateStatus() {
+        long possible = generation.getPossibleSequences();
+        statusLabel.setText(found.get() + " choreographies found"
+                + (possible == -1 ? "" : " (of " + possible + " possible sequences)"));
+    }
+
+    private void showResults(List<Choreography> ranked) {
+        statusTimer.stop();
+        updateStatus();
+        for (Choreography c : ranked) {
+            resultModel.addElement(c);
+        }
+        generateButton.setEnabled(true);
+        cancelButton.setEnabled(false);
+    }
+}
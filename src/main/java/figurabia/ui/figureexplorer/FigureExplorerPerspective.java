@@ -4,6 +4,7 @@
  */
 package figurabia.ui.figureexplorer;
 
+import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
@@ -25,6 +26,7 @@ import figurabia.io.BeatPictureCache;
 import figurabia.io.FigureStore;
 import figurabia.io.workspace.LocalFileWorkspace;
 import figurabia.io.workspace.Workspace;
+import figurabia.service.TransitionGraphService;
 import figurabia.ui.figureexplorer.PositionPossibilitiesView.FigureLinkActionListener;
 import figurabia.ui.framework.Perspective;
 import figurabia.ui.framework.PlayerListener;
@@ -40,14 +42,16 @@ public class FigureExplorerPerspective extends JPanel implements Perspective {
     private FigurePositionsView positionsView;
     private PositionChooser positionChooser;
     private PositionPossibilitiesView possibilitiesView;
+    private RouteView routeView;
 
-    public FigureExplorerPerspective(FigureStore fs, BeatPictureCache bpc,
+    public FigureExplorerPerspective(FigureStore fs, BeatPictureCache bpc, TransitionGraphService tgs,
             MediaPlayer mediaPlayer, FigurabiaModel fm) {
         figurabiaModel = fm;
         player = new FigurePlayer(bpc, mediaPlayer, figurabiaModel);
         positionsView = new FigurePositionsView(bpc);
         positionChooser = new PositionChooser();
         possibilitiesView = new PositionPossibilitiesView(fs, bpc, figurabiaModel);
+        routeView = new RouteView(fs, tgs);
 
         JPanel topPanel = new JPanel();
         topPanel.setLayout(new MigLayout("ins 0", "[fill]", "[fill]"));
@@ -55,8 +59,11 @@ public class FigureExplorerPerspective extends JPanel implements Perspective {
         topPanel.add(player, "push"); //,gap 0 0 6 7
         topPanel.add(positionsView, "east,pushy");
 
-        JScrollPane bottomPanel = new JScrollPane(possibilitiesView, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
+        JScrollPane possibilitiesPane = new JScrollPane(possibilitiesView, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
                 JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.add(routeView, BorderLayout.NORTH);
+        bottomPanel.add(possibilitiesPane, BorderLayout.CENTER);
 
         JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, true, topPanel, bottomPanel);
         splitPane.setDividerSize(8);
@@ -68,6 +75,7 @@ public class FigureExplorerPerspective extends JPanel implements Perspective {
             public void update(PuertoPosition position, PuertoOffset offset) {
                 positionChooser.setPosition(position, offset);
                 possibilitiesView.setPosition(position, offset);
+                routeView.setPosition(position);
             }
         });
 
@@ -102,7 +110,7 @@ public class FigureExplorerPerspective extends JPanel implements Perspective {
             }
         });
 
-        possibilitiesView.addFigureLinkActionListener(new FigureLinkActionListener() {
+        FigureLinkActionListener figureLinkListener = new FigureLinkActionListener() {
             @Override
             public void linkActivated(Figure figure, int index) {
                 if (figure != figurabiaModel.getCurrentFigure()) {
@@ -113,7 +121,9 @@ public class FigureExplorerPerspective extends JPanel implements Perspective {
                     player.setCurrentIndex(index);
                 }
             }
-        });
+        };
+        possibilitiesView.addFigureLinkActionListener(figureLinkListener);
+        routeView.addFigureLinkActionListener(figureLinkListener);
 
         // set a base position to the PositionChooser (to make it active from the beginning)
         positionChooser.setPosition(PuertoPosition.getInitialPosition(), PuertoOffset.getInitialOffset());
@@ -148,7 +158,8 @@ public class FigureExplorerPerspective extends JPanel implements Perspective {
         BeatPictureCache bpc = new BeatPictureCache(w, "/pics");
 
         FigurabiaModel figureModel = new FigurabiaModel();
-        FigureExplorerPerspective panel = new FigureExplorerPerspective(fs, bpc, new MediaPlayer(), figureModel);
+        FigureExplorerPerspective panel = new FigureExplorerPerspective(fs, bpc, new TransitionGraphService(fs),
+                new MediaPlayer(), figureModel);
         final SimplePanelFrame frame = new SimplePanelFrame(panel, 1000, 720);
     }
 }
@@ -14,16 +14,17 @@ import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import figurabia.domain.Element;
 import figurabia.domain.Figure;
 import figurabia.domain.PuertoOffset;
 import figurabia.domain.PuertoPosition;
 import figurabia.framework.FigurabiaModel;
-import figurabia.framework.ViewSetListener;
 import figurabia.io.BeatPictureCache;
 import figurabia.io.FigureStore;
 import figurabia.io.ProxyImage;
@@ -48,15 +49,22 @@ public class PositionPossibilitiesView extends JPanel {
 
     private List<FigureLinkActionListener> actionListeners = new ArrayList<FigureLinkActionListener>();
 
-    public PositionPossibilitiesView(FigureStore fs, BeatPictureCache bpc, final FigurabiaModel figurabiaModel) {
+    public PositionPossibilitiesView(FigureStore fs, BeatPictureCache bpc, FigurabiaModel figurabiaModel) {
         figureStore = fs;
         beatPictureCache = bpc;
-        service = new FiguresByPositionService(figurabiaModel);
-        figurabiaModel.addViewSetListener(new ViewSetListener() {
+        // keeps itself up to date and tells which positions changed
+        service = new FiguresByPositionService(figurabiaModel, figureStore);
+        service.addIndexListener(new FiguresByPositionService.IndexListener() {
             @Override
-            public void update(ChangeType type, List<Figure> changed) {
-                service.init(figurabiaModel.getViewSet());
-                refreshRelatedFigures();
+            public void indexChanged(final Set<PuertoPosition> positions) {
+                // figures may also be changed outside the event dispatch thread
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (currentPosition != null && positions.contains(currentPosition))
+                            refreshRelatedFigures();
+                    }
+                });
             }
         });
 
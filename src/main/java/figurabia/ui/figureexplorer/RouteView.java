@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.ui.figureexplorer;
+
+import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import net.miginfocom.swing.MigLayout;
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoPosition;
+import figurabia.io.FigureStore;
+import figurabia.io.store.StoreListener;
+import figurabia.service.FiguresByPositionService.Result;
+import figurabia.service.TransitionGraphService;
+import figurabia.ui.figureexplorer.PositionPossibilitiesView.FigureLinkActionListener;
+
+/**
+ * Shows the shortest sequences of elements leading from the current position back to the initial position. Every
+ * element is a link to the figure it is taken from.
+ *
+ * @author Samuel Berner
+ */
+@SuppressWarnings("serial")
+public class RouteView extends JPanel {
+
+    private final static int MAX_ROUTES = 3;
+
+    private final TransitionGraphService service;
+
+    private PuertoPosition currentPosition;
+
+    private List<FigureLinkActionListener> actionListeners = new ArrayList<FigureLinkActionListener>();
+
+    public RouteView(FigureStore fs, TransitionGraphService transitionGraphService) {
+        service = transitionGraphService;
+        fs.addStoreListener(new StoreListener<Figure>() {
+            @Override
+            public void update(StateChange change, Figure o) {
+                // later, so the service has seen the change too
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        refreshRoutes();
+                    }
+                });
+            }
+        });
+
+        setLayout(new MigLayout("ins 4, wrap 1", "[grow]"));
+    }
+
+    public void setPosition(PuertoPosition p) {
+        if (p.equals(currentPosition))
+            return; // nothing to do
+        currentPosition = p;
+
+        refreshRoutes();
+    }
+
+    private void refreshRoutes() {
+        removeAll();
+        PuertoPosition initial = PuertoPosition.getInitialPosition();
+        if (currentPosition != null && !currentPosition.equals(initial)) {
+            List<List<Result>> routes = service.kShortestPaths(currentPosition, initial, MAX_ROUTES);
+            if (routes.isEmpty()) {
+                add(new JLabel("No way back to the initial position"));
+            } else {
+                add(new JLabel("Ways back to the initial position:"));
+                for (List<Result> route : routes) {
+                    add(createRoutePanel(route));
+                }
+            }
+        }
+
+        // relayout
+        if (getParent() != null)
+            getParent().validate();
+        repaint();
+    }
+
+    private JPanel createRoutePanel(List<Result> route) {
+        JPanel panel = new JPanel(new MigLayout("ins 0"));
+        for (int i = 0; i < route.size(); i++) {
+            final Figure figure = route.get(i).figure;
+            final int index = route.get(i).index;
+            String elementName = route.get(i).getElement().getName();
+            if (elementName == null)
+                elementName = "Element " + (index + 1);
+            String figureName = figure.getName();
+            if (figureName == null)
+                figureName = figure.getVideoName();
+
+            if (i > 0)
+                panel.add(new JLabel(">"));
+            JLabel link = new JLabel(elementName);
+            link.setForeground(Color.BLUE);
+            link.setToolTipText(elementName + " (in " + figureName + ")");
+            link.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+            link.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (e.getButton() == MouseEvent.BUTTON1) {
+                        // follow link, after left mouse click
+                        notifyFigureLinkActionListeners(figure, index);
+                    }
+                }
+            });
+            panel.add(link);
+        }
+        return panel;
+    }
+
+    protected void notifyFigureLinkActionListeners(Figure figure, int index) {
+        for (FigureLinkActionListener l : actionListeners) {
+            try {
+                l.linkActivated(figure, index);
+            } catch (RuntimeException e) {
+                // catch exceptions here to avoid unnecessary effects
+                System.err.println("Exception from a FigureLinkActionListener. Figure: " + figure + " position: "
+                        + index);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void addFigureLinkActionListener(FigureLinkActionListener listener) {
+        actionListeners.add(listener);
+    }
+
+    public void removeFigureLinkActionListener(FigureLinkActionListener listener) {
+        actionListeners.remove(listener);
+    }
+}
@@ -16,6 +16,7 @@ import figurabia.domain.Element;
 import figurabia.domain.Figure;
 import figurabia.domain.PuertoPosition;
 import figurabia.ui.util.GeometryUtil;
+import figurabia.util.CompactGraph;
 import figurabia.util.Graph;
 
 public class GraphBasedPlacement implements PlacementStrategy {
@@ -48,8 +49,9 @@ public class GraphBasedPlacement implements PlacementStrategy {
             }
         }
 
-        // save a copy of the original graph
-        Graph<PuertoPosition> originalGraph = new Graph<PuertoPosition>(graph);
+        // save a copy of the original graph (the copy constructor of Graph shares the adjacent sets, so it would change
+        // with the graph below)
+        CompactGraph<PuertoPosition> originalGraph = new CompactGraph<PuertoPosition>(graph);
 
         // remove lists with trailing parts (create a collection of lists, remembering position to attach it to)
         List<List<PuertoPosition>> trailingParts = new ArrayList<List<PuertoPosition>>();
@@ -4,12 +4,14 @@
  */
 package figurabia.ui.video;
 
+import java.awt.CardLayout;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 import net.miginfocom.swing.MigLayout;
@@ -22,6 +24,7 @@ import exmoplay.engine.ui.ControlBar;
 import exmoplay.engine.ui.VideoScreen;
 import figurabia.domain.Figure;
 import figurabia.framework.FigurabiaModel;
+import figurabia.framework.VideoPlaceholderListener;
 import figurabia.io.BeatPictureCache;
 import figurabia.ui.framework.PlayerListener;
 
@@ -34,6 +37,9 @@ public class FigurePlayer extends JPanel {
     private MediaPlayer mediaPlayer;
     private VideoScreen videoScreen;
     private ControlBar controlBar;
+    // shows either the video screen or the placeholder
+    private JPanel screenPanel;
+    private JLabel placeholder;
 
     private List<PlayerListener> playerListeners = new ArrayList<PlayerListener>();
 
@@ -65,9 +71,22 @@ public class FigurePlayer extends JPanel {
         //setBackground(Color.BLACK);
         setOpaque(true);
 
+        placeholder = new JLabel("", JLabel.CENTER);
+        screenPanel = new JPanel(new CardLayout());
+        screenPanel.add(videoScreen, "video");
+        screenPanel.add(placeholder, "placeholder");
+
         setLayout(new MigLayout("ins 0,gap 0", "[fill]", "[fill][22]"));
-        add(videoScreen, "push, wrap");
+        add(screenPanel, "push, wrap");
         add(controlBar);
+
+        figurabiaModel.addVideoPlaceholderListener(new VideoPlaceholderListener() {
+            @Override
+            public void update(String text) {
+                placeholder.setText(text);
+                ((CardLayout) screenPanel.getLayout()).show(screenPanel, text == null ? "video" : "placeholder");
+            }
+        });
     }
 
     private void onPositionUpdate(long position) {
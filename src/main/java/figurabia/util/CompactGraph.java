@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of a {@link Graph}, stored in arrays. The nodes are numbered from 0 to {@link #getNodeCount()} - 1
+ * and the adjacent nodes of each node are stored one after the other in one array (with an offset per node), so that
+ * iterating over them allocates nothing:
+ *
+ * <pre>
+ * for (int i = 0; i &lt; g.getAdjacentCount(id); i++) {
+ *     int adjacent = g.getAdjacent(id, i);
+ * }
+ * </pre>
+ *
+ * As in {@link Graph}, in and out adjacents are only available for graphs which are not unidirectional.
+ *
+ * @author Samuel Berner
+ */
+public final class CompactGraph<T> {
+
+    private final boolean unidirectional;
+    private final List<T> nodes;
+    private final Map<T, Integer> ids;
+
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final double[] outWeights;
+    private final int[] inOffsets;
+    private final int[] inTargets;
+    // in and out adjacents together (every adjacent node only once)
+    private final int[] adjacentOffsets;
+    private final int[] adjacentTargets;
+
+    public CompactGraph(Graph<T> graph) {
+        unidirectional = graph.isUnidirectional();
+        nodes = new ArrayList<T>(graph.getNodeSet());
+        ids = new HashMap<T, Integer>(nodes.size() * 2);
+        for (int i = 0; i < nodes.size(); i++) {
+            ids.put(nodes.get(i), i);
+        }
+        int n = nodes.size();
+        int m = graph.getEdgeSet().size();
+        int[] from = new int[m];
+        int[] to = new int[m];
+        double[] weights = new double[m];
+        int e = 0;
+        for (Edge<T> edge : graph.getEdgeSet()) {
+            from[e] = ids.get(edge.from);
+            to[e] = ids.get(edge.to);
+            weights[e] = edge.weight;
+            e++;
+        }
+
+        outOffsets = new int[n + 1];
+        outTargets = new int[m];
+        outWeights = new double[m];
+        group(from, to, weights, outOffsets, outTargets, outWeights);
+        inOffsets = new int[n + 1];
+        inTargets = new int[m];
+        group(to, from, null, inOffsets, inTargets, null);
+
+        // merge in and out adjacents, dropping the duplicates of edges in both directions
+        adjacentOffsets = new int[n + 1];
+        int[] adjacents = new int[2 * m];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            adjacentOffsets[i] = size;
+            int start = size;
+            for (int k = outOffsets[i]; k < outOffsets[i + 1]; k++) {
+                adjacents[size++] = outTargets[k];
+            }
+            for (int k = inOffsets[i]; k < inOffsets[i + 1]; k++) {
+                adjacents[size++] = inTargets[k];
+            }
+            Arrays.sort(adjacents, start, size);
+            int distinct = start;
+            for (int k = start; k < size; k++) {
+                if (distinct == start || adjacents[distinct - 1] != adjacents[k])
+                    adjacents[distinct++] = adjacents[k];
+            }
+            size = distinct;
+        }
+        adjacentOffsets[n] = size;
+        adjacentTargets = Arrays.copyOf(adjacents, size);
+    }
+
+    /**
+     * Sorts the edges by their source, the targets of each source in ascending order (two counting sorts, first by
+     * target, then by source).
+     */
+    private static void group(int[] sources, int[] targets, double[] weights, int[] offsets, int[] groupedTargets,
+            double[] groupedWeights) {
+        int[] byTarget = new int[sources.length];
+        countingSort(targets, null, offsets.length - 1, byTarget);
+        int[] bySource = new int[sources.length];
+        countingSort(sources, byTarget, offsets.length - 1, bySource);
+        for (int k = 0; k < bySource.length; k++) {
+            int e = bySource[k];
+            groupedTargets[k] = targets[e];
+            if (weights != null)
+                groupedWeights[k] = weights[e];
+            offsets[sources[e] + 1]++;
+        }
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+    }
+
+    /**
+     * Stable counting sort of edge indexes by the given keys.
+     *
+     * @param order the edges in their current order (null for 0, 1, 2, ...)
+     * @param result receives the sorted edges
+     */
+    private static void countingSort(int[] keys, int[] order, int keyCount, int[] result) {
+        int[] next = new int[keyCount + 1];
+        for (int key : keys) {
+            next[key + 1]++;
+        }
+        for (int i = 0; i < keyCount; i++) {
+            next[i + 1] += next[i];
+        }
+        for (int k = 0; k < keys.length; k++) {
+            int e = order == null ? k : order[k];
+            result[next[keys[e]]++] = e;
+        }
+    }
+
+    public boolean isUnidirectional() {
+        return unidirectional;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    public int getEdgeCount() {
+        return outTargets.length;
+    }
+
+    /**
+     * @return the id of the node or -1 if it is not part of the graph
+     */
+    public int getId(T node) {
+        Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    public T getNode(int id) {
+        return nodes.get(id);
+    }
+
+    public int getOutDegree(int id) {
+        checkDirected();
+        return outOffsets[id + 1] - outOffsets[id];
+    }
+
+    /**
+     * @return the id of the i-th node an edge from the given node goes to (ascending by id)
+     */
+    public int getOutAdjacent(int id, int i) {
+        checkDirected();
+        return outTargets[outOffsets[id] + i];
+    }
+
+    public double getOutWeight(int id, int i) {
+        checkDirected();
+        return outWeights[outOffsets[id] + i];
+    }
+
+    public int getInDegree(int id) {
+        checkDirected();
+        return inOffsets[id + 1] - inOffsets[id];
+    }
+
+    /**
+     * @return the id of the i-th node an edge to the given node comes from (ascending by id)
+     */
+    public int getInAdjacent(int id, int i) {
+        checkDirected();
+        return inTargets[inOffsets[id] + i];
+    }
+
+    /**
+     * Same as {@link Graph#getTotalDegree(Object)}: the number of adjacent nodes for unidirectional graphs, the number
+     * of in and out edges otherwise.
+     */
+    public int getTotalDegree(int id) {
+        if (unidirectional)
+            return getAdjacentCount(id);
+        return outOffsets[id + 1] - outOffsets[id] + inOffsets[id + 1] - inOffsets[id];
+    }
+
+    /**
+     * @return the number of nodes connected with the given node by an edge in any direction
+     */
+    public int getAdjacentCount(int id) {
+        return adjacentOffsets[id + 1] - adjacentOffsets[id];
+    }
+
+    /**
+     * @return the id of the i-th node connected with the given node by an edge in any direction (ascending by id)
+     */
+    public int getAdjacent(int id, int i) {
+        return adjacentTargets[adjacentOffsets[id] + i];
+    }
+
+    private void checkDirected() {
+        if (unidirectional)
+            throw new IllegalStateException("use getAdjacent for unidirectional graphs");
+    }
+}
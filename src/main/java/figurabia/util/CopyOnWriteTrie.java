@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A trie (with the same behaviour as {@link Trie}) for many reads and few changes, e.g. listeners registered by path
+ * prefix.
+ * <p>
+ * The nodes are immutable: a change builds a new trie and then replaces the root, so reading needs no lock and always
+ * sees a consistent state. Changes are synchronized. As every node knows the values of the keys which are a prefix of
+ * its own, finding them only walks down the trie once. The children of a node are found by binary search over their
+ * first characters and keys are compared in place, so reading allocates nothing.
+ *
+ * @author Samuel Berner
+ */
+public class CopyOnWriteTrie<V> implements PrefixMap<V> {
+
+    private static final char[] NO_CHARS = new char[0];
+    private static final String[] NO_LABELS = new String[0];
+
+    private static final class Node<V> {
+        final V value;
+        // sorted, the first characters of the labels
+        final char[] firstChars;
+        final String[] labels;
+        final Node<V>[] children;
+        // the values of this node and the nodes above it, the deepest first (set when the trie is complete)
+        final List<V> prefixValues;
+
+        Node(V value, char[] firstChars, String[] labels, Node<V>[] children) {
+            this(value, firstChars, labels, children, null);
+        }
+
+        Node(V value, char[] firstChars, String[] labels, Node<V>[] children, List<V> prefixValues) {
+            this.value = value;
+            this.firstChars = firstChars;
+            this.labels = labels;
+            this.children = children;
+            this.prefixValues = prefixValues;
+        }
+
+        Node<V> withValue(V newValue) {
+            return new Node<V>(newValue, firstChars, labels, children);
+        }
+
+        Node<V> withChild(int i, String label, Node<V> child) {
+            char[] newFirstChars = firstChars.clone();
+            String[] newLabels = labels.clone();
+            Node<V>[] newChildren = children.clone();
+            newFirstChars[i] = label.charAt(0);
+            newLabels[i] = label;
+            newChildren[i] = child;
+            return new Node<V>(value, newFirstChars, newLabels, newChildren);
+        }
+
+        Node<V> withInsertedChild(int i, String label, Node<V> child) {
+            int n = labels.length;
+            char[] newFirstChars = new char[n + 1];
+            String[] newLabels = new String[n + 1];
+            Node<V>[] newChildren = newArray(n + 1);
+            System.arraycopy(firstChars, 0, newFirstChars, 0, i);
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newFirstChars[i] = label.charAt(0);
+            newLabels[i] = label;
+            newChildren[i] = child;
+            System.arraycopy(firstChars, i, newFirstChars, i + 1, n - i);
+            System.arraycopy(labels, i, newLabels, i + 1, n - i);
+            System.arraycopy(children, i, newChildren, i + 1, n - i);
+            return new Node<V>(value, newFirstChars, newLabels, newChildren);
+        }
+
+        Node<V> withoutChild(int i) {
+            int n = labels.length;
+            char[] newFirstChars = new char[n - 1];
+            String[] newLabels = new String[n - 1];
+            Node<V>[] newChildren = newArray(n - 1);
+            System.arraycopy(firstChars, 0, newFirstChars, 0, i);
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(firstChars, i + 1, newFirstChars, i, n - i - 1);
+            System.arraycopy(labels, i + 1, newLabels, i, n - i - 1);
+            System.arraycopy(children, i + 1, newChildren, i, n - i - 1);
+            return new Node<V>(value, newFirstChars, newLabels, newChildren);
+        }
+
+        /**
+         * @return the index of the child whose label is a prefix of the key at the offset, or -1
+         */
+        int childMatching(String key, int offset) {
+            int i = Arrays.binarySearch(firstChars, key.charAt(offset));
+            if (i < 0)
+                return -1;
+            String label = labels[i];
+            return key.regionMatches(offset, label, 0, label.length()) ? i : -1;
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        static <V> Node<V>[] newArray(int size) {
+            return new Node[size];
+        }
+    }
+
+    private volatile Node<V> root = withPrefixValues(CopyOnWriteTrie.<V> leaf(null), Collections.<V> emptyList());
+
+    @Override
+    public V get(String key) {
+        Node<V> node = root;
+        int offset = 0;
+        while (offset < key.length()) {
+            int i = node.childMatching(key, offset);
+            if (i == -1)
+                return null;
+            offset += node.labels[i].length();
+            node = node.children[i];
+        }
+        return node.value;
+    }
+
+    /**
+     * Returns the values of all keys which are a prefix of the given string, the longest key first. The returned list
+     * is shared and must not be modified.
+     */
+    @Override
+    public List<V> valuesAtPrefixOf(String s) {
+        Node<V> node = root;
+        int offset = 0;
+        while (offset < s.length()) {
+            int i = node.childMatching(s, offset);
+            if (i == -1)
+                break;
+            offset += node.labels[i].length();
+            node = node.children[i];
+        }
+        return node.prefixValues;
+    }
+
+    @Override
+    public synchronized void put(String key, V value) {
+        root = withPrefixValues(put(root, key, 0, value), Collections.<V> emptyList());
+    }
+
+    private static <V> Node<V> put(Node<V> node, String key, int offset, V value) {
+        if (offset == key.length())
+            return node.withValue(value);
+        int i = Arrays.binarySearch(node.firstChars, key.charAt(offset));
+        if (i < 0)
+            return node.withInsertedChild(-i - 1, key.substring(offset), leaf(value));
+        String label = node.labels[i];
+        int common = 1;
+        while (common < label.length() && offset + common < key.length()
+                && label.charAt(common) == key.charAt(offset + common))
+            common++;
+        if (common == label.length())
+            return node.withChild(i, label, put(node.children[i], key, offset + common, value));
+        // only part of the label matches -> split it
+        String rest = label.substring(common);
+        Node<V> split = new Node<V>(null, new char[] { rest.charAt(0) }, new String[] { rest },
+                singleton(node.children[i]));
+        return node.withChild(i, label.substring(0, common), put(split, key, offset + common, value));
+    }
+
+    @Override
+    public synchronized V remove(String key) {
+        List<V> removed = new ArrayList<V>(1);
+        Node<V> newRoot = remove(root, key, 0, removed);
+        if (newRoot != root)
+            root = withPrefixValues(newRoot, Collections.<V> emptyList());
+        return removed.isEmpty() ? null : removed.get(0);
+    }
+
+    private static <V> Node<V> remove(Node<V> node, String key, int offset, List<V> removed) {
+        if (offset == key.length()) {
+            if (node.value == null)
+                return node;
+            removed.add(node.value);
+            return node.withValue(null);
+        }
+        int i = node.childMatching(key, offset);
+        if (i == -1)
+            return node;
+        String label = node.labels[i];
+        Node<V> child = remove(node.children[i], key, offset + label.length(), removed);
+        if (child == node.children[i])
+            return node;
+        if (child.value == null && child.children.length == 0)
+            return node.withoutChild(i);
+        if (child.value == null && child.children.length == 1)
+            return node.withChild(i, label + child.labels[0], child.children[0]);
+        return node.withChild(i, label, child);
+    }
+
+    /**
+     * Copies the whole trie, setting the prefix values of all nodes.
+     */
+    private static <V> Node<V> withPrefixValues(Node<V> node, List<V> parentValues) {
+        List<V> values = parentValues;
+        if (node.value != null) {
+            List<V> list = new ArrayList<V>(parentValues.size() + 1);
+            list.add(node.value);
+            list.addAll(parentValues);
+            values = Collections.unmodifiableList(list);
+        }
+        Node<V>[] children = Node.newArray(node.children.length);
+        for (int i = 0; i < children.length; i++) {
+            children[i] = withPrefixValues(node.children[i], values);
+        }
+        return new Node<V>(node.value, node.firstChars, node.labels, children, values);
+    }
+
+    private static <V> Node<V> leaf(V value) {
+        return new Node<V>(value, NO_CHARS, NO_LABELS, Node.<V> newArray(0));
+    }
+
+    private static <V> Node<V>[] singleton(Node<V> child) {
+        Node<V>[] children = Node.newArray(1);
+        children[0] = child;
+        return children;
+    }
+}
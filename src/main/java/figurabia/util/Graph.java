@@ -36,6 +36,10 @@ public class Graph<T> {
         out = new HashMap<T, Set<T>>(graph.out);
     }
 
+    public boolean isUnidirectional() {
+        return unidirectional;
+    }
+
     public boolean addNode(T node) {
         return nodes.add(node);
     }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A hash map with primitive, non-negative int keys (open addressing with linear probing), e.g. for positions keyed by
+ * {@link figurabia.domain.PuertoPosition#asNumber()}. Looking up a key allocates nothing.
+ * <p>
+ * Changes are synchronized, but reading does not lock: within a table, keys never move and removing only clears the
+ * value (the key's slot is dropped when the table is rebuilt). So a reader concurrent to a change either sees the old
+ * or the new value of a key.
+ *
+ * @author Samuel Berner
+ */
+public class IntHashMap<V> {
+
+    private static final int FREE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static class Table {
+        final int[] keys;
+        final AtomicReferenceArray<Object> values;
+        final int mask;
+        int usedSlots;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                keys[i] = FREE;
+            }
+            values = new AtomicReferenceArray<Object>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private int size;
+
+    /**
+     * @return the value or null if there is none for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Table t = table;
+        int slot = slot(key, t.mask);
+        int k;
+        while ((k = t.keys[slot]) != FREE) {
+            if (k == key)
+                return (V) t.values.get(slot);
+            slot = (slot + 1) & t.mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key a non-negative key
+     * @param value the value, must not be null
+     */
+    public synchronized void put(int key, V value) {
+        if (key < 0)
+            throw new IllegalArgumentException("key must not be negative: " + key);
+        if (value == null)
+            throw new IllegalArgumentException("value must not be null");
+        Table t = table;
+        int slot = slot(key, t.mask);
+        int k;
+        while ((k = t.keys[slot]) != FREE) {
+            if (k == key) {
+                if (t.values.getAndSet(slot, value) == null)
+                    size++;
+                table = t; // publishes the change to readers
+                return;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+        if ((t.usedSlots + 1) * 4 > t.keys.length * 3) {
+            // rebuild without the slots of removed keys and insert there
+            rebuild(size + 1);
+            put(key, value);
+            return;
+        }
+        t.keys[slot] = key;
+        t.values.set(slot, value);
+        t.usedSlots++;
+        size++;
+        table = t;
+    }
+
+    public synchronized void remove(int key) {
+        Table t = table;
+        int slot = slot(key, t.mask);
+        int k;
+        while ((k = t.keys[slot]) != FREE) {
+            if (k == key) {
+                if (t.values.getAndSet(slot, null) != null)
+                    size--;
+                table = t;
+                return;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+    }
+
+    public synchronized void clear() {
+        table = new Table(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void rebuild(int minSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * 3 < minSize * 4 * 2)
+            capacity <<= 1;
+        Table old = table;
+        Table t = new Table(capacity);
+        for (int i = 0; i < old.keys.length; i++) {
+            Object value = old.values.get(i);
+            if (value != null) {
+                int slot = slot(old.keys[i], t.mask);
+                while (t.keys[slot] != FREE)
+                    slot = (slot + 1) & t.mask;
+                t.keys[slot] = old.keys[i];
+                t.values.set(slot, value);
+                t.usedSlots++;
+            }
+        }
+        table = t;
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import figurabia.domain.Element;
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoOffset;
+import figurabia.domain.PuertoPosition;
+import figurabia.io.workspace.LocalFileWorkspace;
+import figurabia.io.workspace.Workspace;
+
+public class FigureSnapshotTest {
+
+    private File dir;
+    private Workspace workspace;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("figurabia", "test");
+        dir.delete();
+        dir.mkdirs();
+        workspace = new LocalFileWorkspace(dir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private static Figure createFigure(String id) {
+        Figure f = new Figure();
+        f.setId(id);
+        f.setRev("3");
+        f.setName("Figure " + id);
+        f.setColor(new Color(10, 20, 30, 40));
+        f.setVideoName("video" + id);
+        f.setActive(true);
+        f.setBaseOffset(new PuertoOffset(true, -2, 3));
+        f.setVideoPositions(new ArrayList<Long>(Arrays.asList(1000000000L, 2500000000L, 1800000000L)));
+        PuertoPosition p = PuertoPosition.getInitialPosition();
+        f.setPositions(new ArrayList<PuertoPosition>(Arrays.asList(p, p.withBeat(5).withSideOffset(-5),
+                p.withFrontOffset(-15))));
+        Element e = new Element();
+        e.setName("step");
+        e.setOffsetChange(new PuertoOffset(false, 1, -1));
+        f.setElements(new ArrayList<Element>(Arrays.asList(e, null)));
+        f.setBarIds(new ArrayList<Integer>(Arrays.asList(12, -1, 300000)));
+        return f;
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        FigureSnapshot snapshot = new FigureSnapshot(workspace, "/figures");
+        Figure full = createFigure("1");
+        Figure empty = new Figure();
+        empty.setId("2");
+        empty.setRev("0");
+        snapshot.write(Arrays.asList(full, empty));
+
+        Map<String, Figure> figures = snapshot.read();
+        Assert.assertEquals(2, figures.size());
+        Figure f = figures.get("1");
+        Assert.assertEquals("3", f.getRev());
+        Assert.assertEquals("Figure 1", f.getName());
+        Assert.assertEquals(full.getColor(), f.getColor());
+        Assert.assertEquals("video1", f.getVideoName());
+        Assert.assertTrue(f.isActive());
+        Assert.assertEquals(full.getBaseOffset(), f.getBaseOffset());
+        Assert.assertEquals(full.getVideoPositions(), f.getVideoPositions());
+        Assert.assertEquals(full.getPositions(), f.getPositions());
+        Assert.assertEquals(2, f.getElements().size());
+        Assert.assertEquals("step", f.getElements().get(0).getName());
+        Assert.assertEquals(full.getElements().get(0).getOffsetChange(), f.getElements().get(0).getOffsetChange());
+        Assert.assertNull(f.getElements().get(1));
+        Assert.assertEquals(full.getBarIds(), f.getBarIds());
+
+        Figure g = figures.get("2");
+        Assert.assertNull(g.getName());
+        Assert.assertNull(g.getColor());
+        Assert.assertNull(g.getBaseOffset());
+        Assert.assertNull(g.getVideoPositions());
+        Assert.assertNull(g.getPositions());
+        Assert.assertNull(g.getElements());
+        Assert.assertNull(g.getBarIds());
+    }
+
+    @Test
+    public void testStale() throws IOException {
+        FigureSnapshot snapshot = new FigureSnapshot(workspace, "/figures");
+        List<String> paths = Collections.singletonList("/figures/1.xml");
+        Assert.assertFalse(snapshot.isNewerThan(paths));
+
+        File figureFile = workspace.fileForWriting("/figures/1.xml");
+        FileUtils.writeStringToFile(figureFile, "<Figure/>", "UTF-8");
+        snapshot.write(Collections.singletonList(createFigure("1")));
+        File snapshotFile = workspace.fileForReading("/figures/" + FigureSnapshot.NAME);
+        long time = snapshotFile.lastModified();
+
+        figureFile.setLastModified(time - 10000);
+        Assert.assertTrue(snapshot.isNewerThan(paths));
+        // modified after the snapshot was written
+        figureFile.setLastModified(time + 10000);
+        Assert.assertFalse(snapshot.isNewerThan(paths));
+
+        snapshot.delete();
+        Assert.assertFalse(snapshot.isNewerThan(paths));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        FigureSnapshot snapshot = new FigureSnapshot(workspace, "/figures");
+        snapshot.write(Arrays.asList(createFigure("1"), createFigure("2")));
+        File snapshotFile = workspace.fileForReading("/figures/" + FigureSnapshot.NAME);
+        RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            raf.setLength(raf.length() - 2);
+        } finally {
+            raf.close();
+        }
+        try {
+            snapshot.read();
+            Assert.fail("a truncated snapshot must not be read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
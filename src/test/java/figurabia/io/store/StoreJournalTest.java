@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import figurabia.io.workspace.LocalFileWorkspace;
+import figurabia.io.workspace.Workspace;
+
+public class StoreJournalTest {
+
+    private static final String PATH = "/store/" + StoreJournal.NAME;
+
+    private File dir;
+    private Workspace workspace;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("figurabia", "test");
+        dir.delete();
+        dir.mkdirs();
+        workspace = new LocalFileWorkspace(dir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Records the compacted objects (null for deleted ones), or fails to, so the journal is kept as after a crash.
+     */
+    private static class RecordingCompactor implements StoreJournal.Compactor {
+        final Map<String, String> objects = new LinkedHashMap<String, String>();
+        final boolean failing;
+
+        RecordingCompactor(boolean failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public void writeObject(String id, String data) {
+            if (failing)
+                throw new RuntimeException("compaction failed");
+            objects.put(id, data);
+        }
+
+        @Override
+        public void deleteObject(String id) {
+            if (failing)
+                throw new RuntimeException("compaction failed");
+            objects.put(id, null);
+        }
+    }
+
+    private StoreJournal open(RecordingCompactor compactor) {
+        StoreJournal journal = new StoreJournal(workspace, PATH);
+        journal.open(compactor);
+        return journal;
+    }
+
+    private long journalLength() {
+        return workspace.fileForReading(PATH).length();
+    }
+
+    private void setJournalLength(long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(workspace.fileForReading(PATH), "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testReplayOnOpen() {
+        StoreJournal journal = open(new RecordingCompactor(true));
+        journal.appendStore("1", "<a/>");
+        journal.appendStore("2", "<b/>");
+        journal.appendDelete("3");
+        journal.appendStore("1", "<c/>");
+        Assert.assertTrue(journal.isDeletePending("3"));
+        journal.sync();
+        journal.close();
+        Assert.assertTrue(journalLength() > 0);
+
+        RecordingCompactor compactor = new RecordingCompactor(false);
+        journal = open(compactor);
+        // the latest state of every object, in the order of the latest changes
+        Assert.assertEquals(Arrays.asList("2", "3", "1"), new ArrayList<String>(compactor.objects.keySet()));
+        Assert.assertEquals("<b/>", compactor.objects.get("2"));
+        Assert.assertNull(compactor.objects.get("3"));
+        Assert.assertEquals("<c/>", compactor.objects.get("1"));
+        Assert.assertEquals(0, journalLength());
+        Assert.assertFalse(journal.isDeletePending("3"));
+        journal.close();
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        StoreJournal journal = open(new RecordingCompactor(true));
+        journal.appendStore("1", "<a/>");
+        journal.sync();
+        long firstLength = journalLength();
+        journal.appendStore("2", "<b/>");
+        journal.close();
+        setJournalLength(journalLength() - 3);
+
+        // the torn record is dropped, the complete ones are kept while they cannot be compacted
+        journal = open(new RecordingCompactor(true));
+        Assert.assertEquals(firstLength, journalLength());
+        journal.appendStore("3", "<c/>");
+        journal.close();
+
+        RecordingCompactor compactor = new RecordingCompactor(false);
+        open(compactor).close();
+        Assert.assertEquals(Arrays.asList("1", "3"), new ArrayList<String>(compactor.objects.keySet()));
+        Assert.assertEquals("<c/>", compactor.objects.get("3"));
+    }
+
+    @Test
+    public void testCorruptTail() throws IOException {
+        StoreJournal journal = open(new RecordingCompactor(true));
+        journal.appendStore("1", "<a/>");
+        journal.appendStore("2", "<b/>");
+        journal.close();
+        // change the last byte of the data of the last record, so its checksum does not match any more
+        RandomAccessFile raf = new RandomAccessFile(workspace.fileForReading(PATH), "rw");
+        try {
+            raf.seek(raf.length() - 1);
+            raf.write('x');
+        } finally {
+            raf.close();
+        }
+
+        RecordingCompactor compactor = new RecordingCompactor(false);
+        open(compactor).close();
+        Assert.assertEquals(1, compactor.objects.size());
+        Assert.assertEquals("<a/>", compactor.objects.get("1"));
+    }
+
+    @Test
+    public void testCompaction() {
+        RecordingCompactor compactor = new RecordingCompactor(false);
+        StoreJournal journal = open(compactor);
+        Map<String, String> changes = new LinkedHashMap<String, String>();
+        changes.put("1", "<a/>");
+        changes.put("2", null);
+        journal.appendAll(changes);
+        Assert.assertTrue(journal.isDeletePending("2"));
+        journal.close();
+        Assert.assertEquals("<a/>", compactor.objects.get("1"));
+        Assert.assertTrue(compactor.objects.containsKey("2"));
+        Assert.assertEquals(0, journalLength());
+        try {
+            journal.appendStore("3", "<c/>");
+            Assert.fail("the journal is closed");
+        } catch (StoreException e) {
+            // expected
+        }
+
+        // nothing left to replay
+        RecordingCompactor reopened = new RecordingCompactor(false);
+        journal = open(reopened);
+        Assert.assertTrue(reopened.objects.isEmpty());
+        Assert.assertFalse(journal.isDeletePending("2"));
+        journal.close();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thoughtworks.xstream.XStream;
+
+import figurabia.io.store.StoreListener.StateChange;
+import figurabia.io.workspace.LocalFileWorkspace;
+import figurabia.io.workspace.Workspace;
+
+public class XStreamStoreTest {
+
+    private static final String BASE_PATH = "/items";
+
+    private File dir;
+    private Workspace workspace;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("figurabia", "test");
+        dir.delete();
+        dir.mkdirs();
+        workspace = new LocalFileWorkspace(dir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public static class Item implements Identifiable {
+        private String id;
+        private String rev;
+        private String name;
+
+        public Item(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getRev() {
+            return rev;
+        }
+
+        @Override
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void setRev(String rev) {
+            this.rev = rev;
+        }
+    }
+
+    private static class RecordingListener implements StoreListener<Item> {
+        final List<StateChange> changes = new ArrayList<StateChange>();
+
+        @Override
+        public void update(StateChange change, Item o) {
+            changes.add(change);
+        }
+    }
+
+    private XStreamStore<Item> createStore(StoreJournal journal) {
+        return new XStreamStore<Item>(new XStreamStore.XStreamFactory() {
+            @Override
+            public XStream create() {
+                return new XStream();
+            }
+        }, workspace, BASE_PATH, Item.class, journal);
+    }
+
+    @Test
+    public void testDiscard() {
+        XStreamStore<Item> store = createStore(null);
+        Item a = new Item("a");
+        store.create(a);
+        RecordingListener listener = new RecordingListener();
+        store.addStoreListener(listener);
+
+        Batch batch = store.batch();
+        a.name = "a2";
+        store.update(a);
+        store.update(a);
+        Item b = new Item("b");
+        String bId = store.create(b);
+        Assert.assertEquals("2", a.getRev());
+        batch.discard();
+
+        // the revision of the (cached) object is restored, so it is not stale for later updates
+        Assert.assertEquals("0", a.getRev());
+        Assert.assertNull(b.getRev());
+        Assert.assertFalse(store.exists(bId));
+        Assert.assertTrue(listener.changes.isEmpty());
+        store.update(a);
+        Assert.assertEquals("1", a.getRev());
+        Assert.assertEquals("1", store.read(a.getId()).getRev());
+    }
+
+    @Test
+    public void testFailedCommit() throws IOException {
+        XStreamStore<Item> store = createStore(null);
+        Item a = new Item("a");
+        store.create(a);
+        Item b = new Item("b");
+        store.create(b);
+        RecordingListener listener = new RecordingListener();
+        store.addStoreListener(listener);
+
+        // a directory in place of the object file makes writing it fail
+        File bFile = new File(dir, "items/" + b.getId() + ".xml");
+        bFile.delete();
+        bFile.mkdir();
+
+        Batch batch = store.batch();
+        store.update(a);
+        store.update(b);
+        try {
+            batch.commit();
+            Assert.fail("commit should fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // the change written before the failure stays, the other one is rolled back
+        Assert.assertEquals("1", a.getRev());
+        Assert.assertEquals("0", b.getRev());
+        Assert.assertEquals(1, listener.changes.size());
+        Assert.assertEquals(StateChange.UPDATED, listener.changes.get(0));
+
+        bFile.delete();
+        store.batch().discard(); // the store is no longer in batch mode
+        store.update(b);
+        Assert.assertEquals("1", b.getRev());
+        Assert.assertEquals("1", a.getRev());
+    }
+
+    @Test
+    public void testFailedJournalCommit() {
+        StoreJournal journal = new StoreJournal(workspace, BASE_PATH + "/" + StoreJournal.NAME);
+        XStreamStore<Item> store = createStore(journal);
+        Item a = new Item("a");
+        store.create(a);
+
+        Batch batch = store.batch();
+        store.update(a);
+        Item b = new Item("b");
+        String bId = store.create(b);
+        // a closed journal rejects all appends
+        journal.close();
+        try {
+            batch.commit();
+            Assert.fail("commit should fail");
+        } catch (StoreException e) {
+            // expected
+        }
+
+        // nothing was written, so the whole batch is rolled back
+        Assert.assertEquals("0", a.getRev());
+        Assert.assertNull(b.getRev());
+        Assert.assertFalse(store.exists(bId));
+        Assert.assertEquals("0", store.read(a.getId()).getRev());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.io.workspace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import figurabia.io.workspace.Workspace.ChangeType;
+
+public class WorkspaceEventBusTest {
+
+    private static class RecordingDispatcher implements WorkspaceEventBus.Dispatcher {
+        final List<String> dispatched = new ArrayList<String>();
+        volatile Thread thread;
+
+        @Override
+        public synchronized void dispatch(String path, ChangeType type) {
+            thread = Thread.currentThread();
+            dispatched.add(path + " " + type);
+        }
+
+        synchronized List<String> get() {
+            return new ArrayList<String>(dispatched);
+        }
+    }
+
+    @Test
+    public void testCombine() {
+        Assert.assertEquals(ChangeType.CREATED, WorkspaceEventBus.combine(ChangeType.CREATED, ChangeType.UPDATED));
+        Assert.assertNull(WorkspaceEventBus.combine(ChangeType.CREATED, ChangeType.DELETED));
+        Assert.assertEquals(ChangeType.CREATED, WorkspaceEventBus.combine(ChangeType.CREATED, ChangeType.CREATED));
+        Assert.assertEquals(ChangeType.UPDATED, WorkspaceEventBus.combine(ChangeType.UPDATED, ChangeType.UPDATED));
+        Assert.assertEquals(ChangeType.UPDATED, WorkspaceEventBus.combine(ChangeType.UPDATED, ChangeType.CREATED));
+        Assert.assertEquals(ChangeType.DELETED, WorkspaceEventBus.combine(ChangeType.UPDATED, ChangeType.DELETED));
+        Assert.assertEquals(ChangeType.UPDATED, WorkspaceEventBus.combine(ChangeType.DELETED, ChangeType.CREATED));
+        Assert.assertEquals(ChangeType.DELETED, WorkspaceEventBus.combine(ChangeType.DELETED, ChangeType.DELETED));
+        Assert.assertEquals(ChangeType.PATH_DELETED,
+                WorkspaceEventBus.combine(ChangeType.PATH_CREATED, ChangeType.PATH_DELETED));
+    }
+
+    @Test
+    public void testCombinedWithinWindow() {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        WorkspaceEventBus bus = new WorkspaceEventBus("test", 100, dispatcher);
+        bus.post("/a", ChangeType.CREATED);
+        bus.post("/b", ChangeType.CREATED);
+        bus.post("/c", ChangeType.DELETED);
+        bus.post("/a", ChangeType.UPDATED);
+        bus.post("/b", ChangeType.DELETED);
+        bus.post("/c", ChangeType.CREATED);
+        bus.awaitDispatched();
+        // in the order of the first change of each path
+        Assert.assertEquals(Arrays.asList("/a CREATED", "/c UPDATED"), dispatcher.get());
+        bus.shutdown();
+    }
+
+    @Test
+    public void testWindow() throws InterruptedException {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        WorkspaceEventBus bus = new WorkspaceEventBus("test", 500, dispatcher);
+        bus.post("/a", ChangeType.CREATED);
+        Thread.sleep(50);
+        Assert.assertTrue(dispatcher.get().isEmpty());
+        bus.awaitDispatched();
+        Assert.assertEquals(Arrays.asList("/a CREATED"), dispatcher.get());
+
+        // after the window, changes of the same path are no longer combined
+        bus.post("/a", ChangeType.DELETED);
+        bus.awaitDispatched();
+        Assert.assertEquals(Arrays.asList("/a CREATED", "/a DELETED"), dispatcher.get());
+        bus.shutdown();
+    }
+
+    @Test
+    public void testShutdown() {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        WorkspaceEventBus bus = new WorkspaceEventBus("test", 60000, dispatcher);
+        bus.shutdown(); // nothing started yet
+
+        bus.post("/a", ChangeType.UPDATED);
+        long start = System.currentTimeMillis();
+        bus.shutdown();
+        // dispatched without waiting for the window
+        Assert.assertTrue(System.currentTimeMillis() - start < 30000);
+        Assert.assertEquals(Arrays.asList("/a UPDATED"), dispatcher.get());
+        Assert.assertFalse(dispatcher.thread.isAlive());
+
+        // started again by the next change
+        Thread first = dispatcher.thread;
+        bus.post("/b", ChangeType.CREATED);
+        bus.shutdown();
+        Assert.assertEquals(Arrays.asList("/a UPDATED", "/b CREATED"), dispatcher.get());
+        Assert.assertTrue(first != dispatcher.thread);
+        Assert.assertFalse(dispatcher.thread.isAlive());
+    }
+}
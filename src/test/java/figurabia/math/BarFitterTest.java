@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class BarFitterTest {
+
+    private static final long MS = 1000000L;
+
+    /**
+     * The fit as it was done before the {@link BarFitter}, on boxed values.
+     */
+    private static List<Long> previousFitToBars(List<Long> ones, List<Long> fives) {
+        Collections.sort(ones);
+        Collections.sort(fives);
+
+        SortedMap<Long, Integer> beats = new TreeMap<Long, Integer>();
+        for (Long time : ones)
+            beats.put(time, 1);
+        for (Long time : fives)
+            beats.put(time, 5);
+
+        int lastType = 5;
+        int virtualIdealTime = -5;
+        long lastMeasuredTime = -1;
+        for (Long measuredTime : new TreeSet<Long>(beats.keySet())) {
+            int currentType = beats.get(measuredTime);
+            if (currentType == lastType && lastMeasuredTime != -1) {
+                virtualIdealTime += 5;
+                long timeInbetween = (measuredTime + lastMeasuredTime) / 2;
+                beats.put(timeInbetween, virtualIdealTime);
+            }
+            virtualIdealTime += 5;
+            beats.put(measuredTime, virtualIdealTime);
+            lastMeasuredTime = measuredTime;
+            lastType = currentType;
+        }
+        return LinearLeastSquares.linearLeastSquareFitted(beats);
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = values.get(i);
+        return array;
+    }
+
+    /**
+     * Taps on a regular grid, with some jitter and some of the bars left out (never two in a row, those could not be
+     * told from none).
+     */
+    private static void tapBars(Random r, long start, long bar, int count, long jitter, List<Long> ones,
+            List<Long> fives) {
+        boolean skipped = false;
+        for (int i = 0; i < count; i++) {
+            skipped = !skipped && i > 0 && i < count - 1 && r.nextInt(5) == 0;
+            if (skipped)
+                continue;
+            long time = start + i * bar + (long) ((r.nextDouble() * 2 - 1) * jitter);
+            if (i % 2 == 0)
+                ones.add(time);
+            else
+                fives.add(time);
+        }
+    }
+
+    @Test
+    public void testSameAsBefore() {
+        Random r = new Random(19);
+        for (int round = 0; round < 200; round++) {
+            List<Long> ones = new ArrayList<Long>();
+            List<Long> fives = new ArrayList<Long>();
+            // up to 10 minutes into the video
+            long start = (long) (r.nextDouble() * 600000) * MS;
+            tapBars(r, start, (1000 + r.nextInt(600)) * MS, 2 + r.nextInt(40), 50 * MS, ones, fives);
+            Collections.shuffle(ones, r);
+            Collections.shuffle(fives, r);
+
+            List<Long> expected = previousFitToBars(new ArrayList<Long>(ones), new ArrayList<Long>(fives));
+            long[] fitted = LinearLeastSquares.fitToBars(toArray(ones), toArray(fives));
+            Assert.assertEquals(expected.size(), fitted.length);
+            for (int i = 0; i < fitted.length; i++) {
+                Assert.assertEquals("round " + round + ", bar " + i, (long) expected.get(i), fitted[i], 1);
+            }
+            Assert.assertEquals(expected.size(), LinearLeastSquares.fitToBars(ones, fives).size());
+        }
+    }
+
+    @Test
+    public void testRobust() {
+        Random r = new Random(23);
+        long bar = 1300 * MS;
+        for (int round = 0; round < 50; round++) {
+            List<Long> ones = new ArrayList<Long>();
+            List<Long> fives = new ArrayList<Long>();
+            long start = 10000 * MS;
+            int count = 8 + r.nextInt(20);
+            tapBars(r, start, bar, count, 10 * MS, ones, fives);
+            // one bar tapped 400 ms too late
+            List<Long> list = r.nextBoolean() ? ones : fives;
+            int mistapped = r.nextInt(list.size());
+            list.set(mistapped, list.get(mistapped) + 400 * MS);
+
+            long[] robust = LinearLeastSquares.fitToBarsRobust(toArray(ones), toArray(fives));
+            long[] plain = LinearLeastSquares.fitToBars(toArray(ones), toArray(fives));
+            Assert.assertEquals(count, robust.length);
+            long robustError = 0;
+            long plainError = 0;
+            for (int i = 0; i < count; i++) {
+                robustError = Math.max(robustError, Math.abs(robust[i] - (start + i * bar)));
+                plainError = Math.max(plainError, Math.abs(plain[i] - (start + i * bar)));
+            }
+            Assert.assertTrue("round " + round + ": " + robustError / MS + " ms off", robustError <= 15 * MS);
+            Assert.assertTrue(robustError < plainError);
+        }
+    }
+
+    @Test
+    public void testIncremental() {
+        Random r = new Random(29);
+        List<Long> ones = new ArrayList<Long>();
+        List<Long> fives = new ArrayList<Long>();
+        tapBars(r, 5000 * MS, 1200 * MS, 30, 30 * MS, ones, fives);
+        List<Long> times = new ArrayList<Long>(ones);
+        times.addAll(fives);
+        Collections.shuffle(times, r);
+
+        BarFitter fitter = new BarFitter();
+        List<Long> tappedOnes = new ArrayList<Long>();
+        List<Long> tappedFives = new ArrayList<Long>();
+        for (long time : times) {
+            int beat = ones.contains(time) ? 1 : 5;
+            (beat == 1 ? tappedOnes : tappedFives).add(time);
+            fitter.tap(time, beat);
+
+            long[] expected = BarFitter.of(toArray(tappedOnes), toArray(tappedFives)).fitted();
+            long[] fitted = fitter.fitted();
+            Assert.assertEquals(expected.length, fitted.length);
+            for (int i = 0; i < fitted.length; i++)
+                Assert.assertEquals(expected[i], fitted[i], 1);
+            // the deviation of the latest tap, wherever it is
+            int latest = fitter.getLatestBar();
+            Assert.assertEquals(time, fitter.getFitted(latest) + fitter.getDeviation(latest), 1);
+        }
+    }
+}
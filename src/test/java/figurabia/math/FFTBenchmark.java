@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the recursive FFT on {@link Complex} objects (as {@link FFT} used to calculate it) with the complex and the
+ * real transform of {@link FFTPlan}.
+ *
+ * @author Samuel Berner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FFTBenchmark {
+
+    @Param({ "64", "256", "1024", "4096", "16384", "65536" })
+    private int size;
+
+    private double[] signal;
+    private Complex[] complexSignal;
+    private FFTPlan plan;
+    private double[] re;
+    private double[] im;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        signal = new double[size];
+        complexSignal = new Complex[size];
+        for (int i = 0; i < size; i++) {
+            signal[i] = random.nextDouble() * 2 - 1;
+            complexSignal[i] = new Complex(signal[i], 0);
+        }
+        plan = FFTPlan.forSize(size);
+        re = new double[size];
+        im = new double[size];
+    }
+
+    @Benchmark
+    public Complex[] recursive() {
+        return recursiveFft(complexSignal);
+    }
+
+    @Benchmark
+    public double[] planComplex() {
+        System.arraycopy(signal, 0, re, 0, size);
+        Arrays.fill(im, 0);
+        plan.forward(re, im);
+        return re;
+    }
+
+    @Benchmark
+    public double[] planReal() {
+        plan.realForward(signal, re, im);
+        return re;
+    }
+
+    // the former implementation of FFT.fft
+    private static Complex[] recursiveFft(Complex[] x) {
+        int N = x.length;
+        if (N == 1)
+            return new Complex[] { x[0] };
+
+        Complex[] even = new Complex[N / 2];
+        for (int k = 0; k < N / 2; k++) {
+            even[k] = x[2 * k];
+        }
+        Complex[] q = recursiveFft(even);
+
+        Complex[] odd = even;
+        for (int k = 0; k < N / 2; k++) {
+            odd[k] = x[2 * k + 1];
+        }
+        Complex[] r = recursiveFft(odd);
+
+        Complex[] y = new Complex[N];
+        for (int k = 0; k < N / 2; k++) {
+            double kth = -2 * k * Math.PI / N;
+            Complex wk = new Complex(Math.cos(kth), Math.sin(kth));
+            y[k] = q[k].plus(wk.times(r[k]));
+            y[k + N / 2] = q[k].minus(wk.times(r[k]));
+        }
+        return y;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FFTBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FFTPlanTest {
+
+    private static final double MAX_ERROR = 4e-11;
+
+    /**
+     * The discrete Fourier transform by its definition (the angles reduced modulo 2 pi exactly, for accuracy).
+     */
+    private static double[][] naiveDFT(double[] re, double[] im, boolean inverse) {
+        int n = re.length;
+        double[][] result = new double[2][n];
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0;
+            double sumIm = 0;
+            for (int j = 0; j < n; j++) {
+                double angle = (inverse ? 2 : -2) * Math.PI * ((long) j * k % n) / n;
+                double c = Math.cos(angle);
+                double s = Math.sin(angle);
+                sumRe += re[j] * c - im[j] * s;
+                sumIm += re[j] * s + im[j] * c;
+            }
+            result[0][k] = inverse ? sumRe / n : sumRe;
+            result[1][k] = inverse ? sumIm / n : sumIm;
+        }
+        return result;
+    }
+
+    private static double[] random(Random r, int n) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = r.nextDouble() * 2 - 1;
+        }
+        return values;
+    }
+
+    private static void assertClose(double[] expected, double[] actual, int length, String message) {
+        for (int i = 0; i < length; i++) {
+            double error = Math.abs(expected[i] - actual[i]);
+            if (!(error <= MAX_ERROR))
+                Assert.fail(message + " at " + i + ": expected " + expected[i] + " but was " + actual[i]);
+        }
+    }
+
+    @Test
+    public void testForwardInverse() {
+        Random r = new Random(1);
+        for (int n = 1; n <= 1024; n *= 2) {
+            FFTPlan plan = new FFTPlan(n);
+            double[] re = random(r, n);
+            double[] im = random(r, n);
+
+            double[][] expected = naiveDFT(re, im, false);
+            double[] fre = re.clone();
+            double[] fim = im.clone();
+            plan.forward(fre, fim);
+            assertClose(expected[0], fre, n, "forward re, size " + n);
+            assertClose(expected[1], fim, n, "forward im, size " + n);
+
+            expected = naiveDFT(re, im, true);
+            double[] ire = re.clone();
+            double[] iim = im.clone();
+            plan.inverse(ire, iim);
+            assertClose(expected[0], ire, n, "inverse re, size " + n);
+            assertClose(expected[1], iim, n, "inverse im, size " + n);
+
+            // undoes the forward transform
+            plan.inverse(fre, fim);
+            assertClose(re, fre, n, "round trip re, size " + n);
+            assertClose(im, fim, n, "round trip im, size " + n);
+        }
+    }
+
+    @Test
+    public void testRealForward() {
+        Random r = new Random(2);
+        for (int n = 2; n <= 1024; n *= 2) {
+            FFTPlan plan = FFTPlan.forSize(n);
+            double[] in = random(r, n);
+            double[] copy = in.clone();
+
+            double[][] expected = naiveDFT(in, new double[n], false);
+            double[] re = new double[n / 2 + 1];
+            double[] im = new double[n / 2 + 1];
+            plan.realForward(in, re, im);
+            assertClose(expected[0], re, n / 2 + 1, "real re, size " + n);
+            assertClose(expected[1], im, n / 2 + 1, "real im, size " + n);
+            assertClose(copy, in, n, "input, size " + n);
+        }
+    }
+
+    @Test
+    public void testSizes() {
+        Assert.assertSame(FFTPlan.forSize(64), FFTPlan.forSize(64));
+        Assert.assertEquals(64, FFTPlan.forSize(64).getSize());
+        for (int size : new int[] { 0, -4, 3, 1000 }) {
+            try {
+                new FFTPlan(size);
+                Assert.fail("not a power of 2: " + size);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try {
+            new FFTPlan(1).realForward(new double[1], new double[1], new double[1]);
+            Assert.fail("the real transform needs 2 values");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import figurabia.math.ShortTimeFourierTransform.FrameListener;
+import figurabia.math.ShortTimeFourierTransform.Window;
+
+public class ShortTimeFourierTransformTest {
+
+    private static final int FRAME_SIZE = 1024;
+    private static final int HOP = 256;
+
+    /**
+     * @param cycles the number of periods of the sine per frame
+     */
+    private static short[] sine(double cycles, int length) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) Math.round(16000 * Math.sin(2 * Math.PI * cycles * i / FRAME_SIZE));
+        }
+        return samples;
+    }
+
+    private static int peak(float[] magnitudes) {
+        int peak = 0;
+        for (int k = 1; k < magnitudes.length; k++) {
+            if (magnitudes[k] > magnitudes[peak])
+                peak = k;
+        }
+        return peak;
+    }
+
+    /**
+     * Pushes the samples in pieces of random size and returns the peak bin of every frame.
+     */
+    private static List<Integer> peaks(short[] samples, Window window) {
+        final List<Integer> peaks = new ArrayList<Integer>();
+        ShortTimeFourierTransform stft = new ShortTimeFourierTransform(FRAME_SIZE, HOP, window, new FrameListener() {
+            @Override
+            public void frame(long frameIndex, float[] magnitudes) {
+                Assert.assertEquals(peaks.size(), frameIndex);
+                Assert.assertEquals(FRAME_SIZE / 2 + 1, magnitudes.length);
+                peaks.add(peak(magnitudes));
+            }
+        });
+        Random r = new Random(3);
+        int offset = 0;
+        while (offset < samples.length) {
+            int length = Math.min(samples.length - offset, r.nextInt(700));
+            stft.push(samples, offset, length);
+            offset += length;
+        }
+        Assert.assertEquals(peaks.size(), stft.getFrameCount());
+        return peaks;
+    }
+
+    @Test
+    public void testSinePeak() {
+        int length = FRAME_SIZE + 20 * HOP;
+        for (Window window : Window.values()) {
+            for (double cycles : new double[] { 3, 37, 100.3, 300.7, 500 }) {
+                List<Integer> peaks = peaks(sine(cycles, length), window);
+                Assert.assertEquals(21, peaks.size());
+                for (int i = 0; i < peaks.size(); i++) {
+                    Assert.assertEquals(window + ", " + cycles + " cycles, frame " + i, (int) Math.round(cycles),
+                            (int) peaks.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFinish() {
+        final long[] frames = new long[1];
+        ShortTimeFourierTransform stft = new ShortTimeFourierTransform(FRAME_SIZE, HOP, Window.HANN,
+                new FrameListener() {
+                    @Override
+                    public void frame(long frameIndex, float[] magnitudes) {
+                        frames[0]++;
+                    }
+                });
+        short[] samples = sine(50, FRAME_SIZE + HOP + 10);
+        stft.push(samples, 0, samples.length);
+        Assert.assertEquals(2, frames[0]);
+        // the last 10 samples are padded to a frame
+        stft.finish();
+        Assert.assertEquals(3, frames[0]);
+        // nothing left
+        stft.finish();
+        Assert.assertEquals(3, frames[0]);
+    }
+
+    @Test
+    public void testBufferWraps() {
+        SpectrogramBuffer buffer = new SpectrogramBuffer(3, 2);
+        Assert.assertEquals(0, buffer.getFirstFrame());
+        Assert.assertFalse(buffer.isAvailable(0));
+        for (int i = 0; i < 7; i++) {
+            buffer.frame(i, new float[] { i, -i });
+            Assert.assertEquals(i + 1, buffer.getFrameCount());
+            Assert.assertEquals(Math.max(0, i - 2), buffer.getFirstFrame());
+        }
+        float[] frame = new float[2];
+        for (int i = 4; i < 7; i++) {
+            Assert.assertTrue(buffer.isAvailable(i));
+            Assert.assertEquals((float) i, buffer.getMagnitude(i, 0));
+            buffer.getFrame(i, frame);
+            Assert.assertEquals((float) -i, frame[1]);
+        }
+        Assert.assertFalse(buffer.isAvailable(3));
+        Assert.assertFalse(buffer.isAvailable(7));
+        Assert.assertFalse(buffer.isAvailable(-1));
+        try {
+            buffer.getMagnitude(3, 0);
+            Assert.fail("frame 3 was overwritten");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            buffer.frame(8, frame);
+            Assert.fail("frame 7 is missing");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInvalidBuffer() {
+        for (int[] size : new int[][] { { 0, 10 }, { -1, 10 }, { 10, 0 }, { 1 << 16, 1 << 16 } }) {
+            try {
+                new SpectrogramBuffer(size[0], size[1]);
+                Assert.fail(size[0] + " x " + size[1]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
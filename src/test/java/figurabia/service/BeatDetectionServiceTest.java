@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import figurabia.io.PcmAudio;
+import figurabia.math.BeatGrid;
+
+public class BeatDetectionServiceTest {
+
+    private static final int SAMPLE_RATE = 22050;
+    private static final long MS = 1000000L;
+    // 180 beats per minute
+    private static final long PERIOD = 1000 * MS / 3;
+    private static final long FIRST_BEAT = 500 * MS;
+    // the beat of the first accented click (a downbeat)
+    private static final int FIRST_ACCENT = 2;
+
+    private static long click(int i) {
+        return FIRST_BEAT + i * PERIOD;
+    }
+
+    /**
+     * Clicks of noise on every beat and a bass drum on every fourth one.
+     */
+    private static short[] clickTrack(long durationNanos) {
+        Random r = new Random(7);
+        short[] samples = new short[(int) (durationNanos * SAMPLE_RATE / 1000000000L)];
+        for (int beat = 0; click(beat) < durationNanos; beat++) {
+            int start = (int) (click(beat) * SAMPLE_RATE / 1000000000L);
+            boolean accent = beat >= FIRST_ACCENT && (beat - FIRST_ACCENT) % 4 == 0;
+            for (int i = 0; i < SAMPLE_RATE / 10 && start + i < samples.length; i++) {
+                double t = (double) i / SAMPLE_RATE;
+                double value = 8000 * (r.nextDouble() * 2 - 1) * Math.exp(-t * 200);
+                if (accent)
+                    value += 16000 * Math.sin(2 * Math.PI * 60 * t) * Math.exp(-t * 30);
+                samples[start + i] = (short) value;
+            }
+        }
+        return samples;
+    }
+
+    private static int nearest(long[] times, long time) {
+        int best = 0;
+        for (int i = 1; i < times.length; i++) {
+            if (Math.abs(times[i] - time) < Math.abs(times[best] - time))
+                best = i;
+        }
+        return best;
+    }
+
+    @Test
+    public void testClickTrack() throws IOException {
+        // several parts of 30 seconds, the last one longer
+        long duration = 95000 * MS;
+        PcmAudio audio = new PcmAudio(ShortBuffer.wrap(clickTrack(duration)), SAMPLE_RATE);
+        BeatGrid grid = new BeatDetectionService(null, null).detectBeats(audio);
+
+        long[] beats = grid.getBeats();
+        int clicks = 0;
+        for (int i = 0; click(i) < duration; i++) {
+            long time = click(i);
+            // also across the joins of the parts, at 31 and 61 seconds
+            Assert.assertEquals("beat " + i, time, beats[nearest(beats, time)], 30 * MS);
+            clicks++;
+        }
+        Assert.assertEquals(clicks, beats.length);
+        for (int i = 1; i < beats.length; i++) {
+            Assert.assertTrue(beats[i] - beats[i - 1] > PERIOD / 2);
+        }
+
+        long[] downbeats = grid.getDownbeats();
+        Assert.assertEquals((clicks - FIRST_ACCENT + 3) / 4, downbeats.length);
+        for (int i = 0; i < downbeats.length; i++) {
+            Assert.assertEquals("downbeat " + i, click(FIRST_ACCENT + 4 * i), downbeats[i], 30 * MS);
+        }
+    }
+
+    @Test
+    public void testProposeBars() throws IOException {
+        // a missing beat and an extra one in between must not shift the bars after them
+        List<Long> beats = new ArrayList<Long>();
+        for (int i = 0; i < 100; i++) {
+            if (i != 21)
+                beats.add(click(i));
+            if (i == 42)
+                beats.add(click(i) + PERIOD / 2);
+        }
+        long[] times = new long[beats.size()];
+        for (int i = 0; i < times.length; i++)
+            times[i] = beats.get(i);
+        BeatGrid grid = new BeatGrid(times, new long[0]);
+
+        // the first and the last bar marked, a bit off
+        List<Long> ones = Arrays.asList(click(2) + 20 * MS, click(2 + 4 * 20) - 10 * MS);
+        List<Long> fives = new ArrayList<Long>();
+        List<Long> bars = new BeatDetectionService(null, null).proposeBars("video", null, grid, ones, fives);
+        Assert.assertEquals(21, bars.size());
+        for (int i = 0; i < bars.size(); i++) {
+            Assert.assertEquals("bar " + i, click(2 + 4 * i), (long) bars.get(i), 5 * MS);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import figurabia.domain.Element;
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoPosition;
+import figurabia.service.ChoreographyService.Choreography;
+import figurabia.service.ChoreographyService.ChoreographyListener;
+import figurabia.service.ChoreographyService.Generation;
+import figurabia.service.ChoreographyService.Request;
+
+public class ChoreographyServiceTest {
+
+    private static final int[] SIDE_OFFSETS = { 0, 5, -5, 10, -10, 15, -15 };
+    private static final String[] NAMES = { "a", "b", "c" };
+
+    /**
+     * @return distinct positions for different numbers (0 is the initial position)
+     */
+    private static PuertoPosition position(int i, int beat) {
+        return PuertoPosition.getInitialPosition().withBeat(beat).withFrontOffset(-(i / 7) * 5)
+                .withSideOffset(SIDE_OFFSETS[i % 7]);
+    }
+
+    /**
+     * A figure from one position to another, with a random position in between on every beat.
+     */
+    private static Figure figure(Random r, String id, int from, int to, int bars) {
+        Figure f = new Figure();
+        f.setId(id);
+        f.setName("Figure " + id);
+        f.setActive(true);
+        List<PuertoPosition> positions = new ArrayList<PuertoPosition>();
+        List<Element> elements = new ArrayList<Element>();
+        positions.add(position(from, 1));
+        for (int i = 1; i < bars * 2; i++) {
+            positions.add(position(r.nextInt(20), i % 2 == 0 ? 1 : 5));
+        }
+        positions.add(position(to, 1));
+        for (int i = 0; i < bars * 2; i++) {
+            Element e = new Element();
+            e.setName(NAMES[r.nextInt(NAMES.length)] + r.nextInt(4));
+            elements.add(e);
+        }
+        f.setPositions(positions);
+        f.setElements(elements);
+        return f;
+    }
+
+    private static List<Figure> randomFigures(Random r, int positions, int count) {
+        List<Figure> figures = new ArrayList<Figure>();
+        for (int i = 0; i < count; i++) {
+            figures.add(figure(r, Integer.toString(i), r.nextInt(positions), r.nextInt(positions), 1 + r.nextInt(2)));
+        }
+        return figures;
+    }
+
+    private static class Collector implements ChoreographyListener {
+        final List<List<Figure>> found = Collections.synchronizedList(new ArrayList<List<Figure>>());
+        List<Choreography> ranked;
+
+        @Override
+        public void found(Choreography choreography) {
+            found.add(choreography.getFigures());
+        }
+
+        @Override
+        public void finished(List<Choreography> ranked) {
+            this.ranked = ranked;
+        }
+    }
+
+    private static Collector generate(Request request, List<Figure> figures) throws InterruptedException {
+        Collector collector = new Collector();
+        Generation generation = new ChoreographyService(null).generate(request, figures, collector);
+        generation.await();
+        Assert.assertTrue(generation.isDone());
+        return collector;
+    }
+
+    @Test
+    public void testEnumerate() throws InterruptedException {
+        Random r = new Random(11);
+        for (int round = 0; round < 60; round++) {
+            List<Figure> figures = randomFigures(r, 3, 10);
+            Request request = new Request(position(r.nextInt(3), 1), 1 + r.nextInt(5));
+            request.setEndInInitialPosition(r.nextBoolean());
+            request.setNoRepeatedFigures(r.nextBoolean());
+            if (r.nextBoolean())
+                request.setRequiredElementNames(Collections.singleton("a" + r.nextInt(4)));
+            request.setMaxResults(Integer.MAX_VALUE);
+
+            Collector collector = generate(request, figures);
+            List<List<Figure>> all = bruteForce(request, figures, false);
+            Set<List<Figure>> expected = new HashSet<List<Figure>>(bruteForce(request, figures, true));
+            Assert.assertEquals(all.size(), countOf(request, figures));
+            Assert.assertEquals(expected.size(), collector.found.size());
+            Assert.assertEquals(expected, new HashSet<List<Figure>>(collector.found));
+            Assert.assertEquals(expected.size(), collector.ranked.size());
+            for (int i = 1; i < collector.ranked.size(); i++) {
+                Assert.assertTrue(collector.ranked.get(i - 1).compareRank(collector.ranked.get(i)) <= 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSample() throws InterruptedException {
+        Random r = new Random(13);
+        for (int round = 0; round < 20; round++) {
+            List<Figure> figures = randomFigures(r, 3, 10);
+            Request request = new Request(position(r.nextInt(3), 1), 4 + r.nextInt(4));
+            request.setEndInInitialPosition(r.nextBoolean());
+            request.setNoRepeatedFigures(r.nextBoolean());
+            request.setExhaustiveLimit(0);
+            request.setSamples(300);
+            request.setMaxResults(10);
+
+            Collector collector = generate(request, figures);
+            Set<List<Figure>> valid = new HashSet<List<Figure>>(bruteForce(request, figures, true));
+            Set<List<Figure>> distinct = new HashSet<List<Figure>>();
+            for (List<Figure> sequence : collector.found) {
+                Assert.assertTrue(valid.contains(sequence));
+                Assert.assertTrue(distinct.add(sequence));
+            }
+            Assert.assertTrue(collector.found.size() <= 300);
+            Assert.assertEquals(Math.min(10, collector.found.size()), collector.ranked.size());
+            if (!request.isNoRepeatedFigures())
+                Assert.assertEquals(valid.isEmpty(), collector.found.isEmpty());
+        }
+    }
+
+    @Test
+    public void testUnusableFigures() throws InterruptedException {
+        Random r = new Random(17);
+        Figure usable = figure(r, "1", 0, 0, 1);
+        // an even number of positions
+        Figure even = figure(r, "2", 0, 0, 1);
+        even.setPositions(even.getPositions().subList(0, 2));
+        // starting on beat 5
+        Figure offBeat = figure(r, "3", 0, 0, 1);
+        offBeat.getPositions().set(0, position(0, 5));
+        // without elements
+        Figure noElements = figure(r, "4", 0, 0, 1);
+        noElements.setElements(null);
+
+        Request request = new Request(position(0, 1), 2);
+        Collector collector = generate(request, Arrays.asList(usable, even, offBeat, noElements));
+        Assert.assertEquals(4, collector.found.size());
+        for (List<Figure> sequence : collector.found) {
+            for (Figure f : sequence) {
+                Assert.assertTrue(f == usable || f == noElements);
+            }
+        }
+    }
+
+    /**
+     * The number of possible sequences as reported by the generation (without the repeated figures constraint).
+     */
+    private static long countOf(Request request, List<Figure> figures) throws InterruptedException {
+        Request counting = new Request(request.getStartPosition(), request.getBars());
+        counting.setEndInInitialPosition(request.isEndInInitialPosition());
+        counting.setRequiredElementNames(request.getRequiredElementNames());
+        counting.setExhaustiveLimit(0);
+        counting.setSamples(0);
+        Generation generation = new ChoreographyService(null).generate(counting, figures, new Collector());
+        generation.await();
+        return generation.getPossibleSequences();
+    }
+
+    /**
+     * All sequences of the figures fulfilling the request (trying every figure at every step).
+     */
+    private static List<List<Figure>> bruteForce(Request request, List<Figure> figures, boolean noRepeats) {
+        List<List<Figure>> result = new ArrayList<List<Figure>>();
+        collect(request, figures, noRepeats && request.isNoRepeatedFigures(), request.getStartPosition(),
+                request.getBars(), new ArrayList<Figure>(), result);
+        return result;
+    }
+
+    private static void collect(Request request, List<Figure> figures, boolean noRepeats, PuertoPosition current,
+            int bars, List<Figure> sequence, List<List<Figure>> result) {
+        if (bars == 0) {
+            if (request.isEndInInitialPosition() && !current.equals(PuertoPosition.getInitialPosition()))
+                return;
+            Set<String> names = new HashSet<String>();
+            for (Figure f : sequence) {
+                for (Element e : f.getElements()) {
+                    names.add(e.getName());
+                }
+            }
+            if (names.containsAll(request.getRequiredElementNames()))
+                result.add(new ArrayList<Figure>(sequence));
+            return;
+        }
+        for (Figure f : figures) {
+            List<PuertoPosition> positions = f.getPositions();
+            int figureBars = (positions.size() - 1) / 2;
+            if (!positions.get(0).equals(current) || figureBars > bars || noRepeats && sequence.contains(f))
+                continue;
+            sequence.add(f);
+            collect(request, figures, noRepeats, positions.get(positions.size() - 1), bars - figureBars, sequence,
+                    result);
+            sequence.remove(sequence.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import figurabia.domain.Element;
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoOffset;
+import figurabia.domain.PuertoPosition;
+import figurabia.framework.FigurabiaModel;
+import figurabia.io.FigureStore;
+import figurabia.io.workspace.LocalFileWorkspace;
+import figurabia.service.FiguresByPositionService.Result;
+
+public class FiguresByPositionServiceTest {
+
+    private static final int[] SIDE_OFFSETS = { 0, 5, -5 };
+    private static final int POSITIONS = 6;
+
+    private File dir;
+    private FigureStore figureStore;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("figurabia", "test");
+        dir.delete();
+        dir.mkdirs();
+        figureStore = new FigureStore(new LocalFileWorkspace(dir), "/figures");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        figureStore.close();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private static PuertoPosition position(int i) {
+        return PuertoPosition.getInitialPosition().withFrontOffset(-(i / 3) * 5).withSideOffset(SIDE_OFFSETS[i % 3]);
+    }
+
+    /**
+     * Sets random positions (out of a few, so figures share positions and elements) with matching elements.
+     */
+    private static void randomize(Random r, Figure f) {
+        List<PuertoPosition> positions = new ArrayList<PuertoPosition>();
+        List<Element> elements = new ArrayList<Element>();
+        int count = 2 + r.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            positions.add(position(r.nextInt(POSITIONS)));
+        }
+        for (int i = 0; i < count - 1; i++) {
+            Element e = new Element();
+            e.setInitialPosition(positions.get(i));
+            e.setFinalPosition(positions.get(i + 1));
+            e.setOffsetChange(new PuertoOffset(false, 0, 0));
+            elements.add(e);
+        }
+        f.setPositions(positions);
+        f.setElements(elements);
+    }
+
+    /**
+     * @return the results of all positions, as "figure id:index" in a comparable order
+     */
+    private static Map<PuertoPosition, Map<Element, List<String>>> allResults(FiguresByPositionService service) {
+        Map<PuertoPosition, Map<Element, List<String>>> all = new HashMap<PuertoPosition, Map<Element, List<String>>>();
+        for (int i = 0; i < POSITIONS; i++) {
+            Map<Element, List<String>> byElement = new HashMap<Element, List<String>>();
+            for (Map.Entry<Element, List<Result>> e : service.retrieveFiguresByPosition(position(i)).entrySet()) {
+                List<String> results = new ArrayList<String>();
+                for (Result r : e.getValue()) {
+                    results.add(r.figure.getId() + ":" + r.index);
+                }
+                Collections.sort(results);
+                byElement.put(e.getKey(), results);
+            }
+            all.put(position(i), byElement);
+        }
+        return all;
+    }
+
+    @Test
+    public void testIncrementalMatchesInit() {
+        Random r = new Random(42);
+        FigurabiaModel model = new FigurabiaModel();
+        FiguresByPositionService service = new FiguresByPositionService(model, figureStore);
+        final Set<PuertoPosition> reported = new HashSet<PuertoPosition>();
+        service.addIndexListener(new FiguresByPositionService.IndexListener() {
+            @Override
+            public void indexChanged(Set<PuertoPosition> positions) {
+                reported.addAll(positions);
+            }
+        });
+        // only initialised, its own view set stays empty
+        FiguresByPositionService reference = new FiguresByPositionService(new FigurabiaModel(), figureStore);
+
+        List<Figure> figures = new ArrayList<Figure>();
+        for (int i = 0; i < 12; i++) {
+            Figure f = new Figure();
+            f.setName("Figure " + i);
+            randomize(r, f);
+            figureStore.create(f);
+            figures.add(f);
+        }
+
+        Set<Figure> deleted = new HashSet<Figure>();
+        Map<PuertoPosition, Map<Element, List<String>>> before = allResults(service);
+        for (int step = 0; step < 500; step++) {
+            Figure f = figures.get(r.nextInt(figures.size()));
+            reported.clear();
+            switch (r.nextInt(4)) {
+            case 0:
+                model.addToViewSet(f);
+                break;
+            case 1:
+                model.removeFromViewSet(f);
+                break;
+            case 2:
+                randomize(r, f);
+                figureStore.update(f);
+                break;
+            default:
+                // deleted figures stay in the view set, but are replaced, so there is always something to work with
+                figureStore.delete(f);
+                deleted.add(f);
+                Figure replacement = new Figure();
+                randomize(r, replacement);
+                figureStore.create(replacement);
+                figures.set(figures.indexOf(f), replacement);
+                break;
+            }
+
+            Set<Figure> existing = new HashSet<Figure>(model.getViewSet());
+            existing.removeAll(deleted);
+            reference.init(existing);
+            Map<PuertoPosition, Map<Element, List<String>>> after = allResults(service);
+            Assert.assertEquals("step " + step, allResults(reference), after);
+            for (PuertoPosition p : after.keySet()) {
+                if (!after.get(p).equals(before.get(p)))
+                    Assert.assertTrue("step " + step + " did not report " + p, reported.contains(p));
+            }
+            before = after;
+        }
+    }
+}
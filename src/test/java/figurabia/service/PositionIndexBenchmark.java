@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import figurabia.domain.Element;
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoOffset;
+import figurabia.domain.PuertoPosition;
+import figurabia.domain.PuertoPosition.ArmWrapped;
+import figurabia.domain.PuertoPosition.HandHeight;
+import figurabia.domain.PuertoPosition.HandJoint;
+import figurabia.domain.PuertoPosition.LadyDir;
+import figurabia.domain.PuertoPosition.ManDir;
+import figurabia.service.FiguresByPositionService.Result;
+import figurabia.util.IntHashMap;
+
+/**
+ * Compares looking up the figures by position in a HashMap keyed by {@link PuertoPosition} objects (as it used to be)
+ * with the {@link IntHashMap} keyed by {@link PuertoPosition#asNumber()}, on a synthetic corpus of 100'000 figures.
+ *
+ * @author Samuel Berner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionIndexBenchmark {
+
+    private static final int FIGURES = 100000;
+    private static final int DISTINCT_POSITIONS = 20000;
+    private static final int QUERIES = 4096;
+
+    private Map<PuertoPosition, Map<Element, List<Result>>> hashMapIndex;
+    private IntHashMap<Map<Element, List<Result>>> intHashMapIndex;
+    // equal to indexed positions, but different objects (like the current position of the explorer)
+    private PuertoPosition[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        PuertoPosition[] pool = new PuertoPosition[DISTINCT_POSITIONS];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = randomPosition(random);
+        }
+
+        hashMapIndex = new HashMap<PuertoPosition, Map<Element, List<Result>>>();
+        Map<Integer, Map<Element, List<Result>>> byNumber = new HashMap<Integer, Map<Element, List<Result>>>();
+        for (int i = 0; i < FIGURES; i++) {
+            Figure f = randomFigure(random, pool, i);
+            for (int j = 0; j < f.getPositions().size() - 1; j++) {
+                PuertoPosition p = f.getPositions().get(j);
+                Map<Element, List<Result>> resultMap = hashMapIndex.get(p);
+                if (resultMap == null) {
+                    resultMap = new HashMap<Element, List<Result>>();
+                    hashMapIndex.put(p, resultMap);
+                    byNumber.put(p.asNumber(), resultMap);
+                }
+                Element e = f.getElements().get(j);
+                List<Result> resultList = resultMap.get(e);
+                if (resultList == null) {
+                    resultList = new ArrayList<Result>();
+                    resultMap.put(e, resultList);
+                }
+                resultList.add(new Result(f, j));
+            }
+        }
+        // both indexes share the same result maps, only the lookup differs
+        intHashMapIndex = new IntHashMap<Map<Element, List<Result>>>();
+        for (Map.Entry<Integer, Map<Element, List<Result>>> e : byNumber.entrySet()) {
+            intHashMapIndex.put(e.getKey(), e.getValue());
+        }
+
+        queries = new PuertoPosition[QUERIES];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = PuertoPosition.fromNumber(pool[random.nextInt(pool.length)].asNumber());
+        }
+    }
+
+    @Benchmark
+    public Map<Element, List<Result>> hashMapLookup() {
+        return hashMapIndex.get(queries[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public Map<Element, List<Result>> intHashMapLookup() {
+        return intHashMapIndex.get(queries[next++ & (QUERIES - 1)].asNumber());
+    }
+
+    private static Figure randomFigure(Random random, PuertoPosition[] pool, int i) {
+        Figure f = new Figure();
+        f.setId(Integer.toString(i));
+        int length = 9 + 2 * random.nextInt(8);
+        List<PuertoPosition> positions = new ArrayList<PuertoPosition>(length);
+        positions.add(PuertoPosition.getInitialPosition());
+        for (int j = 1; j < length; j++) {
+            positions.add(pool[random.nextInt(pool.length)].withBeat(j % 2 == 0 ? 1 : 5));
+        }
+        List<Element> elements = new ArrayList<Element>(length - 1);
+        for (int j = 0; j < length - 1; j++) {
+            Element e = new Element();
+            e.setInitialPosition(positions.get(j));
+            e.setFinalPosition(positions.get(j + 1));
+            e.setOffsetChange(PuertoOffset.getInitialOffset());
+            elements.add(e);
+        }
+        f.setPositions(positions);
+        f.setElements(elements);
+        return f;
+    }
+
+    private static PuertoPosition randomPosition(Random random) {
+        return PuertoPosition.getInitialPosition()
+                .withLadyDir(randomOf(random, LadyDir.values()))
+                .withManDir(randomOf(random, ManDir.values()))
+                .withFrontOffset(5 * (random.nextInt(7) - 3))
+                .withSideOffset(5 * (random.nextInt(7) - 3))
+                .withHandsJoined(randomOf(random, HandJoint.values()))
+                .withHandsTwist(random.nextInt(4) - 1)
+                .withLeftHandHeight(randomOf(random, HandHeight.values()))
+                .withRightHandHeight(randomOf(random, HandHeight.values()))
+                .withLeftArmAroundMan(randomOf(random, ArmWrapped.values()))
+                .withRightArmAroundLady(randomOf(random, ArmWrapped.values()));
+    }
+
+    private static <T> T randomOf(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PositionIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
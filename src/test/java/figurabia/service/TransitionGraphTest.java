@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import figurabia.domain.Figure;
+import figurabia.domain.PuertoPosition;
+import figurabia.service.FiguresByPositionService.Result;
+
+public class TransitionGraphTest {
+
+    private static final int[] SIDE_OFFSETS = { 0, 5, -5, 10, -10, 15, -15 };
+
+    /**
+     * @return distinct positions for different numbers
+     */
+    private static PuertoPosition position(int i) {
+        return PuertoPosition.getInitialPosition().withFrontOffset(10 - (i / 7) * 5)
+                .withSideOffset(SIDE_OFFSETS[i % 7]);
+    }
+
+    private static Figure figure(String id, int... positions) {
+        Figure f = new Figure();
+        f.setId(id);
+        f.setActive(true);
+        List<PuertoPosition> list = new ArrayList<PuertoPosition>();
+        for (int p : positions) {
+            list.add(position(p));
+        }
+        f.setPositions(list);
+        return f;
+    }
+
+    private static PuertoPosition from(Result r) {
+        return r.figure.getPositions().get(r.index);
+    }
+
+    private static PuertoPosition to(Result r) {
+        return r.figure.getPositions().get(r.index + 1);
+    }
+
+    private static void assertPath(List<Result> path, PuertoPosition from, PuertoPosition to) {
+        PuertoPosition current = from;
+        for (Result r : path) {
+            Assert.assertEquals(current, from(r));
+            current = to(r);
+        }
+        Assert.assertEquals(to, current);
+    }
+
+    @Test
+    public void testCompile() {
+        TransitionGraph g = TransitionGraph.compile(Arrays.asList(figure("1", 0, 1, 2), figure("2", 1, 2)));
+        Assert.assertEquals(3, g.getNodeCount());
+        Assert.assertEquals(3, g.getEdgeCount());
+        Assert.assertTrue(g.containsPosition(position(2)));
+        Assert.assertFalse(g.containsPosition(position(3)));
+    }
+
+    @Test
+    public void testShortestPath() {
+        Figure chain = figure("1", 0, 1, 2, 3);
+        Figure shortcut = figure("2", 0, 4, 3);
+        TransitionGraph g = TransitionGraph.compile(Arrays.asList(chain, shortcut));
+
+        List<Result> path = g.shortestPath(position(0), position(3));
+        Assert.assertEquals(2, path.size());
+        Assert.assertSame(shortcut, path.get(0).figure);
+        Assert.assertEquals(0, path.get(0).index);
+        Assert.assertEquals(1, path.get(1).index);
+
+        path = g.shortestPath(position(1), position(3));
+        Assert.assertEquals(2, path.size());
+        assertPath(path, position(1), position(3));
+
+        Assert.assertEquals(0, g.shortestPath(position(2), position(2)).size());
+        // edges are directed
+        Assert.assertNull(g.shortestPath(position(3), position(0)));
+        Assert.assertNull(g.shortestPath(position(0), position(20)));
+    }
+
+    @Test
+    public void testKShortestPaths() {
+        Random r = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            List<Figure> figures = randomFigures(r, 8, 12);
+            TransitionGraph g = TransitionGraph.compile(figures);
+            int from = r.nextInt(8);
+            int to = r.nextInt(8);
+            int k = 1 + r.nextInt(6);
+
+            List<Integer> expected = simplePathLengths(figures, from, to);
+            Collections.sort(expected);
+            List<List<Result>> paths = g.kShortestPaths(position(from), position(to), k);
+            Assert.assertEquals(Math.min(k, expected.size()), paths.size());
+
+            Set<List<String>> distinct = new HashSet<List<String>>();
+            for (int i = 0; i < paths.size(); i++) {
+                List<Result> path = paths.get(i);
+                assertPath(path, position(from), position(to));
+                // the shortest ones, without repeated positions
+                Assert.assertEquals((int) expected.get(i), path.size());
+                Set<PuertoPosition> visited = new HashSet<PuertoPosition>();
+                visited.add(position(from));
+                List<String> key = new ArrayList<String>();
+                for (Result e : path) {
+                    Assert.assertTrue(visited.add(to(e)));
+                    key.add(e.figure.getId() + ":" + e.index);
+                }
+                Assert.assertTrue(distinct.add(key));
+            }
+        }
+    }
+
+    @Test
+    public void testPathWithBars() {
+        Random r = new Random(5);
+        for (int round = 0; round < 100; round++) {
+            List<Figure> figures = randomFigures(r, 6, 6);
+            TransitionGraph g = TransitionGraph.compile(figures);
+            int from = r.nextInt(6);
+            int to = r.nextInt(6);
+            int bars = r.nextInt(4);
+
+            List<Result> path = g.pathWithBars(position(from), position(to), bars);
+            if (reachableInSteps(figures, from, to, bars * 2)) {
+                Assert.assertNotNull(path);
+                Assert.assertEquals(bars * 2, path.size());
+                assertPath(path, position(from), position(to));
+            } else {
+                Assert.assertNull(path);
+            }
+        }
+    }
+
+    /**
+     * @return figures with 2 to 4 positions out of the given number (not repeating a position directly)
+     */
+    private static List<Figure> randomFigures(Random r, int positions, int count) {
+        List<Figure> figures = new ArrayList<Figure>();
+        for (int i = 0; i < count; i++) {
+            int[] p = new int[2 + r.nextInt(3)];
+            for (int j = 0; j < p.length; j++) {
+                do {
+                    p[j] = r.nextInt(positions);
+                } while (j > 0 && p[j] == p[j - 1]);
+            }
+            figures.add(figure(Integer.toString(i), p));
+        }
+        return figures;
+    }
+
+    /**
+     * The lengths of all paths without repeated positions (each element of each figure is a separate edge).
+     */
+    private static List<Integer> simplePathLengths(List<Figure> figures, int from, int to) {
+        List<Integer> lengths = new ArrayList<Integer>();
+        Set<PuertoPosition> visited = new HashSet<PuertoPosition>();
+        visited.add(position(from));
+        collectPaths(figures, position(from), position(to), visited, 0, lengths);
+        return lengths;
+    }
+
+    private static void collectPaths(List<Figure> figures, PuertoPosition current, PuertoPosition target,
+            Set<PuertoPosition> visited, int length, List<Integer> lengths) {
+        if (current.equals(target)) {
+            lengths.add(length);
+            return;
+        }
+        for (Figure f : figures) {
+            List<PuertoPosition> positions = f.getPositions();
+            for (int i = 0; i < positions.size() - 1; i++) {
+                if (positions.get(i).equals(current) && visited.add(positions.get(i + 1))) {
+                    collectPaths(figures, positions.get(i + 1), target, visited, length + 1, lengths);
+                    visited.remove(positions.get(i + 1));
+                }
+            }
+        }
+    }
+
+    private static boolean reachableInSteps(List<Figure> figures, int from, int to, int steps) {
+        Set<PuertoPosition> current = new HashSet<PuertoPosition>();
+        current.add(position(from));
+        for (int step = 0; step < steps; step++) {
+            Set<PuertoPosition> next = new HashSet<PuertoPosition>();
+            for (Figure f : figures) {
+                List<PuertoPosition> positions = f.getPositions();
+                for (int i = 0; i < positions.size() - 1; i++) {
+                    if (current.contains(positions.get(i)))
+                        next.add(positions.get(i + 1));
+                }
+            }
+            current = next;
+        }
+        return current.contains(position(to));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class CompactGraphTest {
+
+    /**
+     * A random graph with some unconnected nodes, some self loops and, for directed graphs, edges in both directions.
+     */
+    private static Graph<Integer> randomGraph(Random r, boolean unidirectional, int nodes, int edges) {
+        Graph<Integer> graph = new Graph<Integer>(unidirectional);
+        for (int i = 0; i < nodes; i++) {
+            graph.addNode(i * 7);
+        }
+        for (int i = 0; i < edges; i++) {
+            // addEdge(from, to, weight) drops the weight, so the edge is created directly
+            graph.addEdge(new Edge<Integer>(r.nextInt(nodes) * 7, r.nextInt(nodes) * 7, r.nextInt(100) / 10.0));
+        }
+        return graph;
+    }
+
+    private static Set<Integer> adjacents(CompactGraph<Integer> compact, int id) {
+        Set<Integer> adjacents = new HashSet<Integer>();
+        int previous = -1;
+        for (int i = 0; i < compact.getAdjacentCount(id); i++) {
+            int adjacent = compact.getAdjacent(id, i);
+            Assert.assertTrue(adjacent > previous);
+            previous = adjacent;
+            adjacents.add(compact.getNode(adjacent));
+        }
+        return adjacents;
+    }
+
+    private static void assertSame(Graph<Integer> graph, CompactGraph<Integer> compact) {
+        Assert.assertEquals(graph.isUnidirectional(), compact.isUnidirectional());
+        Assert.assertEquals(graph.getNodeSet().size(), compact.getNodeCount());
+        Assert.assertEquals(graph.getEdgeSet().size(), compact.getEdgeCount());
+        Assert.assertEquals(-1, compact.getId(-1));
+        Map<Edge<Integer>, Double> weights = new HashMap<Edge<Integer>, Double>();
+        for (Edge<Integer> e : graph.getEdgeSet()) {
+            weights.put(e, e.weight);
+        }
+
+        for (Integer node : graph.getNodeSet()) {
+            int id = compact.getId(node);
+            Assert.assertEquals(node, compact.getNode(id));
+            Assert.assertEquals(graph.getTotalDegree(node), compact.getTotalDegree(id));
+            Assert.assertEquals(graph.getAdjacents(node), adjacents(compact, id));
+            if (graph.isUnidirectional())
+                continue;
+
+            Assert.assertEquals(graph.getOutDegree(node), compact.getOutDegree(id));
+            Set<Integer> out = new HashSet<Integer>();
+            int previous = -1;
+            for (int i = 0; i < compact.getOutDegree(id); i++) {
+                int adjacent = compact.getOutAdjacent(id, i);
+                Assert.assertTrue(adjacent > previous);
+                previous = adjacent;
+                Integer to = compact.getNode(adjacent);
+                out.add(to);
+                Assert.assertEquals(weights.get(new Edge<Integer>(node, to)), compact.getOutWeight(id, i));
+            }
+            Assert.assertEquals(graph.getAdjacentsOut(node), out);
+
+            Assert.assertEquals(graph.getInDegree(node), compact.getInDegree(id));
+            Set<Integer> in = new HashSet<Integer>();
+            previous = -1;
+            for (int i = 0; i < compact.getInDegree(id); i++) {
+                int adjacent = compact.getInAdjacent(id, i);
+                Assert.assertTrue(adjacent > previous);
+                previous = adjacent;
+                in.add(compact.getNode(adjacent));
+            }
+            Assert.assertEquals(graph.getAdjacentsIn(node), in);
+        }
+    }
+
+    @Test
+    public void testDirected() {
+        Random r = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            int nodes = 1 + r.nextInt(30);
+            Graph<Integer> graph = randomGraph(r, false, nodes, r.nextInt(nodes * 4));
+            assertSame(graph, new CompactGraph<Integer>(graph));
+        }
+    }
+
+    @Test
+    public void testUnidirectional() {
+        Random r = new Random(2);
+        for (int i = 0; i < 50; i++) {
+            int nodes = 1 + r.nextInt(30);
+            Graph<Integer> graph = randomGraph(r, true, nodes, r.nextInt(nodes * 4));
+            CompactGraph<Integer> compact = new CompactGraph<Integer>(graph);
+            assertSame(graph, compact);
+            try {
+                compact.getOutDegree(0);
+                Assert.fail("out degree of a unidirectional graph");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        CompactGraph<Integer> compact = new CompactGraph<Integer>(new Graph<Integer>());
+        Assert.assertEquals(0, compact.getNodeCount());
+        Assert.assertEquals(0, compact.getEdgeCount());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares visiting the adjacent nodes of all nodes (as the placement strategies do) in a {@link Graph} and in a
+ * {@link CompactGraph}, for a unidirectional graph with about three edges per node.
+ *
+ * @author Samuel Berner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBenchmark {
+
+    @Param({ "1000", "100000" })
+    private int nodes;
+
+    private Graph<Integer> graph;
+    private CompactGraph<Integer> compactGraph;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        graph = new Graph<Integer>(true);
+        for (int i = 0; i < nodes; i++) {
+            graph.addNode(i);
+        }
+        for (int i = 0; i < nodes * 3; i++) {
+            graph.addEdge(random.nextInt(nodes), random.nextInt(nodes));
+        }
+        compactGraph = new CompactGraph<Integer>(graph);
+    }
+
+    @Benchmark
+    public long graphAdjacents() {
+        long sum = 0;
+        for (Integer node : graph.getNodeSet()) {
+            for (Integer adjacent : graph.getAdjacents(node)) {
+                sum += adjacent;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long compactGraphAdjacents() {
+        long sum = 0;
+        for (int id = 0; id < compactGraph.getNodeCount(); id++) {
+            for (int i = 0; i < compactGraph.getAdjacentCount(id); i++) {
+                sum += compactGraph.getNode(compactGraph.getAdjacent(id, i));
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public CompactGraph<Integer> compile() {
+        return new CompactGraph<Integer>(graph);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GraphBenchmark.class.getSimpleName()).build()).run();
+    }
+}
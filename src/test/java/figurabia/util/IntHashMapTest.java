@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class IntHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        IntHashMap<String> m = new IntHashMap<String>();
+
+        Assert.assertNull(m.get(5));
+        m.put(5, "five");
+        m.put(0, "zero");
+        m.put(21, "twentyone");
+        Assert.assertEquals("five", m.get(5));
+        Assert.assertEquals("zero", m.get(0));
+        Assert.assertEquals("twentyone", m.get(21));
+        Assert.assertEquals(3, m.size());
+
+        m.put(5, "FIVE");
+        Assert.assertEquals("FIVE", m.get(5));
+        Assert.assertEquals(3, m.size());
+
+        m.remove(5);
+        Assert.assertNull(m.get(5));
+        Assert.assertFalse(m.containsKey(5));
+        Assert.assertEquals(2, m.size());
+        m.remove(5);
+        m.remove(1234);
+        Assert.assertEquals(2, m.size());
+
+        m.put(5, "again");
+        Assert.assertEquals("again", m.get(5));
+        Assert.assertEquals(3, m.size());
+
+        m.clear();
+        Assert.assertEquals(0, m.size());
+        Assert.assertNull(m.get(0));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        IntHashMap<String> m = new IntHashMap<String>();
+        try {
+            m.put(-1, "negative");
+            Assert.fail("negative keys are reserved");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            m.put(1, null);
+            Assert.fail("null values mean absent");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testResize() {
+        IntHashMap<Integer> m = new IntHashMap<Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random r = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // positions are 29 bit numbers
+            int key = r.nextInt(1 << 29);
+            int op = r.nextInt(3);
+            if (op == 2) {
+                m.remove(key);
+                expected.remove(key);
+            } else {
+                m.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        Assert.assertEquals(expected.size(), m.size());
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            Assert.assertEquals(e.getValue(), m.get(e.getKey()));
+        }
+    }
+
+    @Test
+    public void testChurn() {
+        // removed keys leave slots behind until the next rebuild, which must not make the map grow without bounds
+        IntHashMap<Integer> m = new IntHashMap<Integer>();
+        for (int i = 0; i < 1000000; i++) {
+            m.put(i, i);
+            m.remove(i - 10);
+        }
+        Assert.assertEquals(10, m.size());
+        for (int i = 1000000 - 10; i < 1000000; i++) {
+            Assert.assertEquals((Integer) i, m.get(i));
+        }
+        Assert.assertNull(m.get(1000000 - 11));
+    }
+
+    @Test
+    public void testConcurrentReads() throws InterruptedException {
+        final IntHashMap<Integer> m = new IntHashMap<Integer>();
+        // these keys are always in the map, while others are added and removed (causing rebuilds)
+        final int stable = 100;
+        for (int i = 0; i < stable; i++) {
+            m.put(i, i);
+        }
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    while (!stop.get() && failure.get() == null) {
+                        for (int i = 0; i < stable; i++) {
+                            Integer value = m.get(i);
+                            if (value == null || value != i)
+                                failure.set("key " + i + " has value " + value);
+                        }
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        Random r = new Random(7);
+        for (int i = 0; i < 200000 && failure.get() == null; i++) {
+            int key = stable + r.nextInt(5000);
+            if (r.nextBoolean())
+                m.put(key, key);
+            else
+                m.remove(key);
+        }
+        stop.set(true);
+        for (Thread t : readers) {
+            t.join();
+        }
+        Assert.assertNull(failure.get());
+    }
+}
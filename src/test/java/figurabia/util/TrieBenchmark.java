@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2026 by Samuel Berner (samuel.berner@gmail.com), all rights reserved
+ * Created on Oct 18, 2026
+ */
+package figurabia.util;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares finding the listeners for a written path (as the workspace does on every write) in {@link Trie} and in
+ * {@link CopyOnWriteTrie}, with listeners registered like the stores and caches of the application do.
+ *
+ * @author Samuel Berner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieBenchmark {
+
+    private static final String[] PREFIXES = { "/", "/figures/", "/tree/", "/pics/", "/vids/", "/vids/meta/",
+            "/figures/journal", "/pics/1234/", "/pics/1235/", "/pics/1236/" };
+    private static final String[] PATHS = { "/figures/1234.xml", "/tree/17.xml", "/pics/1234/003-1.jpg",
+            "/pics/1234/thumbs/003-1-160x120.jpg", "/vids/meta/abc.txt", "/other/file" };
+
+    private Trie<String> trie;
+    private CopyOnWriteTrie<String> copyOnWriteTrie;
+
+    @Setup
+    public void setUp() {
+        trie = new Trie<String>();
+        copyOnWriteTrie = new CopyOnWriteTrie<String>();
+        for (String prefix : PREFIXES) {
+            trie.put(prefix, prefix);
+            copyOnWriteTrie.put(prefix, prefix);
+        }
+    }
+
+    @Benchmark
+    public int trie() {
+        int found = 0;
+        for (String path : PATHS) {
+            List<String> values = trie.valuesAtPrefixOf(path);
+            found += values.size();
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int copyOnWriteTrie() {
+        int found = 0;
+        for (String path : PATHS) {
+            List<String> values = copyOnWriteTrie.valuesAtPrefixOf(path);
+            found += values.size();
+        }
+        return found;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TrieBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -4,8 +4,12 @@
  */
 package figurabia.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.Assert;
 
@@ -99,4 +103,103 @@ public class TrieTest {
         Assert.assertEquals(Arrays.asList(25, 26, -15), t.valuesAtPrefixOf("abc"));
 
     }
+
+    @Test
+    public void testCopyOnWriteTrieBehavesLikeTrie() {
+        Trie<Integer> expected = new Trie<Integer>();
+        CopyOnWriteTrie<Integer> t = new CopyOnWriteTrie<Integer>();
+        Random random = new Random(0);
+        String[] keys = new String[200];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = randomPath(random);
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            String key = keys[random.nextInt(keys.length)];
+            switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+                expected.put(key, i);
+                t.put(key, i);
+                break;
+            case 2:
+                Assert.assertEquals(expected.remove(key), t.remove(key));
+                break;
+            default:
+                String s = key + randomPath(random);
+                Assert.assertEquals(expected.valuesAtPrefixOf(s), t.valuesAtPrefixOf(s));
+                break;
+            }
+            Assert.assertEquals(expected.get(key), t.get(key));
+        }
+    }
+
+    @Test
+    public void testCopyOnWriteTrieConcurrentReadsAndWrites() throws Exception {
+        final CopyOnWriteTrie<String> t = new CopyOnWriteTrie<String>();
+        // always present, so every read must find them
+        t.put("/", "/");
+        t.put("/figures/", "/figures/");
+        t.put("/pics/", "/pics/");
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final long end = System.currentTimeMillis() + 1000;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < 2; w++) {
+            final int writer = w;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(writer);
+                    while (System.currentTimeMillis() < end && failure.get() == null) {
+                        // keys of different writers never collide
+                        String key = (random.nextBoolean() ? "/figures/" : "/pics/") + writer + randomPath(random);
+                        t.put(key, key);
+                        if (!key.equals(t.get(key)))
+                            failure.compareAndSet(null, new AssertionError("lost " + key));
+                        t.remove(key);
+                    }
+                }
+            });
+        }
+        for (int r = 0; r < 4; r++) {
+            final int reader = r;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(100 + reader);
+                    try {
+                        while (System.currentTimeMillis() < end && failure.get() == null) {
+                            String path = "/figures/" + random.nextInt(2) + randomPath(random);
+                            List<String> values = t.valuesAtPrefixOf(path);
+                            Assert.assertEquals("/figures/", values.get(values.size() - 2));
+                            Assert.assertEquals("/", values.get(values.size() - 1));
+                            for (String v : values) {
+                                Assert.assertTrue(path.startsWith(v));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        Assert.assertEquals(Arrays.asList("/pics/", "/"), t.valuesAtPrefixOf("/pics/x"));
+    }
+
+    private static String randomPath(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            sb.append("ab/".charAt(random.nextInt(3)));
+        }
+        return sb.toString();
+    }
 }